@@ -37,14 +37,21 @@ import java.io.UnsupportedEncodingException;
  * <p><b>Usage:</b> <code>java Spark <em>&lt;filename&gt;</em></code></p>
  * <p>This class reads the specified SWF file and prints the
  * corresponding XML on <code>System.out</code></p>
+ * <p>With <code>-v</code>, font outlines are printed in verbose
+ * form. With <code>-p</code>, decoding and XML output run on separate
+ * threads.</p>
  */
 public class Flash2XML {
 
     /** Flag for verbose parsing */
     private boolean verbose = false;
 
-    public Flash2XML(boolean verbose) {
+    /** Flag for pipelined parsing */
+    private boolean pipelined = false;
+
+    public Flash2XML(boolean verbose, boolean pipelined) {
 	this.verbose = verbose;
+	this.pipelined = pipelined;
     }
 
     /** Parse an SWF file file */
@@ -57,6 +64,7 @@ public class Flash2XML {
 	    parser.registerTagReader(SWFTypes.DEFINE_FONT, 
 				     new SWFVerboseDefineFontReader());
 	}
+	parser.setFeature(SWFReader.FEATURE_PIPELINED, pipelined);
 	OutputStreamWriter out = new OutputStreamWriter(System.out);
 	OutputFormat format = 
 	    new OutputFormat("xml", out.getEncoding(), true);
@@ -65,11 +73,18 @@ public class Flash2XML {
     }
 
     public static void main(String[] argv) throws Exception {
-	if (argv.length == 0 || argv.length > 2 ||
-	    (argv.length == 2 && !argv[0].equals("-v"))) {
-	    System.err.println("usage: java Flash2XML [-v] <filename>");
+	boolean verbose = false;
+	boolean pipelined = false;
+	int i = 0;
+	for (; i<argv.length-1; i++) {
+	    if (argv[i].equals("-v")) verbose = true;
+	    else if (argv[i].equals("-p")) pipelined = true;
+	    else break;
+	}
+	if (i != argv.length-1) {
+	    System.err.println("usage: java Flash2XML [-v] [-p] <filename>");
 	} else {
-	    new Flash2XML(argv[0].equals("-v")).parse(argv[argv.length-1]);
+	    new Flash2XML(verbose, pipelined).parse(argv[i]);
 	}
     }
 }
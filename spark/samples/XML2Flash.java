@@ -22,38 +22,79 @@
 
 import de.tivano.flash.swf.publisher.SWFWriter;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
 /**
  * A very simple XML to Flash converter.
  *
- * <p><b>Usage:</b> <code>java XML2Flash
+ * <p><b>Usage:</b> <code>java XML2Flash [-z] [-s]
  * <em>&lt;filename&gt;</em></code></p>
  *
  * <p>This class reads the specified XML file (conforming to the SWFML
- * DTD) and prints the corresponding SWF data to <code>System.out</code></p>
+ * DTD) and prints the corresponding SWF data to <code>System.out</code>.
+ * If <code>-z</code> is given, the SWF data is compressed. If
+ * <code>-s</code> is given, the SWF data is written in streaming
+ * mode.</p>
  */
 public class XML2Flash {
     /** The default XML reader. Used if the property
      * org.xml.sax.driver is not specified. */
     private static final String DEFAULT_PARSER_NAME =
 	"org.apache.xerces.parsers.SAXParser";
+    /** Flag, tells whether to write compressed SWF data */
+    private boolean compress;
+
+    /** Flag, tells whether to write the SWF data in streaming mode */
+    private boolean stream;
+
+    /**
+     * Constructor.
+     * @param compress Flag, tells whether to write compressed SWF data
+     * @param stream Flag, tells whether to write the SWF data in
+     * streaming mode
+     */
+    public XML2Flash(boolean compress, boolean stream) {
+	this.compress = compress;
+	this.stream = stream;
+    }
+
     /** Parse an XML file and write the SWF data */
     public void parse(String filename) throws Exception {
 	XMLReader parser = XMLReaderFactory.createXMLReader();
-	parser.setContentHandler(new SWFWriter(System.out)); 	
+	SWFWriter writer;
+	if (stream) {
+	    // Write to the file descriptor directly, so the header
+	    // can be back-patched if the output is a regular file.
+	    writer = new SWFWriter(new FileOutputStream(FileDescriptor.out),
+				   true, compress);
+	    writer.setStreaming(true);
+	} else {
+	    writer = new SWFWriter(System.out, true, compress);
+	}
+	parser.setContentHandler(writer);
 	parser.parse(filename);
     }
 
     public static void main(String[] argv) throws Exception {
-	if (argv.length != 1 ) {
-	    System.err.println("usage: java XML2Flash <filename>");
+	boolean compress = false;
+	boolean stream = false;
+	int i = 0;
+	for (; i < argv.length - 1; i++) {
+	    if (argv[i].equals("-z")) compress = true;
+	    else if (argv[i].equals("-s")) stream = true;
+	    else break;
+	}
+	if (i != argv.length - 1) {
+	    System.err.println("usage: java XML2Flash [-z] [-s] <filename>");
 	} else {
 	    if (System.getProperty("org.xml.sax.driver") == null) {
 		System.setProperty("org.xml.sax.driver", DEFAULT_PARSER_NAME);
 	    }
-	    new XML2Flash().parse(argv[0]);
+	    new XML2Flash(compress, stream).parse(argv[i]);
 	}
     }
 }
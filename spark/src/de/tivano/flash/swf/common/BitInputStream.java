@@ -111,6 +111,14 @@ public class BitInputStream extends FilterInputStream {
 	int byteCount = (n + 7 - bitsLeft) >>> 3;
 	int bytesRead = super.read(bufferTmp, 0, byteCount);
 
+	// Some streams (e.g. inflater streams) may return less bytes
+	// than requested even if not at the end of the stream.
+	while (bytesRead >= 0 && bytesRead < byteCount) {
+	    int tmp = super.read(bufferTmp, bytesRead, byteCount - bytesRead);
+	    if (tmp < 0) break;
+	    bytesRead += tmp;
+	}
+
 	// Shift as many bytes into the buffer as have been actually read
 	int pos = 0;
 	switch (bytesRead) {
@@ -392,7 +400,19 @@ public class BitInputStream extends FilterInputStream {
 
 	// Now, use the underlying stream's skip() method to skip
 	// as many entire bytes as possible.
-	remaining -= super.skip(remaining/8) * 8;
+	long bytes = remaining / 8;
+	while (bytes > 0) {
+	    long skipped = super.skip(bytes);
+	    if (skipped <= 0) {
+		// skip() may skip less than requested (even nothing)
+		// without being at the end of the stream. Check by
+		// reading a single byte.
+		if (super.read() < 0) break;
+		skipped = 1;
+	    }
+	    bytes     -= skipped;
+	    remaining -= skipped * 8;
+	}
 
 	// Finally, skip as many remaining bits as possible by calling
 	// readUBits().
@@ -0,0 +1,381 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+
+package de.tivano.flash.swf.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A {@link BitOutputStream} writing to a growable in-memory buffer.
+ *
+ * <p>{@link BitOutputStream} pushes every bit field through the
+ * <code>write()</code> methods of the underlying stream. This class
+ * keeps the same API, but collects bits in a 64 bit accumulator and
+ * stores complete bytes straight into its own byte array. Nothing is
+ * written anywhere else until the content is explicitly copied out
+ * with {@link #writeTo}.</p>
+ *
+ * <p>Unlike a plain <code>BitOutputStream</code>, this class can also
+ * go back and fill in data that was not known when the surrounding
+ * data was written. This is used to write SWF tags in a single
+ * pass: {@link #startTag} reserves room for the tag header, the tag
+ * data is written, and {@link #endTag} fills in the header with the
+ * actual record length. There is no need to calculate the length of
+ * the tag data in advance.</p>
+ *
+ * <p><em>Caution: Like {@link BitOutputStream}, this class is
+ * <strong>not</strong> thread safe.</em></p>
+ *
+ * @author Richard Kunze
+ */
+public class BitOutputBuffer extends BitOutputStream {
+
+    /** Default initial capacity of the buffer */
+    private static final int DEFAULT_CAPACITY = 8192;
+
+    /** The buffer */
+    private byte[] data;
+
+    /** The number of complete bytes in <code>data</code> */
+    private int count = 0;
+
+    /** The bits written since the last byte boundary */
+    private long buffer = 0;
+
+    /** The number of bits in <code>buffer</code>. Always less than 8. */
+    private int bitsLeft = 0;
+
+    /** Create a new <code>BitOutputBuffer</code>. */
+    public BitOutputBuffer() { this(DEFAULT_CAPACITY); }
+
+    /**
+     * Create a new <code>BitOutputBuffer</code> with the given
+     * initial capacity. The buffer grows as needed.
+     * @param capacity the initial capacity in bytes
+     */
+    public BitOutputBuffer(int capacity) {
+	super(null);
+	data = new byte[Math.max(capacity, 8)];
+    }
+
+    /** Make sure there is room for <code>len</code> more bytes */
+    private void ensureCapacity(int len) {
+	if (count + len > data.length) {
+	    byte[] tmp = new byte[Math.max(data.length * 2, count + len)];
+	    System.arraycopy(data, 0, tmp, 0, count);
+	    data = tmp;
+	}
+    }
+
+    /**
+     * Write up to 56 bits to the buffer.
+     * @see BitOutputStream#writeBits
+     */
+    public void writeBits(long value, int n) throws IOException {
+	if (n < 0 || n > 56) throw new IndexOutOfBoundsException(
+	    "Cannot write " + n + " bits at once");
+	if (n == 0) return;
+
+	// There are never more than 7 bits left over from the last
+	// call, so the accumulator can't overflow.
+	buffer = (buffer << n) | (value & (-1L >>> (64-n)));
+	bitsLeft += n;
+	if (bitsLeft < 8) return;
+	ensureCapacity(8);
+	byte[] buf = data;
+	int pos = count;
+	while (bitsLeft >= 8) {
+	    bitsLeft -= 8;
+	    buf[pos++] = (byte)(buffer >>> bitsLeft);
+	}
+	count = pos;
+	buffer &= (1L << bitsLeft) - 1;
+    }
+
+    /** @see BitOutputStream#countRemainingBits */
+    public int countRemainingBits() { return (8-bitsLeft)%8; }
+
+    /** @see BitOutputStream#discardRemainingBits */
+    public void discardRemainingBits() {
+	bitsLeft = 0;
+	buffer   = 0;
+    }
+
+    /** @see BitOutputStream#isAtByteBoundary */
+    public boolean isAtByteBoundary() { return bitsLeft == 0; }
+
+    /** @see BitOutputStream#writeW16LSB */
+    public void writeW16LSB(int value) throws IOException {
+	if (bitsLeft != 0) {
+	    super.writeW16LSB(value);
+	    return;
+	}
+	ensureCapacity(2);
+	data[count++] = (byte)value;
+	data[count++] = (byte)(value >>> 8);
+    }
+
+    /** @see BitOutputStream#writeW32LSB */
+    public void writeW32LSB(int value) throws IOException {
+	if (bitsLeft != 0) {
+	    super.writeW32LSB(value);
+	    return;
+	}
+	ensureCapacity(4);
+	data[count++] = (byte)value;
+	data[count++] = (byte)(value >>> 8);
+	data[count++] = (byte)(value >>> 16);
+	data[count++] = (byte)(value >>> 24);
+    }
+
+    /** @see BitOutputStream#write(int) */
+    public void write(int b) throws IOException {
+	if (bitsLeft != 0) {
+	    writeBits(b, 8);
+	    return;
+	}
+	ensureCapacity(1);
+	data[count++] = (byte)b;
+    }
+
+    /** @see BitOutputStream#write(byte[], int, int) */
+    public void write(byte[] b, int off, int len) throws IOException {
+	if (b == null) throw new NullPointerException();
+	if (len<0 || off<0 || off+len > b.length) {
+	    throw new IndexOutOfBoundsException();
+	}
+	ensureCapacity(len);
+	if (bitsLeft == 0) {
+	    System.arraycopy(b, off, data, count, len);
+	    count += len;
+	    return;
+	}
+
+	// Not at a byte boundary. Combine the buffered bits with the
+	// next byte for each byte written.
+	int shift = 8 - bitsLeft;
+	int mask  = (1 << bitsLeft) - 1;
+	int bits  = (int)buffer;
+	byte[] buf = data;
+	int pos = count;
+	for (int i = off; i < off + len; i++) {
+	    int next = b[i] & 0xFF;
+	    buf[pos++] = (byte)((bits << shift) | (next >>> bitsLeft));
+	    bits = next & mask;
+	}
+	count = pos;
+	buffer = bits;
+    }
+
+    /**
+     * Does nothing except checking the byte boundary, as there is
+     * no underlying stream. Use {@link #writeTo} to copy the buffer
+     * content to another stream.
+     * @exception IllegalStateException if the stream is not currently
+     * at a byte boundary.
+     */
+    public void flush() {
+	checkByteBoundary();
+    }
+
+    /** Pads the data to a byte boundary. There are no resources to free. */
+    public void close() throws IOException {
+	padToByteBoundary();
+    }
+
+    /**
+     * Get the number of bytes in the buffer. Bits written after the
+     * last byte boundary are not included.
+     */
+    public int size() { return count; }
+
+    /**
+     * Discard the buffer contents. Any bits written after the last
+     * byte boundary are discarded as well.
+     */
+    public void reset() {
+	discardRemainingBits();
+	count = 0;
+    }
+
+    /**
+     * Write the complete buffer content to <code>out</code>.
+     * @param out the stream to write to
+     * @exception IOException if an I/O error occurs.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+	writeTo(out, 0, size());
+    }
+
+    /**
+     * Write a part of the buffer content to <code>out</code>.
+     * @param out the stream to write to
+     * @param off the offset of the first byte to write
+     * @param len the number of bytes to write
+     * @exception IndexOutOfBoundsException if <code>off</code> or
+     * <code>len</code> is outside the buffer content
+     * @exception IOException if an I/O error occurs.
+     */
+    public void writeTo(OutputStream out, int off, int len)
+	        throws IOException {
+	if (off < 0 || len < 0 || off + len > size()) {
+	    throw new IndexOutOfBoundsException();
+	}
+	out.write(data, off, len);
+    }
+
+    /**
+     * Get the complete buffer content as a <code>ByteBuffer</code>.
+     * @see #toByteBuffer(int, int)
+     */
+    public ByteBuffer toByteBuffer() {
+	return toByteBuffer(0, size());
+    }
+
+    /**
+     * Get a part of the buffer content as a read-only
+     * <code>ByteBuffer</code>. The returned buffer shares the data
+     * with this object, so no data is copied. It is only valid until
+     * the content is changed or the buffer is reset.
+     * @param off the offset of the first byte
+     * @param len the number of bytes
+     * @exception IndexOutOfBoundsException if <code>off</code> or
+     * <code>len</code> is outside the buffer content
+     */
+    public ByteBuffer toByteBuffer(int off, int len) {
+	if (off < 0 || len < 0 || off + len > size()) {
+	    throw new IndexOutOfBoundsException();
+	}
+	return ByteBuffer.wrap(data, off, len).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Reserve <code>len</code> bytes to be filled in later with the
+     * <code>patch</code> methods.
+     * @param len the number of bytes to reserve
+     * @return the position of the reserved bytes
+     * @exception IllegalStateException if the stream is not at a byte
+     * boundary
+     */
+    public int reserve(int len) {
+	checkByteBoundary();
+	ensureCapacity(len);
+	int pos = count;
+	Arrays.fill(data, pos, pos + len, (byte)0);
+	count += len;
+	return pos;
+    }
+    /**
+     * Overwrite a 16 bit word in LSB format at position
+     * <code>pos</code>.
+     * @param pos the position of the first byte
+     * @param value the value to write
+     * @exception IndexOutOfBoundsException if there are less than
+     * two bytes at <code>pos</code>
+     */
+    public void patchW16LSB(int pos, int value) {
+	checkPatch(pos, 2);
+	byte[] buf = data;
+	buf[pos]   = (byte)value;
+	buf[pos+1] = (byte)(value >>> 8);
+    }
+
+    /**
+     * Overwrite a 32 bit word in LSB format at position
+     * <code>pos</code>.
+     * @param pos the position of the first byte
+     * @param value the value to write
+     * @exception IndexOutOfBoundsException if there are less than
+     * four bytes at <code>pos</code>
+     */
+    public void patchW32LSB(int pos, int value) {
+	checkPatch(pos, 4);
+	byte[] buf = data;
+	buf[pos]   = (byte)value;
+	buf[pos+1] = (byte)(value >>> 8);
+	buf[pos+2] = (byte)(value >>> 16);
+	buf[pos+3] = (byte)(value >>> 24);
+    }
+
+    /**
+     * Start a new SWF tag. Reserves room for the longest possible
+     * tag header.
+     * @return the position of the tag, to be passed to {@link #endTag}
+     * @exception IllegalStateException if the stream is not at a byte
+     * boundary
+     * @exception IOException if an I/O error occurs.
+     */
+    public int startTag() throws IOException {
+	return reserve(SWFTagHeader.MAX_LENGTH);
+    }
+
+    /**
+     * Finish the SWF tag started at <code>pos</code>. The tag data
+     * is padded to a byte boundary, the record length of
+     * <code>header</code> is set to the length of the tag data, and
+     * the header is written to the room reserved by {@link
+     * #startTag}. If the header turns out to be shorter than the
+     * reserved room (which is only possible for short tags), the tag
+     * data is moved to close the gap.
+     * @param header the tag header
+     * @param pos the tag position returned by {@link #startTag}
+     * @exception IOException if an I/O error occurs.
+     */
+    public void endTag(SWFTagHeader header, int pos) throws IOException {
+	padToByteBoundary();
+	int start = pos + SWFTagHeader.MAX_LENGTH;
+	int end = size();
+	checkPatch(pos, end - pos);
+	header.setRecordLength(end - start);
+	int headerLength = (int)(header.length() / 8);
+
+	// Let the header write itself at the reserved position...
+	count = pos;
+	header.write(this);
+	// ... and move the tag data if the header is shorter than
+	// the space reserved for it.
+	if (headerLength < SWFTagHeader.MAX_LENGTH) {
+	    System.arraycopy(data, start, data, pos + headerLength,
+			     end - start);
+	}
+	count = end - SWFTagHeader.MAX_LENGTH + headerLength;
+    }
+
+    /** Check that <code>len</code> bytes at <code>pos</code> can be patched */
+    private void checkPatch(int pos, int len) {
+	if (pos < 0 || len < 0 || pos + len > size()) {
+	    throw new IndexOutOfBoundsException(
+		"Cannot patch " + len + " bytes at " + pos);
+	}
+    }
+
+    /** Check that the stream is at a byte boundary */
+    private void checkByteBoundary() {
+	if (!isAtByteBoundary()) {
+	    throw new IllegalStateException("Not at a byte boundary");
+	}
+    }
+}
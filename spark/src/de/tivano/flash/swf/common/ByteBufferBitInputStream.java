@@ -0,0 +1,311 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.common;
+
+import java.io.IOException;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link BitInputStream} reading directly from a byte array or a
+ * <code>ByteBuffer</code>.
+ *
+ * <p>{@link BitInputStream} pulls every bit field through the
+ * <code>read()</code> method of the underlying stream. If the data
+ * is already in memory, this is a lot of unnecessary overhead. This
+ * class keeps the same API, but collects bits in a 64 bit
+ * accumulator straight from the buffer, without going through any
+ * other stream. Use it whenever a complete SWF tag or file is
+ * available as a byte array or <code>ByteBuffer</code>.</p>
+ *
+ * <p>The stream operates on a slice of the buffer passed to the
+ * constructor. Reading from the stream does not change the position
+ * of the original buffer, but changes to the buffer content are
+ * visible to the stream.</p>
+ *
+ * <p><em>Caution: Like {@link BitInputStream}, this class is
+ * <strong>not</strong> thread safe.</em></p>
+ *
+ * @author Richard Kunze
+ */
+public class ByteBufferBitInputStream extends BitInputStream {
+
+    /** The data buffer. Its position is the next unread byte. */
+    private final ByteBuffer data;
+
+    /** The next few unread bits */
+    private long buffer = 0;
+
+    /** The number of unread bits in <code>buffer</code> */
+    private int bitsLeft = 0;
+
+    /** The buffer position saved from <code>mark()</code> */
+    private int positionMarkSave = 0;
+
+    /** The bit buffer saved from <code>mark()</code> */
+    private long bufferMarkSave = 0;
+
+    /** The bit count saved from <code>mark()</code> */
+    private int bitsLeftMarkSave = 0;
+
+    /**
+     * Creates a new <code>ByteBufferBitInputStream</code> reading
+     * the remaining bytes of <code>data</code>.
+     * @param data the buffer to read from
+     */
+    public ByteBufferBitInputStream(ByteBuffer data) {
+	super(null);
+	this.data = data.slice();
+    }
+
+    /**
+     * Creates a new <code>ByteBufferBitInputStream</code> reading
+     * <code>len</code> bytes from <code>data</code>, starting at
+     * <code>off</code>.
+     * @param data the array to read from
+     * @param off the offset of the first byte to read
+     * @param len the number of bytes to read
+     */
+    public ByteBufferBitInputStream(byte[] data, int off, int len) {
+	this(ByteBuffer.wrap(data, off, len));
+    }
+
+    /**
+     * Creates a new <code>ByteBufferBitInputStream</code> reading
+     * the entire array <code>data</code>.
+     * @param data the array to read from
+     */
+    public ByteBufferBitInputStream(byte[] data) {
+	this(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Read up to 56 bits from the stream, interpreted as an unsigned
+     * integer.
+     * @see BitInputStream#readUBits
+     */
+    public long readUBits(int n) throws IOException {
+	if (n < 0 || n > 56) throw new IndexOutOfBoundsException(
+	    "Cannot read " + n + " bits at once");
+
+	// Fill the accumulator. There are never more than 7 bits
+	// left over from the last call (except after an EOF), so
+	// the buffer can't overflow.
+	while (bitsLeft < n) {
+	    if (!data.hasRemaining()) throw new EOFException();
+	    buffer = (buffer << 8) | (data.get() & 0xFFL);
+	    bitsLeft += 8;
+	}
+
+	bitsLeft -= n;
+	long retval = buffer >>> bitsLeft;
+	buffer &= (1L << bitsLeft) - 1;
+	return retval;
+    }
+
+    /** @see BitInputStream#readToByteBoundary */
+    public byte readToByteBoundary() {
+	byte retval = (byte)buffer;
+	buffer = 0;
+	bitsLeft = 0;
+	return retval;
+    }
+
+    /** @see BitInputStream#countRemainingBits */
+    public int countRemainingBits() { return bitsLeft; }
+
+    /** @see BitInputStream#availableBits */
+    public long availableBits() {
+	return data.remaining() * 8L + bitsLeft;
+    }
+
+    /** @see BitInputStream#isAtByteBoundary */
+    public boolean isAtByteBoundary() { return bitsLeft == 0; }
+
+    /** @see BitInputStream#skipToByteBoundary */
+    public int skipToByteBoundary() {
+	int count = bitsLeft;
+	readToByteBoundary();
+	return count;
+    }
+
+    /** Returns the number of bytes remaining in the buffer. */
+    public int available() { return data.remaining(); }
+
+    /** @see BitInputStream#read() */
+    public int read() throws IOException {
+	if (bitsLeft == 0) {
+	    return data.hasRemaining()?(data.get() & 0xFF):-1;
+	} else if (bitsLeft < 8 && !data.hasRemaining()) {
+	    // Less than a byte left. Return the remaining bits.
+	    return readToByteBoundary();
+	} else {
+	    return (int)readUBits(8);
+	}
+    }
+
+    /** @see BitInputStream#read(byte[], int, int) */
+    public int read(byte[] b, int off, int len) throws IOException {
+	if (b == null) throw new NullPointerException();
+	if (len<0 || off<0 || off+len > b.length) {
+	    throw new IndexOutOfBoundsException();
+	}
+
+	if (bitsLeft == 0) {
+	    if (len == 0) return 0;
+	    if (!data.hasRemaining()) return -1;
+	    if (len > data.remaining()) len = data.remaining();
+	    data.get(b, off, len);
+	    return len;
+	}
+
+	if (bitsLeft > 7) {
+	    // Only possible after an EOFException. Don't bother to
+	    // optimize this case.
+	    int end = off + len;
+	    for (int pos = off; pos < end; pos++) {
+		int tmp = read();
+		if (tmp == -1) return pos - off;
+		b[pos] = (byte)tmp;
+	    }
+	    return len;
+	}
+
+	// Not at a byte boundary. Combine the buffered bits with the
+	// next byte for each byte read.
+	int count = Math.min(len, data.remaining());
+	int shift = 8 - bitsLeft;
+	int mask  = (1 << bitsLeft) - 1;
+	int bits  = (int)buffer;
+	for (int i = off; i < off + count; i++) {
+	    int next = data.get() & 0xFF;
+	    b[i] = (byte)((bits << shift) | (next >>> bitsLeft));
+	    bits = next & mask;
+	}
+	buffer = bits;
+	if (count < len) {
+	    // End of buffer. The last byte holds the remaining bits.
+	    b[off + count++] = readToByteBoundary();
+	}
+	return count;
+    }
+
+    /** @see BitInputStream#skipBits */
+    public long skipBits(long n) throws IOException {
+	if (n < 0) return 0;
+	if (n <= bitsLeft) {
+	    readUBits((int)n);
+	    return n;
+	}
+	long remaining = n - skipToByteBoundary();
+	long available = data.remaining() * 8L;
+	if (remaining >= available) {
+	    data.position(data.limit());
+	    return n - remaining + available;
+	}
+	data.position(data.position() + (int)(remaining >>> 3));
+	readUBits((int)(remaining & 7));
+	return n;
+    }
+
+    /** @see BitInputStream#readUW16LSB */
+    public int readUW16LSB() throws IOException {
+	if (bitsLeft != 0 || data.remaining() < 2) {
+	    return super.readUW16LSB();
+	}
+	return (data.get() & 0xFF) | (data.get() & 0xFF) << 8;
+    }
+
+    /** @see BitInputStream#readUW32LSB */
+    public long readUW32LSB() throws IOException {
+	if (bitsLeft != 0 || data.remaining() < 4) {
+	    return super.readUW32LSB();
+	}
+	return (data.get() & 0xFFL)       |
+	       (data.get() & 0xFFL) << 8  |
+	       (data.get() & 0xFFL) << 16 |
+	       (data.get() & 0xFFL) << 24;
+    }
+
+    /**
+     * Get a stream for the next <code>len</code> bytes and skip
+     * them on this stream. The returned stream shares the data with
+     * this stream, so no data is copied.
+     * @param len the number of bytes to include in the new stream
+     * @exception IllegalStateException if this stream is not at a
+     * byte boundary
+     * @exception EOFException if less than <code>len</code> bytes are
+     * left on this stream
+     */
+    public ByteBufferBitInputStream slice(int len) throws IOException {
+	return new ByteBufferBitInputStream(readBuffer(len));
+    }
+
+    /**
+     * Get the next <code>len</code> bytes as a read-only
+     * <code>ByteBuffer</code> and skip them on this stream. The
+     * returned buffer shares the data with this stream, so no data
+     * is copied.
+     * @param len the number of bytes to include in the buffer
+     * @exception IllegalStateException if this stream is not at a
+     * byte boundary
+     * @exception EOFException if less than <code>len</code> bytes are
+     * left on this stream
+     */
+    public ByteBuffer readBuffer(int len) throws IOException {
+	if (bitsLeft != 0) throw new IllegalStateException(
+	    "Cannot slice a stream that is not at a byte boundary");
+	if (len > data.remaining()) throw new EOFException();
+	ByteBuffer tmp = data.slice();
+	tmp.limit(len);
+	data.position(data.position() + len);
+	return tmp.asReadOnlyBuffer();
+    }
+
+    /**
+     * Marks the current position in this input stream. The mark
+     * never becomes invalid, so <code>readlimit</code> is ignored.
+     */
+    public void mark(int readlimit) {
+	positionMarkSave = data.position();
+	bufferMarkSave   = buffer;
+	bitsLeftMarkSave = bitsLeft;
+    }
+
+    /**
+     * Repositions this stream to the position at the time the mark
+     * method was last called on this input stream, or to the start
+     * of the stream if <code>mark()</code> has never been called.
+     */
+    public void reset() {
+	data.position(positionMarkSave);
+	buffer   = bufferMarkSave;
+	bitsLeft = bitsLeftMarkSave;
+    }
+
+    /** Always returns <code>true</code> */
+    public boolean markSupported() { return true; }
+
+    /** Does nothing. There are no resources to free. */
+    public void close() {}
+}
@@ -103,6 +103,22 @@ public class SWFCurvedEdge extends SWFShapeRecord {
 	}
     }
     
+    /**
+     * Construct a <code>SWFCurvedEdge</code> shape record from the
+     * control and anchor point.
+     * @param controlX X value of the control point
+     * @param controlY Y value of the control point
+     * @param anchorX X value of the anchor point
+     * @param anchorY Y value of the anchor point
+     */
+    public SWFCurvedEdge(int controlX, int controlY,
+			 int anchorX, int anchorY) {
+	CONTROL_X = controlX;
+	CONTROL_Y = controlY;
+	ANCHOR_X  = anchorX;
+	ANCHOR_Y  = anchorY;
+    }
+    
     /** Get the X value of the control point */
     public int getControlX() { return CONTROL_X; }
 
@@ -120,19 +136,30 @@ public class SWFCurvedEdge extends SWFShapeRecord {
      * expressed in bits.
      */
     public long length() {
+	return length(CONTROL_X, CONTROL_Y, ANCHOR_X, ANCHOR_Y);
+    }
+
+    /**
+     * Get the length of a curved edge record with the given control
+     * and anchor point, in bits. Used by {@link SWFShape} to
+     * calculate the length of an edge without creating a record
+     * object.
+     */
+    static long length(int controlX, int controlY, int anchorX, int anchorY) {
 	// The length includes the edge/state record flag...
-	return 6 + 4*getEntryLength();
+	return 6 + 4*getEntryLength(controlX, controlY, anchorX, anchorY);
     }
 
     /**
      * Get the number of bits needed to represent the individual data
-     * entries in this object.
+     * entries of a curved edge.
      */
-    private int getEntryLength() {
-	int size = Math.max(Math.max(minBitsS(ANCHOR_X),
-				     minBitsS(ANCHOR_Y)),
-			    Math.max(minBitsS(CONTROL_X),
-				     minBitsS(CONTROL_Y)));
+    private static int getEntryLength(int controlX, int controlY,
+				      int anchorX, int anchorY) {
+	int size = Math.max(Math.max(minBitsS(anchorX),
+				     minBitsS(anchorY)),
+			    Math.max(minBitsS(controlX),
+				     minBitsS(controlY)));
 	// Shape entries always take at least two bits...
 	return (size<2?2:size);
     }
@@ -143,14 +170,24 @@ public class SWFCurvedEdge extends SWFShapeRecord {
      * @exception IOException if an I/O error occurs.
      */
     public void write(BitOutputStream out) throws IOException {
+	write(out, CONTROL_X, CONTROL_Y, ANCHOR_X, ANCHOR_Y);
+    }
+
+    /**
+     * Write a curved edge record with the given control and anchor
+     * point to <code>out</code>. Used by {@link SWFShape} to write an
+     * edge without creating a record object.
+     */
+    static void write(BitOutputStream out, int controlX, int controlY,
+		      int anchorX, int anchorY) throws IOException {
 	// Write the edge record and curve flags flag first...
 	out.writeBits(2,2);	
-	int entryLength = getEntryLength();
+	int entryLength = getEntryLength(controlX, controlY, anchorX, anchorY);
 	// The SWF file holds entryLength-2, not the length itself...
 	out.writeBits(entryLength-2, 4);
-	out.writeBits(CONTROL_X, entryLength);
-	out.writeBits(CONTROL_Y, entryLength);
-	out.writeBits(ANCHOR_X, entryLength);
-	out.writeBits(ANCHOR_Y, entryLength);
+	out.writeBits(controlX, entryLength);
+	out.writeBits(controlY, entryLength);
+	out.writeBits(anchorX, entryLength);
+	out.writeBits(anchorY, entryLength);
     }
 }
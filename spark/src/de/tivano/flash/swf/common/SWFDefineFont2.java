@@ -239,6 +239,28 @@ public class SWFDefineFont2 extends SWFDataTypeBase
     private int fontID;
     private boolean hasLayoutInfo;
     private boolean hasWideCodes;
+    private boolean hasWideOffsets;
+
+    /**
+     * The offset table as read from the SWF data, or
+     * <code>null</code> if the glyph shapes are held as
+     * {@link SWFShape} objects in <code>shapeTable</code>.
+     */
+    private int[] shapeOffsets = null;
+
+    /**
+     * The raw glyph shapes as read from the SWF data. Glyph
+     * <code>i</code> starts at <code>shapeOffsets[i] -
+     * shapeOffsets[0]</code>. <code>null</code> if
+     * <code>shapeOffsets</code> is <code>null</code>.
+     */
+    private byte[] shapeData = null;
+
+    /**
+     * The length of this record in bits, or -1 if it has not been
+     * calculated yet.
+     */
+    private long length = -1;
 
     /**
      * Construct a <code>SWFDefineFont2</code> object from a bit input stream.
@@ -293,17 +315,40 @@ public class SWFDefineFont2 extends SWFDataTypeBase
 	    advanceTable   = new int[glyphCount];
 	    boundsTable   =  new SWFRectangle[glyphCount];
 
-	    // Skip the font offset table. We're only interested in
-	    // reading all glyphs sequentially and we don't need the
-	    // offset table for this.
+	    // Read the font offset table.
 	    // Note: Contrary to the official docs, the offset table
 	    // seems to have one entry more than the number of glyphs
 	    // in the font.
-	    input.skipBits((glyphCount+1) * offsetWidth);
-	    for (int i=0; i<shapeTable.length; i++) {
-		shapeTable[i] = new SWFShape(input, false);
-		// Make sure we continue reading at a byte boundary
-		input.skipToByteBoundary();
+	    hasWideOffsets = (offsetWidth == 32);
+	    shapeOffsets   = new int[glyphCount+1];
+	    for (int i=0; i<shapeOffsets.length; i++) {
+		long offset = (hasWideOffsets?input.readUW32LSB():
+			                      input.readUW16LSB());
+		shapeOffsets[i] = (int)Math.min(offset, Integer.MAX_VALUE);
+	    }
+	    if (isValidOffsetTable()) {
+		// Keep the raw glyph shapes and decode them on demand
+		// in getShape(). For large fonts, this saves a lot of
+		// memory if only some (or none) of the shapes are
+		// actually needed.
+		shapeData = new byte[shapeOffsets[glyphCount] -
+				     shapeOffsets[0]];
+		int pos = 0;
+		while (pos < shapeData.length) {
+		    int count = input.read(shapeData, pos,
+					   shapeData.length - pos);
+		    if (count < 0) throw new EOFException();
+		    pos += count;
+		}
+	    } else {
+		// The offset table is broken, but the glyphs may
+		// still be readable sequentially.
+		shapeOffsets = null;
+		for (int i=0; i<shapeTable.length; i++) {
+		    shapeTable[i] = new SWFShape(input, false);
+		    // Make sure we continue reading at a byte boundary
+		    input.skipToByteBoundary();
+		}
 	    }
 	    for (int i=0; i<codeTable.length; i++) {
 		if (hasWideCodes) codeTable[i][1] = (byte)input.read();
@@ -479,8 +524,67 @@ public class SWFDefineFont2 extends SWFDataTypeBase
      * @param idx the index of the glyph
      * @exception IndexOutOfBoundException if <code>idx</code> is
      * outside the range of <code>0..getGlyphCount()-1</code>
+     * @exception SWFFormatException if the glyph shape cannot be
+     * decoded
+     */
+    public SWFShape getShape(int idx) throws IOException {
+	if (shapeOffsets == null) return shapeTable[idx];
+	if (idx < 0 || idx >= shapeTable.length) {
+	    throw new IndexOutOfBoundsException(
+		"Index: " + idx + ", glyphs: " + shapeTable.length);
+	}
+	// Glyphs read from SWF data are decoded on every call and not
+	// kept around, so callers that need a glyph more than once
+	// should hold on to the returned shape.
+	return new SWFShape(getShapeData(idx), false);
+    }
+
+    /**
+     * Report the shape records of glyph number <code>idx</code> to
+     * <code>visitor</code>. For glyphs read from SWF data, the
+     * records are decoded directly from the raw data without
+     * creating a {@link SWFShape} object.
+     * @param idx the index of the glyph
+     * @param visitor the visitor to report the shape records to
+     * @exception IndexOutOfBoundException if <code>idx</code> is
+     * outside the range of <code>0..getGlyphCount()-1</code>
+     * @exception SWFFormatException if the glyph shape cannot be
+     * decoded
+     */
+    public void visitShape(int idx, SWFShapeRecordVisitor visitor)
+	        throws IOException {
+	if (shapeOffsets == null) {
+	    shapeTable[idx].accept(visitor);
+	    return;
+	}
+	if (idx < 0 || idx >= shapeTable.length) {
+	    throw new IndexOutOfBoundsException(
+		"Index: " + idx + ", glyphs: " + shapeTable.length);
+	}
+	SWFShape.parse(getShapeData(idx), false, visitor);
+    }
+
+    /** Get a stream for the raw shape data of glyph number <code>idx</code> */
+    private BitInputStream getShapeData(int idx) {
+	int start = shapeOffsets[idx] - shapeOffsets[0];
+	int len   = shapeOffsets[idx+1] - shapeOffsets[idx];
+	return new ByteBufferBitInputStream(shapeData, start, len);
+    }
+
+    /**
+     * Check if the offset table read from the SWF data can be used
+     * to locate the glyph shapes, i.e. if the first offset points
+     * directly behind the offset table and the offsets are
+     * ascending.
      */
-    public SWFShape getShape(int idx) { return shapeTable[idx]; }
+    private boolean isValidOffsetTable() {
+	int tableSize = shapeOffsets.length * (hasWideOffsets?4:2);
+	if (shapeOffsets[0] != tableSize) return false;
+	for (int i=1; i<shapeOffsets.length; i++) {
+	    if (shapeOffsets[i] < shapeOffsets[i-1]) return false;
+	}
+	return true;
+    }
     
     /**
      * Get the character code of glyph number <code>idx</code>.
@@ -533,6 +637,12 @@ public class SWFDefineFont2 extends SWFDataTypeBase
      * expressed in bits.
      */
     public long length() {
+	if (length < 0) length = calculateLength();
+	return length;
+    }
+
+    /** Calculate the length of this record in bits. */
+    private long calculateLength() {
 	// Calculate the length of the individual shapes. While we're
 	// at it, calculate the word width for the offset table as
 	// well.
@@ -540,10 +650,15 @@ public class SWFDefineFont2 extends SWFDataTypeBase
 	int glyphCount = getGlyphCount();
 	int charWidth =  getCharWidth();
 	int offsetWidth = 16;
-	for (int i=0; i<glyphCount; i++) {
-	    long shapeLen = paddedLength(getShape(i).length());
-	    length += shapeLen;
-	    if (shapeLen > 0xffff) offsetWidth = 32;
+	if (shapeOffsets != null) {
+	    length += 8L * shapeData.length;
+	    if (hasWideOffsets) offsetWidth = 32;
+	} else {
+	    for (int i=0; i<glyphCount; i++) {
+		long shapeLen = paddedLength(shapeTable[i].length());
+		length += shapeLen;
+		if (shapeLen > 0xffff) offsetWidth = 32;
+	    }
 	}
 	// Calculate the rest of the length.
 	length += 56 + 8*getName().length() +
@@ -576,9 +691,13 @@ public class SWFDefineFont2 extends SWFDataTypeBase
 	int glyphCount = getGlyphCount();
 	boolean hasWideOffsets = false;
 	// Calculate the word width for the offset table.
-	for (int i=0; i<glyphCount; i++) {
-	    long shapeLen = paddedLength(getShape(i).length());
-	    if (shapeLen > 0xffff) hasWideOffsets = true;
+	if (shapeOffsets != null) {
+	    hasWideOffsets = this.hasWideOffsets;
+	} else {
+	    for (int i=0; i<glyphCount; i++) {
+		long shapeLen = paddedLength(shapeTable[i].length());
+		if (shapeLen > 0xffff) hasWideOffsets = true;
+	    }
 	}
 	// Font ID first...
 	out.writeW16LSB(getID());
@@ -623,18 +742,27 @@ public class SWFDefineFont2 extends SWFDataTypeBase
 	// (i.e, the next position after the last glyph
 	// shape). Offsets are in bytes relative to the start of the
 	// offset table.
-	int offset = (hasWideOffsets?4:2) * (glyphCount + 1);
-	if (hasWideOffsets) out.writeW32LSB(offset);
-	else out.writeW16LSB(offset);
-	for (int i=0; i<glyphCount; i++) {
-	    offset += paddedLength(getShape(i).length()) / 8;
+	if (shapeOffsets != null) {
+	    // Glyphs read from SWF data are written back unchanged
+	    for (int i=0; i<shapeOffsets.length; i++) {
+		if (hasWideOffsets) out.writeW32LSB(shapeOffsets[i]);
+		else out.writeW16LSB(shapeOffsets[i]);
+	    }
+	    out.write(shapeData);
+	} else {
+	    int offset = (hasWideOffsets?4:2) * (glyphCount + 1);
 	    if (hasWideOffsets) out.writeW32LSB(offset);
 	    else out.writeW16LSB(offset);
-	}
-	// ... and now the actual shapes ...
-	for (int i=0; i<glyphCount; i++) {
-	    getShape(i).write(out);
-	    out.padToByteBoundary();
+	    for (int i=0; i<glyphCount; i++) {
+		offset += paddedLength(shapeTable[i].length()) / 8;
+		if (hasWideOffsets) out.writeW32LSB(offset);
+		else out.writeW16LSB(offset);
+	    }
+	    // ... and now the actual shapes ...
+	    for (int i=0; i<glyphCount; i++) {
+		shapeTable[i].write(out);
+		out.padToByteBoundary();
+	    }
 	}
 	// ... and finally, the code table ...
 	for (int i=0; i<glyphCount; i++) {
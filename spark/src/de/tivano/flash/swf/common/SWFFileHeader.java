@@ -24,7 +24,6 @@ package de.tivano.flash.swf.common;
 
 import java.io.IOException;
 import java.io.EOFException;
-import java.io.ByteArrayInputStream;
 
 import java.util.Arrays;
 
@@ -42,7 +41,8 @@ import java.util.Arrays;
  * <tr>
  *  <td>Signature</td>
  *  <td>24</td>
- *  <td>Signature, always the ASCII string "FWS"</td>
+ *  <td>Signature, the ASCII string "FWS" for uncompressed files or
+ *  "CWS" for compressed files</td>
  * </tr>
  * <tr>
  *   <td>Version</td>
@@ -52,8 +52,8 @@ import java.util.Arrays;
  * <tr>
  *   <td>File Length</td>
  *   <td>32</td>
- *   <td>Length of the entire file in bytes, unsigned 32 bit word in
- *   LSB order</td>
+ *   <td>Length of the entire uncompressed file in bytes, unsigned 32
+ *   bit word in LSB order</td>
  * </tr>
  * <tr>
  *   <td>Frame Size</td>
@@ -77,6 +77,9 @@ import java.util.Arrays;
  *   LSB order</b>
  * </tr>
  * </table>
+ * <p>In compressed files, everything after the file length is
+ * compressed with zlib, starting with the frame size. The first
+ * {@link #PREFIX_LENGTH} bytes are never compressed.</p>
  * @author Richard Kunze
  */
 public class SWFFileHeader extends SWFDataTypeBase {
@@ -84,9 +87,24 @@ public class SWFFileHeader extends SWFDataTypeBase {
     /** The maximal length (in bytes) of an SWF file header */
     public static final int MAX_LENGTH = 29;
 
+    /**
+     * The length (in bytes) of the part of the file header that is
+     * never compressed
+     */
+    public static final int PREFIX_LENGTH = 8;
+
     /** The SWF file signature, "FWS" in ASCII encoding */
     private static final byte[] SIGNATURE = { 0x46, 0x57, 0x53 };
 
+    /**
+     * The signature for compressed SWF files, "CWS" in ASCII
+     * encoding
+     */
+    private static final byte[] SIGNATURE_COMPRESSED = { 0x43, 0x57, 0x53 };
+
+    /** Flag indicating if the file is compressed */
+    private boolean compressed;
+
     /** File version */
     private int version;
 
@@ -105,6 +123,10 @@ public class SWFFileHeader extends SWFDataTypeBase {
 
     /**
      * Construct a SWF file header from an input stream.
+     * <p>For compressed files, the data following the first {@link
+     * #PREFIX_LENGTH} bytes must already be decompressed when read
+     * from <code>input</code>. If not, only the signature, version
+     * and file size are valid.</p>
      * @param input the input stream
      * @exception SWFFormatException if the file header cannot be read
      * correctly.
@@ -136,7 +158,9 @@ public class SWFFileHeader extends SWFDataTypeBase {
 	    throw new SWFFormatException(FAIL_MSG);
 	}
 
-	if (!Arrays.equals(signature, SIGNATURE)) {
+	if (Arrays.equals(signature, SIGNATURE_COMPRESSED)) {
+	    compressed = true;
+	} else if (!Arrays.equals(signature, SIGNATURE)) {
 	    throw new SWFFormatException(FAIL_MSG);
 	}
     }
@@ -148,7 +172,7 @@ public class SWFFileHeader extends SWFDataTypeBase {
      * correctly.
      */
     public SWFFileHeader(byte[] input) throws IOException {
-	this(new BitInputStream(new ByteArrayInputStream(input)));
+	this(new ByteBufferBitInputStream(input));
     }
 
     /**
@@ -206,6 +230,16 @@ public class SWFFileHeader extends SWFDataTypeBase {
     /** Set the frame count */
     public void setFrameCount(int count) { frameCount = count; }
 
+    /**
+     * Check if the file is compressed. This only affects the
+     * signature written by {@link #write} and {@link #writePrefix};
+     * compressing the data is up to the caller.
+     */
+    public boolean isCompressed() { return compressed; }
+
+    /** Set the compression flag */
+    public void setCompressed(boolean flag) { compressed = flag; }
+
     /** Get the file size in bytes */
     public long getFileSize() { return fileSize; }
 
@@ -226,9 +260,32 @@ public class SWFFileHeader extends SWFDataTypeBase {
      * @exception IOException if an I/O error occurs.
      */
     public void write(BitOutputStream out) throws IOException {
-	out.write(SIGNATURE);
+	writePrefix(out);
+	writeMovieInfo(out);
+    }
+
+    /**
+     * Write the first {@link #PREFIX_LENGTH} bytes of the SWF
+     * representation of this object (signature, version and file
+     * size) to <code>out</code>. This part of the header is never
+     * compressed.
+     * @param out the output stream to write on
+     * @exception IOException if an I/O error occurs.
+     */
+    public void writePrefix(BitOutputStream out) throws IOException {
+	out.write(isCompressed()?SIGNATURE_COMPRESSED:SIGNATURE);
 	out.writeByte((byte)getVersion());
 	out.writeW32LSB((int)getFileSize());
+    }
+
+    /**
+     * Write the remainder of the SWF representation of this object
+     * (movie size, frame rate and frame count) to <code>out</code>.
+     * In compressed files, this part of the header is compressed.
+     * @param out the output stream to write on
+     * @exception IOException if an I/O error occurs.
+     */
+    public void writeMovieInfo(BitOutputStream out) throws IOException {
 	getMovieSize().write(out);
 	out.padToByteBoundary();
 	out.writeW16LSB(getFrameRateFixed());
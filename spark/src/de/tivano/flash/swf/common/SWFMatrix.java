@@ -122,6 +122,12 @@ public class SWFMatrix extends SWFDataTypeBase {
     /** The translate vector */
     private double translateX;
     private double translateY;
+
+    /**
+     * The length of this record in bits, or -1 if it has not been
+     * calculated yet.
+     */
+    private long length = -1;
     
     /**
      * Construct a <code>SWFMatrix</code> from a bit input stream.
@@ -198,8 +204,12 @@ public class SWFMatrix extends SWFDataTypeBase {
      * expressed in bits.
      */
     public long length() {
-	int nBits;
-	long x, y;
+	if (length < 0) length = calculateLength();
+	return length;
+    }
+
+    /** Calculate the length of this record in bits. */
+    private long calculateLength() {
 	long length = 7 + Math.max(minBitsS(toFixed(getTranslateX())),
 				   minBitsS(toFixed(getTranslateY())));
 	if (hasScale()) {
@@ -78,6 +78,17 @@ public class SWFMoveTo extends SWFDataTypeBase {
 	}
     }
 
+    /**
+     * Construct a <code>SWFMoveTo</code> shape record from the X and
+     * Y value.
+     * @param x the X value
+     * @param y the Y value
+     */
+    public SWFMoveTo(int x, int y) {
+	X = x;
+	Y = y;
+    }
+
     /** Get the X value */
     public int getX() { return X; }
 
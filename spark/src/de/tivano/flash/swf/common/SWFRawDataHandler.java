@@ -0,0 +1,70 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.common;
+
+import java.nio.ByteBuffer;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Extension interface for content handlers that accept the content
+ * of <em>&lt;RawData&gt;</em> elements as bytes.
+ *
+ * <p>Normally, the SWF parser reports the data of tags it does not
+ * understand as base64-encoded text inside a
+ * <em>&lt;RawData&gt;</em> element, and the SWF writer decodes the
+ * text again. If the parser's content handler implements this
+ * interface and {@link #isRawDataSupported} returns
+ * <code>true</code>, the parser calls {@link #rawData} instead of
+ * <code>characters()</code>, so the tag data is passed on without
+ * being encoded and decoded. The <code>startElement()</code> and
+ * <code>endElement()</code> events for the
+ * <em>&lt;RawData&gt;</em> element are reported as usual.</p>
+ *
+ * <p>Content handlers that pass events on to other handlers (e.g.
+ * filters) should implement this interface by asking the next
+ * handler.</p>
+ *
+ * @author Richard Kunze
+ */
+public interface SWFRawDataHandler {
+
+    /**
+     * Check whether raw data can be passed to {@link #rawData}. The
+     * result must not change while a document is parsed.
+     */
+    public boolean isRawDataSupported();
+
+    /**
+     * Receive the content of the current <em>&lt;RawData&gt;</em>
+     * element as bytes. May be called more than once per element,
+     * the data of all calls must be concatenated.
+     * @param data the data, from the position to the limit of the
+     * buffer. The buffer is read-only, and its content does not
+     * change after the call, so the handler may keep a reference to
+     * it instead of copying the data. The handler must not rely on
+     * the position and limit of <code>data</code> after returning.
+     * @exception SAXException if the data cannot be processed
+     */
+    public void rawData(ByteBuffer data) throws SAXException;
+}
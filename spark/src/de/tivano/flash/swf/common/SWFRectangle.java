@@ -79,6 +79,9 @@ public class SWFRectangle extends SWFDataTypeBase {
     /** Maximum Y coordinate */
     private final int Y_MAX;
 
+    /** The number of bits per coordinate when writing this rectangle */
+    private final int ENTRY_LENGTH;
+
 
     /**
      * Construct a <code>SWFRectangle</code> from a bit input stream.
@@ -93,6 +96,7 @@ public class SWFRectangle extends SWFDataTypeBase {
 	    X_MAX = (int)input.readSBits(fieldLen);
 	    Y_MIN = (int)input.readSBits(fieldLen);
 	    Y_MAX = (int)input.readSBits(fieldLen);
+	    ENTRY_LENGTH = getEntryLength();
 	} catch (EOFException e) {
 	    throw new SWFFormatException(
               "Premature end of file encoutered while reading a rectangle");
@@ -126,6 +130,7 @@ public class SWFRectangle extends SWFDataTypeBase {
 	X_MAX = xmax;
 	Y_MIN = ymin;
 	Y_MAX = ymax;
+	ENTRY_LENGTH = getEntryLength();
     }
 
     /** Get the minimum X coordinate */
@@ -145,7 +150,7 @@ public class SWFRectangle extends SWFDataTypeBase {
      * expressed in bits.
      */
     public long length() {
-	return 5 + 4*getEntryLength();
+	return 5 + 4*ENTRY_LENGTH;
     }
 
     /**
@@ -163,7 +168,7 @@ public class SWFRectangle extends SWFDataTypeBase {
      * @exception IOException if an I/O error occurs.
      */
     public void write(BitOutputStream out) throws IOException {
-	int entryLength = getEntryLength();
+	int entryLength = ENTRY_LENGTH;
 	out.writeBits(entryLength, 5);
 	out.writeBits(X_MIN, entryLength);
 	out.writeBits(X_MAX, entryLength);
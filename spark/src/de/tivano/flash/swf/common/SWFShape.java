@@ -24,7 +24,7 @@ package de.tivano.flash.swf.common;
 
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.io.ByteArrayInputStream;
+import java.util.NoSuchElementException;
 import java.io.IOException;
 import java.io.EOFException;
 
@@ -54,33 +54,304 @@ import java.io.EOFException;
  *   <td>A list of {@link SWFShapeRecord} values</td>
  * </tr>
  * </table>
+ * <p>Shapes can have a lot of records (fonts typically contain
+ * hundreds or thousands of glyph shapes with dozens of edges each),
+ * so the records are not held as individual {@link SWFShapeRecord}
+ * objects. Instead, the record types and coordinates are packed into
+ * arrays of primitive types. Use {@link #getRecordCursor} or {@link
+ * #accept} to walk through the records without creating any
+ * objects, or {@link #parse} to process a shape directly from a bit
+ * stream without building a <code>SWFShape</code> at all. {@link
+ * #getShapeRecords} is still available, but creates a new record
+ * object for every record.</p>
  * @author Richard Kunze
  */
 public class SWFShape extends SWFDataTypeBase {
-    private final int FILL_BITS;
-    private final int LINE_BITS;
 
-    private ArrayList records = new ArrayList();
+    /** Record type of a straight edge record */
+    public static final int STRAIGHT_EDGE = 0;
+
+    /** Record type of a curved edge record */
+    public static final int CURVED_EDGE   = 1;
+
+    /** Record type of a state change record */
+    public static final int STATE_CHANGE  = 2;
+
+    /** Initial capacity of the record type array */
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Layout of the entries in data[] for a state change record. State
+    // changes with new style definitions have an additional entry
+    // holding the index of the record object in newStyles.
+    private static final int STATE_TYPE       = 0;
+    private static final int STATE_FILL_BITS  = 1;
+    private static final int STATE_LINE_BITS  = 2;
+    private static final int STATE_MOVE_X     = 3;
+    private static final int STATE_MOVE_Y     = 4;
+    private static final int STATE_FILL_0     = 5;
+    private static final int STATE_FILL_1     = 6;
+    private static final int STATE_LINE       = 7;
+    private static final int STATE_NEW_STYLES = 8;
+
+    private int fillBits;
+    private int lineBits;
+
+    /** The record types, one entry per record */
+    private byte[] types = new byte[INITIAL_CAPACITY];
+
+    /** The number of records */
+    private int size = 0;
+
+    /**
+     * The record data. Straight edges use two entries (X and Y
+     * delta), curved edges four (control point and anchor point) and
+     * state changes eight or nine (see the <code>STATE_*</code>
+     * constants).
+     */
+    private int[] data = new int[INITIAL_CAPACITY * 2];
+
+    /** The number of used entries in <code>data</code> */
+    private int dataSize = 0;
+
+    /**
+     * State change records with new style definitions. Style
+     * definitions are rare compared to edges, so they are simply
+     * kept as {@link SWFStateChange} objects.
+     */
+    private ArrayList newStyles = null;
 
     /**
-     * Read-only wrapper around an <code>Iterator</code>.
-     * this helper class is used to make sure that the
-     * iterator returned by <code>getShapeRecords()</code> does not
-     * support <code>remove()</code> even when the underlying iterator
-     * supports it.
+     * The length of this shape in bits, or -1 if it has not been
+     * calculated yet. Shapes can't be changed after construction,
+     * so the length only needs to be calculated once.
      */
-    private static class ReadOnlyIterator implements Iterator{
-	private final Iterator DELEGATE;
-	public ReadOnlyIterator(Iterator delegate) {
-	    DELEGATE = delegate;
+    private long length = -1;
+
+    /**
+     * A read-only view on the records of a shape. A record cursor
+     * is positioned before the first record when it is created, and
+     * each call to {@link #next} moves it forward by one record. The
+     * getter methods return the values of the current record, there
+     * are no objects created for the individual records.
+     */
+    public class RecordCursor {
+	private int index = -1;
+	private int pos = 0;
+	private int next = 0;
+
+	private RecordCursor() {}
+
+	/**
+	 * Move to the next record.
+	 * @return <code>false</code> if there are no more records.
+	 */
+	public boolean next() {
+	    if (index + 1 >= size) {
+		index = size;
+		return false;
+	    }
+	    index++;
+	    pos = next;
+	    next += recordDataSize(types[index], data[pos]);
+	    return true;
+	}
+
+	/**
+	 * Get the type of the current record. This is one of {@link
+	 * #STRAIGHT_EDGE}, {@link #CURVED_EDGE} or {@link
+	 * #STATE_CHANGE}.
+	 */
+	public int getType() { return types[current()]; }
+
+	/**
+	 * Get the X value of the current record. This is the X delta
+	 * for a straight edge, the X value of the anchor point for a
+	 * curved edge and the "move to" X position for a state change.
+	 */
+	public int getX() {
+	    switch (getType()) {
+	    case STRAIGHT_EDGE: return data[pos];
+	    case CURVED_EDGE:   return data[pos+2];
+	    default:            return data[pos+STATE_MOVE_X];
+	    }
+	}
+
+	/**
+	 * Get the Y value of the current record. This is the Y delta
+	 * for a straight edge, the Y value of the anchor point for a
+	 * curved edge and the "move to" Y position for a state change.
+	 */
+	public int getY() {
+	    switch (getType()) {
+	    case STRAIGHT_EDGE: return data[pos+1];
+	    case CURVED_EDGE:   return data[pos+3];
+	    default:            return data[pos+STATE_MOVE_Y];
+	    }
+	}
+
+	/**
+	 * Get the X value of the control point. Only meaningful for
+	 * curved edges.
+	 */
+	public int getControlX() { return data[pos]; }
+
+	/**
+	 * Get the Y value of the control point. Only meaningful for
+	 * curved edges.
+	 */
+	public int getControlY() { return data[pos+1]; }
+
+	/** Check if the current record is an "end of shape" record */
+	public boolean isEndOfShape() { return hasFlag(0); }
+
+	/** Check if the current record has a "move to" operation */
+	public boolean hasMoveTo() {
+	    return hasFlag(SWFStateChange.TYPE_MOVE_TO);
+	}
+
+	/** Check if the current record changes the fill style for
+	 * slot 0 */
+	public boolean hasFillStyle0() {
+	    return hasFlag(SWFStateChange.TYPE_FILL_STYLE_0);
+	}
+
+	/** Check if the current record changes the fill style for
+	 * slot 1 */
+	public boolean hasFillStyle1() {
+	    return hasFlag(SWFStateChange.TYPE_FILL_STYLE_1);
+	}
+
+	/** Check if the current record changes the line style */
+	public boolean hasLineStyle() {
+	    return hasFlag(SWFStateChange.TYPE_LINE_STYLE);
+	}
+
+	/** Check if the current record defines new fill and line styles */
+	public boolean hasNewStyles() {
+	    return hasFlag(SWFStateChange.TYPE_DEFINE_STYLE);
+	}
+
+	/** Get the fill style for slot 0 */
+	public int getFillStyle0() { return data[pos+STATE_FILL_0]; }
+
+	/** Get the fill style for slot 1 */
+	public int getFillStyle1() { return data[pos+STATE_FILL_1]; }
+
+	/** Get the line style */
+	public int getLineStyle() { return data[pos+STATE_LINE]; }
+
+	/**
+	 * Get the current record as a {@link SWFShapeRecord}
+	 * object. Note that this creates a new object for most
+	 * records.
+	 */
+	public SWFShapeRecord getRecord() {
+	    return createRecord(types[current()], pos);
+	}
+
+	/**
+	 * Check a state change flag. A flag of 0 checks for an "end
+	 * of shape" record. Always returns <code>false</code> for
+	 * edge records.
+	 */
+	private boolean hasFlag(int flag) {
+	    if (getType() != STATE_CHANGE) return false;
+	    int type = data[pos+STATE_TYPE];
+	    return (flag == 0?type == 0:(type & flag) != 0);
+	}
+
+	/** Get the current index, checking that there is a record */
+	private int current() {
+	    if (index < 0 || index >= size) {
+		throw new IllegalStateException("No current record");
+	    }
+	    return index;
+	}
+    }
+
+    /**
+     * Iterator creating a {@link SWFShapeRecord} object for every
+     * record. The iterator does not support <code>remove()</code>.
+     */
+    private class RecordIterator implements Iterator {
+	private final RecordCursor CURSOR = new RecordCursor();
+	private boolean hasNext = CURSOR.next();
+	public boolean hasNext() { return hasNext; }
+	public Object next() {
+	    if (!hasNext) throw new NoSuchElementException();
+	    Object retval = CURSOR.getRecord();
+	    hasNext = CURSOR.next();
+	    return retval;
 	}
-	public boolean hasNext() { return DELEGATE.hasNext(); }
-	public Object next() { return DELEGATE.next(); }
 	public void remove() {
 	    throw new UnsupportedOperationException();
 	}
     }
 
+    /**
+     * Visitor appending the records reported by {@link #parse} to
+     * the packed record data.
+     */
+    private class Builder implements SWFShapeRecordVisitor {
+	private int currentFillBits;
+	private int currentLineBits;
+	private int lastStateChange;
+
+	public void startShape(int fillBits, int lineBits) {
+	    SWFShape.this.fillBits = fillBits;
+	    SWFShape.this.lineBits = lineBits;
+	    currentFillBits = fillBits;
+	    currentLineBits = lineBits;
+	}
+
+	public void styleChange(int flags, int fillStyle0, int fillStyle1,
+				int lineStyle, SWFStateChange styles) {
+	    int pos = addStateChange(flags);
+	    data[pos+STATE_FILL_0] = fillStyle0;
+	    data[pos+STATE_FILL_1] = fillStyle1;
+	    data[pos+STATE_LINE]   = lineStyle;
+	    if (styles != null) {
+		if (newStyles == null) newStyles = new ArrayList();
+		data[pos+STATE_NEW_STYLES] = newStyles.size();
+		newStyles.add(styles);
+		currentFillBits = styles.getNewStyleFillBits();
+		currentLineBits = styles.getNewStyleLineBits();
+	    }
+	}
+
+	public void moveTo(int x, int y) {
+	    data[lastStateChange+STATE_MOVE_X] = x;
+	    data[lastStateChange+STATE_MOVE_Y] = y;
+	}
+
+	public void lineTo(int dx, int dy) {
+	    int pos = add(STRAIGHT_EDGE, 2);
+	    data[pos]   = dx;
+	    data[pos+1] = dy;
+	}
+
+	public void curveTo(int controlX, int controlY,
+			    int anchorX, int anchorY) {
+	    int pos = add(CURVED_EDGE, 4);
+	    data[pos]   = controlX;
+	    data[pos+1] = controlY;
+	    data[pos+2] = anchorX;
+	    data[pos+3] = anchorY;
+	}
+
+	public void endShape() { addStateChange(0); }
+
+	/** Append a state change record with the given flags */
+	private int addStateChange(int flags) {
+	    int pos = add(STATE_CHANGE, recordDataSize(STATE_CHANGE, flags));
+	    data[pos+STATE_TYPE]      = flags;
+	    data[pos+STATE_FILL_BITS] = currentFillBits;
+	    data[pos+STATE_LINE_BITS] = currentLineBits;
+	    lastStateChange = pos;
+	    return pos;
+	}
+    }
+
     /**
      * Construct a <code>SWFShape</code> from a bit input stream.
      * @param input the input stream to read from
@@ -90,58 +361,268 @@ public class SWFShape extends SWFDataTypeBase {
      * not be read from the stream.
      */
     public SWFShape(BitInputStream input, boolean useRGBA) throws IOException {
+	parse(input, useRGBA, new Builder());
+	trim();
+    }
+
+
+    public int rawSize;
+    /**
+     * Construct a <code>SWFShape</code> from a byte array.
+     * @param input the byte array to read from
+     * @param useRGBA Flag, inidcates whether fill- and linestyle
+     * definitions use RGB or RGBA values.
+     * @exception SWFFormatException if the complete shape could not be read.
+     */
+    public SWFShape(byte[] input, boolean useRGBA) throws IOException {
+	this(new ByteBufferBitInputStream(input), useRGBA);
+	rawSize = input.length;
+    }
+
+    /**
+     * Decode a shape structure from a bit input stream and report
+     * its records to <code>visitor</code> as they are read. Apart
+     * from new style definitions, no objects are created for the
+     * shape records.
+     * @param input the input stream to read from
+     * @param useRGBA Flag, inidcates whether fill- and linestyle
+     * definitions use RGB or RGBA values.
+     * @param visitor the visitor to report the shape records to
+     * @exception SWFFormatException if the complete shape could
+     * not be read from the stream.
+     * @exception IOException if an I/O error occurs or the visitor
+     * throws an exception
+     */
+    public static void parse(BitInputStream input, boolean useRGBA,
+			     SWFShapeRecordVisitor visitor)
+	          throws IOException {
 	try {
-	    FILL_BITS = (int)input.readUBits(4);
-	    LINE_BITS = (int)input.readUBits(4);
+	    int fillBits = (int)input.readUBits(4);
+	    int lineBits = (int)input.readUBits(4);
+	    visitor.startShape(fillBits, lineBits);
 	    // Read the shape records. Note that the number of fill
 	    // and line style index bits to used can be changed by a "new
 	    // styles" shape record.
-	    int currentFillBits = FILL_BITS;
-	    int currentLineBits = LINE_BITS;
-	    SWFShapeRecord record;
-	    do {
-		record = SWFShapeRecord.parse(input,
-					      currentFillBits,
-					      currentLineBits,
-					      useRGBA);
-		if (record instanceof SWFStateChange) {
-		    SWFStateChange s = (SWFStateChange)record;
-		    if (s.hasNewStyles()) {
-			currentFillBits = s.getNewStyleFillBits();
-			currentLineBits = s.getNewStyleLineBits();
+	    while (true) {
+		if (input.readBit()) {
+		    // Edge record. Now test if curve or straight line
+		    int nbits;
+		    if (input.readBit()) {
+			nbits = (int)input.readUBits(4) + 2;
+			if (input.readBit()) {
+			    // General line
+			    int dx = (int)input.readSBits(nbits);
+			    visitor.lineTo(dx, (int)input.readSBits(nbits));
+			} else if (input.readBit()) {
+			    // Vertical line
+			    visitor.lineTo(0, (int)input.readSBits(nbits));
+			} else {
+			    // Horizontal line
+			    visitor.lineTo((int)input.readSBits(nbits), 0);
+			}
+		    } else {
+			nbits = (int)input.readUBits(4) + 2;
+			int controlX = (int)input.readSBits(nbits);
+			int controlY = (int)input.readSBits(nbits);
+			int anchorX  = (int)input.readSBits(nbits);
+			int anchorY  = (int)input.readSBits(nbits);
+			visitor.curveTo(controlX, controlY, anchorX, anchorY);
 		    }
+		    continue;
+		}
+
+		// State change record. See SWFStateChange for the format.
+		int flags = (int)input.readUBits(5);
+		if (flags == 0) {
+		    visitor.endShape();
+		    return;
+		}
+		int moveX = 0;
+		int moveY = 0;
+		int fillStyle0 = 0;
+		int fillStyle1 = 0;
+		int lineStyle  = 0;
+		SWFStateChange styles = null;
+		if ((flags & SWFShapeRecordVisitor.MOVE_TO) != 0) {
+		    int nbits = (int)input.readUBits(5);
+		    moveX = (int)input.readSBits(nbits);
+		    moveY = (int)input.readSBits(nbits);
+		}
+		if ((flags & SWFShapeRecordVisitor.FILL_STYLE_0) != 0) {
+		    fillStyle0 = (int)input.readUBits(fillBits);
+		}
+		if ((flags & SWFShapeRecordVisitor.FILL_STYLE_1) != 0) {
+		    fillStyle1 = (int)input.readUBits(fillBits);
 		}
-		records.add(record);
-	    } while (!((record instanceof SWFStateChange)
-		        && ((SWFStateChange)record).isEndOfShape()));
+		if ((flags & SWFShapeRecordVisitor.LINE_STYLE) != 0) {
+		    lineStyle = (int)input.readUBits(lineBits);
+		}
+		if ((flags & SWFShapeRecordVisitor.NEW_STYLES) != 0) {
+		    SWFMoveTo moveTo = null;
+		    if ((flags & SWFShapeRecordVisitor.MOVE_TO) != 0) {
+			moveTo = new SWFMoveTo(moveX, moveY);
+		    }
+		    styles = new SWFStateChange(flags, fillBits, lineBits,
+						moveTo, fillStyle0,
+						fillStyle1, lineStyle);
+		    styles.readNewStyles(input, useRGBA);
+		    fillBits = styles.getNewStyleFillBits();
+		    lineBits = styles.getNewStyleLineBits();
+		}
+		visitor.styleChange(flags, fillStyle0, fillStyle1,
+				    lineStyle, styles);
+		if ((flags & SWFShapeRecordVisitor.MOVE_TO) != 0) {
+		    visitor.moveTo(moveX, moveY);
+		}
+	    }
 	} catch (EOFException e) {
 	    throw new SWFFormatException(
               "Premature end of file encoutered while reading a shape");
 	}
     }
 
+    /**
+     * Report the records of this shape to <code>visitor</code>, in
+     * the same way as {@link #parse} does.
+     * @param visitor the visitor to report the shape records to
+     * @exception IOException if the visitor throws an exception
+     */
+    public void accept(SWFShapeRecordVisitor visitor) throws IOException {
+	visitor.startShape(fillBits, lineBits);
+	int pos = 0;
+	for (int i=0; i<size; i++) {
+	    switch (types[i]) {
+	    case STRAIGHT_EDGE:
+		visitor.lineTo(data[pos], data[pos+1]);
+		break;
+	    case CURVED_EDGE:
+		visitor.curveTo(data[pos], data[pos+1],
+				data[pos+2], data[pos+3]);
+		break;
+	    default:
+		int flags = data[pos+STATE_TYPE];
+		if (flags == 0) {
+		    visitor.endShape();
+		    break;
+		}
+		SWFStateChange styles = null;
+		if ((flags & SWFShapeRecordVisitor.NEW_STYLES) != 0) {
+		    styles = (SWFStateChange)newStyles.get(
+					      data[pos+STATE_NEW_STYLES]);
+		}
+		visitor.styleChange(flags, data[pos+STATE_FILL_0],
+				    data[pos+STATE_FILL_1],
+				    data[pos+STATE_LINE], styles);
+		if ((flags & SWFShapeRecordVisitor.MOVE_TO) != 0) {
+		    visitor.moveTo(data[pos+STATE_MOVE_X],
+				   data[pos+STATE_MOVE_Y]);
+		}
+	    }
+	    pos += recordDataSize(types[i], data[pos]);
+	}
+    }
+
+    /**
+     * Append a record of type <code>type</code> with
+     * <code>count</code> data entries.
+     * @return the position of the first data entry of the new record
+     */
+    private int add(int type, int count) {
+	if (size == types.length) {
+	    byte[] tmp = new byte[size * 2];
+	    System.arraycopy(types, 0, tmp, 0, size);
+	    types = tmp;
+	}
+	if (dataSize + count > data.length) {
+	    int[] tmp = new int[Math.max(data.length * 2, dataSize + count)];
+	    System.arraycopy(data, 0, tmp, 0, dataSize);
+	    data = tmp;
+	}
+	types[size++] = (byte)type;
+	int pos = dataSize;
+	dataSize += count;
+	return pos;
+    }
+
+    /** Free the unused parts of the record arrays. */
+    private void trim() {
+	if (size < types.length) {
+	    byte[] tmp = new byte[size];
+	    System.arraycopy(types, 0, tmp, 0, size);
+	    types = tmp;
+	}
+	if (dataSize < data.length) {
+	    int[] tmp = new int[dataSize];
+	    System.arraycopy(data, 0, tmp, 0, dataSize);
+	    data = tmp;
+	}
+    }
 
-    public int rawSize;
     /**
-     * Construct a <code>SWFShape</code> from a byte array.
-     * @param input the byte array to read from
-     * @param useRGBA Flag, inidcates whether fill- and linestyle
-     * definitions use RGB or RGBA values.
-     * @exception SWFFormatException if the complete shape could not be read.
+     * Get the number of data entries used by a record.
+     * @param type the record type
+     * @param stateType the state change flags. Ignored for edge records.
      */
-    public SWFShape(byte[] input, boolean useRGBA) throws IOException {
-	this(new BitInputStream(new ByteArrayInputStream(input)), useRGBA);
-	rawSize = input.length;
+    private static int recordDataSize(int type, int stateType) {
+	switch (type) {
+	case STRAIGHT_EDGE: return 2;
+	case CURVED_EDGE:   return 4;
+	default:
+	    return ((stateType & SWFStateChange.TYPE_DEFINE_STYLE) != 0?
+		    STATE_NEW_STYLES + 1:STATE_NEW_STYLES);
+	}
     }
-    
+
+    /**
+     * Create a record object for the record of type
+     * <code>type</code> with data starting at <code>pos</code>
+     */
+    private SWFShapeRecord createRecord(int type, int pos) {
+	switch (type) {
+	case STRAIGHT_EDGE:
+	    return new SWFStraightEdge(data[pos], data[pos+1]);
+	case CURVED_EDGE:
+	    return new SWFCurvedEdge(data[pos], data[pos+1],
+				     data[pos+2], data[pos+3]);
+	default:
+	    int stateType = data[pos+STATE_TYPE];
+	    if ((stateType & SWFStateChange.TYPE_DEFINE_STYLE) != 0) {
+		return (SWFShapeRecord)newStyles.get(
+				     data[pos+STATE_NEW_STYLES]);
+	    }
+	    SWFMoveTo moveTo = null;
+	    if ((stateType & SWFStateChange.TYPE_MOVE_TO) != 0) {
+		moveTo = new SWFMoveTo(data[pos+STATE_MOVE_X],
+				       data[pos+STATE_MOVE_Y]);
+	    }
+	    return new SWFStateChange(stateType,
+				      data[pos+STATE_FILL_BITS],
+				      data[pos+STATE_LINE_BITS],
+				      moveTo,
+				      data[pos+STATE_FILL_0],
+				      data[pos+STATE_FILL_1],
+				      data[pos+STATE_LINE]);
+	}
+    }
+
+    /** Get the number of shape records in this shape. */
+    public int getRecordCount() { return size; }
+
+    /**
+     * Get a cursor over the shape records (edges and state changes)
+     * that make up this shape.
+     */
+    public RecordCursor getRecordCursor() { return new RecordCursor(); }
 
     /**
      * Get an iterator over the list of shape records (edges and state
      * changes) that make up this shape. The objects in this list are
-     * all of type {@link SWFShapeRecord}.
+     * all of type {@link SWFShapeRecord}. Note that the record
+     * objects are created on the fly, {@link #getRecordCursor} is a
+     * lot cheaper if you just need the record data.
      */
     public Iterator getShapeRecords() {
-	return new ReadOnlyIterator(records.iterator());
+	return new RecordIterator();
     }
 
     /**
@@ -149,10 +630,27 @@ public class SWFShape extends SWFDataTypeBase {
      * expressed in bits.
      */
     public long length() {
+	if (length < 0) length = calculateLength();
+	return length;
+    }
+
+    /** Calculate the length of this record in bits. */
+    private long calculateLength() {
 	long length = 8;
-	Iterator entries = getShapeRecords();
-	while (entries.hasNext()) {
-	    length += ((SWFDataType)entries.next()).length();
+	int pos = 0;
+	for (int i=0; i<size; i++) {
+	    switch (types[i]) {
+	    case STRAIGHT_EDGE:
+		length += SWFStraightEdge.length(data[pos], data[pos+1]);
+		break;
+	    case CURVED_EDGE:
+		length += SWFCurvedEdge.length(data[pos], data[pos+1],
+					       data[pos+2], data[pos+3]);
+		break;
+	    default:
+		length += createRecord(STATE_CHANGE, pos).length();
+	    }
+	    pos += recordDataSize(types[i], data[pos]);
 	}
 	return length;
     }
@@ -163,11 +661,22 @@ public class SWFShape extends SWFDataTypeBase {
      * @exception IOException if an I/O error occurs.
      */
     public void write(BitOutputStream out) throws IOException {
-	out.writeBits(FILL_BITS, 4);
-	out.writeBits(LINE_BITS, 4);
-	Iterator entries = getShapeRecords();
-	while (entries.hasNext()) {
-	    ((SWFDataType)entries.next()).write(out);
+	out.writeBits(fillBits, 4);
+	out.writeBits(lineBits, 4);
+	int pos = 0;
+	for (int i=0; i<size; i++) {
+	    switch (types[i]) {
+	    case STRAIGHT_EDGE:
+		SWFStraightEdge.write(out, data[pos], data[pos+1]);
+		break;
+	    case CURVED_EDGE:
+		SWFCurvedEdge.write(out, data[pos], data[pos+1],
+				    data[pos+2], data[pos+3]);
+		break;
+	    default:
+		createRecord(STATE_CHANGE, pos).write(out);
+	    }
+	    pos += recordDataSize(types[i], data[pos]);
 	}
     }
 }
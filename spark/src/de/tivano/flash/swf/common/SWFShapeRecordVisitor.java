@@ -0,0 +1,136 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+
+package de.tivano.flash.swf.common;
+
+import java.io.IOException;
+
+/**
+ * Callback interface for the records of a SWF shape structure.
+ *
+ * <p>{@link SWFShape#parse} calls the methods of this interface
+ * directly while decoding a shape from a bit stream, and {@link
+ * SWFShape#accept} calls them for the records of an already decoded
+ * shape. No record objects are created in either case, so this is
+ * the cheapest way to process shapes with a lot of records, such as
+ * the glyph outlines of a font.</p>
+ *
+ * <p>The methods are called in the order of the records in the
+ * shape:</p>
+ * <ul>
+ * <li>{@link #startShape} once, before any other method.
+ * <li>{@link #lineTo} for every straight edge record.
+ * <li>{@link #curveTo} for every curved edge record.
+ * <li>{@link #styleChange} for every state change record except the
+ * "end of shape" record. If the state change has a "move to"
+ * operation, {@link #moveTo} is called directly afterwards.
+ * <li>{@link #endShape} once, for the "end of shape" record.
+ * </ul>
+ *
+ * <p>All coordinates are passed exactly as they are stored in the SWF
+ * file, i.e. edge coordinates are deltas and "move to" coordinates
+ * are relative to the shape origin.</p>
+ *
+ * @author Richard Kunze
+ */
+public interface SWFShapeRecordVisitor {
+
+    /** Flag for a state change with a "move to" operation */
+    public static final int MOVE_TO      = 1;
+
+    /** Flag for a state change that changes the fill style for slot 0 */
+    public static final int FILL_STYLE_0 = 2;
+
+    /** Flag for a state change that changes the fill style for slot 1 */
+    public static final int FILL_STYLE_1 = 4;
+
+    /** Flag for a state change that changes the line style */
+    public static final int LINE_STYLE   = 8;
+
+    /** Flag for a state change that defines new fill and line styles */
+    public static final int NEW_STYLES   = 16;
+
+    /**
+     * Start of the shape.
+     * @param fillBits the number of fill style index bits from the
+     * shape header
+     * @param lineBits the number of line style index bits from the
+     * shape header
+     * @exception IOException if the shape cannot be processed
+     */
+    public void startShape(int fillBits, int lineBits) throws IOException;
+
+    /**
+     * A state change record.
+     * @param flags the changes in this record, a combination of
+     * {@link #MOVE_TO}, {@link #FILL_STYLE_0}, {@link #FILL_STYLE_1},
+     * {@link #LINE_STYLE} and {@link #NEW_STYLES}
+     * @param fillStyle0 the new fill style for slot 0. Only
+     * meaningful if <code>flags</code> includes {@link #FILL_STYLE_0}.
+     * @param fillStyle1 the new fill style for slot 1. Only
+     * meaningful if <code>flags</code> includes {@link #FILL_STYLE_1}.
+     * @param lineStyle the new line style. Only meaningful if
+     * <code>flags</code> includes {@link #LINE_STYLE}.
+     * @param newStyles the record with the new style definitions if
+     * <code>flags</code> includes {@link #NEW_STYLES}, otherwise
+     * <code>null</code>
+     * @exception IOException if the shape cannot be processed
+     */
+    public void styleChange(int flags, int fillStyle0, int fillStyle1,
+			    int lineStyle, SWFStateChange newStyles)
+	throws IOException;
+
+    /**
+     * The "move to" operation of the preceding state change record.
+     * @param x the X position
+     * @param y the Y position
+     * @exception IOException if the shape cannot be processed
+     */
+    public void moveTo(int x, int y) throws IOException;
+
+    /**
+     * A straight edge record.
+     * @param dx the X delta from the previous end point
+     * @param dy the Y delta from the previous end point
+     * @exception IOException if the shape cannot be processed
+     */
+    public void lineTo(int dx, int dy) throws IOException;
+
+    /**
+     * A curved edge record.
+     * @param controlX X value of the control point
+     * @param controlY Y value of the control point
+     * @param anchorX X value of the anchor point
+     * @param anchorY Y value of the anchor point
+     * @see SWFCurvedEdge
+     * @exception IOException if the shape cannot be processed
+     */
+    public void curveTo(int controlX, int controlY, int anchorX, int anchorY)
+	throws IOException;
+
+    /**
+     * The "end of shape" record.
+     * @exception IOException if the shape cannot be processed
+     */
+    public void endShape() throws IOException;
+}
@@ -236,28 +236,69 @@ public class SWFStateChange extends SWFShapeRecord {
 	    if ((type & TYPE_LINE_STYLE) != 0) {
 		lineStyle = (int)input.readUBits(lineBits);
 	    }
-	    if ((type & TYPE_DEFINE_STYLE) != 0) {
-		int count = input.readUByte();
-		if (count == 0xFF) count = input.readUW16LSB();
-		fillStyles = new SWFFillStyle[count];
-		for (int i=0; i<count; i++) {
-		    fillStyles[i] = SWFFillStyle.parse(input, useRGBA);
-		}
-		count = input.readUByte();
-		if (count == 0xFF) count = input.readUW16LSB();
-		lineStyles = new SWFLineStyle[count];
-		for (int i=0; i<count; i++) {
-		    lineStyles[i] = SWFLineStyle.parse(input, useRGBA);
-		}
-		newStyleFillBits = (int)input.readUBits(4);
-		newStyleLineBits = (int)input.readUBits(4);
-	    }
+	    if ((type & TYPE_DEFINE_STYLE) != 0) readNewStyles(input, useRGBA);
 	} catch (EOFException e) {
 	    throw new SWFFormatException(
 		  "Could not read a complete state change record.");
 	}
     }
 
+    /**
+     * Construct a <code>SWFStateChange</code> shape record from its
+     * values. Used by {@link SWFShape} to create records without
+     * going through the stream constructor. If <code>type</code>
+     * includes <code>TYPE_DEFINE_STYLE</code>, the style definitions
+     * must be read with {@link #readNewStyles}.
+     * @param type the state change flags (a combination of the
+     * <code>TYPE_*</code> constants)
+     * @param fillBits the number of bits used as index in a fill
+     * style change.
+     * @param lineBits the number of bits used for the index in a line
+     * style change.
+     * @param moveTo the "move to" operation, or <code>null</code>
+     * @param fillStyle0 the fill style for slot 0
+     * @param fillStyle1 the fill style for slot 1
+     * @param lineStyle the line style
+     */
+    SWFStateChange(int type, int fillBits, int lineBits, SWFMoveTo moveTo,
+		   int fillStyle0, int fillStyle1, int lineStyle) {
+	this.type = type;
+	this.fillBits = fillBits;
+	this.lineBits = lineBits;
+	this.moveTo = moveTo;
+	this.fillStyle0 = fillStyle0;
+	this.fillStyle1 = fillStyle1;
+	this.lineStyle = lineStyle;
+    }
+
+    /**
+     * Read the new style definitions of this record from a bit input
+     * stream.
+     * @param input the bit stream to read from, positioned at the
+     * start of the style definitions
+     * @param useRGBA Flag, inidcates whether fill- and linestyle
+     * definitions use RGB or RGBA values.
+     * @exception EOFException if the style definitions could not be
+     * read completely
+     */
+    void readNewStyles(BitInputStream input, boolean useRGBA)
+	 throws IOException {
+	int count = input.readUByte();
+	if (count == 0xFF) count = input.readUW16LSB();
+	fillStyles = new SWFFillStyle[count];
+	for (int i=0; i<count; i++) {
+	    fillStyles[i] = SWFFillStyle.parse(input, useRGBA);
+	}
+	count = input.readUByte();
+	if (count == 0xFF) count = input.readUW16LSB();
+	lineStyles = new SWFLineStyle[count];
+	for (int i=0; i<count; i++) {
+	    lineStyles[i] = SWFLineStyle.parse(input, useRGBA);
+	}
+	newStyleFillBits = (int)input.readUBits(4);
+	newStyleLineBits = (int)input.readUBits(4);
+    }
+
     /** Check if this state change is an "end of shape" record */
     public boolean isEndOfShape() { return type == 0; }
 
@@ -342,7 +383,8 @@ public class SWFStateChange extends SWFShapeRecord {
 	if (hasFillStyle1()) length += fillBits;
 	if (hasLineStyle()) length += lineBits;
 	if (hasNewStyles()) {
-	    length += 16;
+	    // Style counts and new index bits
+	    length += 24;
 	    if (getFillStyleCount() >= 0xFF) length += 16;
 	    if (getLineStyleCount() >= 0xFF) length += 16;
 	    for (int i=0; i<getFillStyleCount(); i++) {
@@ -391,8 +433,8 @@ public class SWFStateChange extends SWFShapeRecord {
 	    for (int i=0; i<getLineStyleCount(); i++) {
 		getNewLineStyle(i).write(out);
 	    }
-	    out.writeBits(getFillBits(), 4);
-	    out.writeBits(getLineBits(), 4);
+	    out.writeBits(getNewStyleFillBits(), 4);
+	    out.writeBits(getNewStyleLineBits(), 4);
 	}
     }
 }
@@ -133,6 +133,17 @@ public class SWFStraightEdge extends SWFShapeRecord {
 	}
     }
     
+    /**
+     * Construct a <code>SWFStraightEdge</code> shape record from
+     * the X and Y delta.
+     * @param dx the X delta from the previous end point
+     * @param dy the Y delta from the previous end point
+     */
+    public SWFStraightEdge(int dx, int dy) {
+	DELTA_X = dx;
+	DELTA_Y = dy;
+    }
+    
     /** Get the X value of the control point */
     public int getX() { return DELTA_X; }
 
@@ -149,18 +160,25 @@ public class SWFStraightEdge extends SWFShapeRecord {
      * Get the length of this record. Note that the length is
      * expressed in bits.
      */
-    public long length() {
+    public long length() { return length(getX(), getY()); }
+
+    /**
+     * Get the length of a straight edge record with the given X and
+     * Y delta, in bits. Used by {@link SWFShape} to calculate the
+     * length of an edge without creating a record object.
+     */
+    static long length(int dx, int dy) {
 	// The length includes the edge/state record flag...
-	if (isHorizontal() || isVertical()) return 8 + getEntryLength();
-	else return 7 + 2 * getEntryLength();
+	if (dx == 0 || dy == 0) return 8 + getEntryLength(dx, dy);
+	else return 7 + 2 * getEntryLength(dx, dy);
     }
 
     /**
      * Get the number of bits needed to represent the individual data
-     * entries in this object.
+     * entries of a straight edge.
      */
-    private int getEntryLength() {
-	int size = Math.max(minBitsS(getX()), minBitsS(getY()));
+    private static int getEntryLength(int dx, int dy) {
+	int size = Math.max(minBitsS(dx), minBitsS(dy));
 	// Shape entries always take at least two bits...
 	return (size<2?2:size);
     }
@@ -171,27 +189,37 @@ public class SWFStraightEdge extends SWFShapeRecord {
      * @exception IOException if an I/O error occurs.
      */
     public void write(BitOutputStream out) throws IOException {
-	int entryLength = getEntryLength();
+	write(out, getX(), getY());
+    }
+
+    /**
+     * Write a straight edge record with the given X and Y delta to
+     * <code>out</code>. Used by {@link SWFShape} to write an edge
+     * without creating a record object.
+     */
+    static void write(BitOutputStream out, int dx, int dy)
+	        throws IOException {
+	int entryLength = getEntryLength(dx, dy);
 	// Write the edge record and edge type flags first...
 	out.writeBits(3,2);	
 	// The SWF file holds entryLength-2, not the length itself...
 	out.writeBits(entryLength-2, 4);
-	if (isHorizontal()) {
+	if (dy == 0) {
 	    // Write the flags for "no general line, not vertical"
 	    out.writeBits(0, 2);
 	    // And write the X value...
-	    out.writeBits(getX(), entryLength);
-	} else if (isVertical()) {
+	    out.writeBits(dx, entryLength);
+	} else if (dx == 0) {
 	    // Write the flags for "no general line, vertical"
 	    out.writeBits(1, 2);
 	    // And write the > value...
-	    out.writeBits(getY(), entryLength);
+	    out.writeBits(dy, entryLength);
 	} else {
 	    // Write the flag for "general line"
 	    out.writeBits(1, 1);
 	    // ... and the actual data
-	    out.writeBits(getX(), entryLength);
-	    out.writeBits(getY(), entryLength);
+	    out.writeBits(dx, entryLength);
+	    out.writeBits(dy, entryLength);
 	}
     }
 }
@@ -69,6 +69,12 @@ public class SWFTagHeader {
     /** The record length */
     private long length;
 
+    /**
+     * Flag, set if this header has been read in the long form
+     * regardless of the record length
+     */
+    private boolean forceLongHeader = false;
+
     /** Flag for a long tag header */
     private final int LONG_HEADER_FLAG = 0x3f;
 
@@ -98,6 +104,7 @@ public class SWFTagHeader {
 	lengthTmp = tmp & 0x3f;
 	
 	if (lengthTmp == LONG_HEADER_FLAG) {
+	    forceLongHeader = true;
 	    try {
 		lengthTmp = input.readUW32LSB();
 	    } catch (EOFException e) {
@@ -182,6 +189,7 @@ public class SWFTagHeader {
 	// above certain length limits but differing from the standard
 	// 62, and of course the specs don't mention this fact with a
 	// single word. SWF sucks.
+	if (forceLongHeader) return true;
 	switch (getID()) {
 	/*
 	case SWFTypes.DEFINE_FONTINFO:
@@ -0,0 +1,83 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.common;
+
+import org.xml.sax.Attributes;
+
+/**
+ * Extension of the SAX <code>Attributes</code> interface for
+ * attributes with numeric values.
+ *
+ * <p>Attribute lists implementing this interface may hold numeric
+ * values in binary form and only convert them to strings when
+ * <code>getValue()</code> is called. Consumers aware of this
+ * interface can read the numbers directly and so avoid formatting
+ * and parsing them again. To all other consumers, the attributes
+ * look like any other SAX attributes.</p>
+ *
+ * @author Richard Kunze
+ */
+public interface SWFTypedAttributes extends Attributes {
+
+    /** Value type of an attribute that only has a string value */
+    public static final int VALUE_STRING = 0;
+
+    /** Value type of an attribute with an integer value */
+    public static final int VALUE_LONG   = 1;
+
+    /** Value type of an attribute with a floating point value */
+    public static final int VALUE_DOUBLE = 2;
+
+    /**
+     * Get the value type of an attribute.
+     * @param index the attribute index (zero-based)
+     * @return one of {@link #VALUE_STRING}, {@link #VALUE_LONG} or
+     * {@link #VALUE_DOUBLE}
+     * @exception IndexOutOfBoundsException if <code>index</code> is
+     * out of range
+     */
+    public int getValueType(int index);
+
+    /**
+     * Get the value of an attribute as an integer. Values of type
+     * {@link #VALUE_STRING} are parsed with
+     * <code>Long.parseLong()</code>, values of type {@link
+     * #VALUE_DOUBLE} are rejected.
+     * @param index the attribute index (zero-based)
+     * @exception NumberFormatException if the value is not an integer
+     * @exception IndexOutOfBoundsException if <code>index</code> is
+     * out of range
+     */
+    public long getLongValue(int index);
+
+    /**
+     * Get the value of an attribute as a floating point number.
+     * Values of type {@link #VALUE_STRING} are parsed with
+     * <code>Double.parseDouble()</code>.
+     * @param index the attribute index (zero-based)
+     * @exception NumberFormatException if the value is not a number
+     * @exception IndexOutOfBoundsException if <code>index</code> is
+     * out of range
+     */
+    public double getDoubleValue(int index);
+}
@@ -0,0 +1,360 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.parser;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.nio.ByteBuffer;
+
+import de.tivano.flash.swf.common.SWFRawDataHandler;
+import de.tivano.flash.swf.common.SWFTypedAttributes;
+
+/**
+ * A recorded sequence of SAX events.
+ *
+ * <p>This class records the SAX events it receives as a
+ * <code>ContentHandler</code> and <code>ErrorHandler</code> and
+ * replays them later, possibly on a different thread. The events are
+ * stored in a few flat arrays, and character data is copied into a
+ * single shared array, so recording an event is cheap. Attributes
+ * are copied, since tag readers may reuse their attribute
+ * objects.</p>
+ *
+ * <p>Raw data passed via the {@link SWFRawDataHandler} interface is
+ * recorded by reference. It is only accepted if enabled with {@link
+ * #setRawDataSupported}, and can only be replayed to a handler
+ * that accepts raw data as well.</p>
+ *
+ * <p>A buffer can be reused by calling {@link #clear} after
+ * replaying its contents.</p>
+ *
+ * <p><em>Caution: This class is <strong>not</strong> thread safe.
+ * Recording and replaying must not overlap.</em></p>
+ *
+ * @author Richard Kunze
+ */
+public class SAXEventBuffer
+    implements ContentHandler, ErrorHandler, SWFRawDataHandler {
+
+    // Event types
+    private static final int START_DOCUMENT         = 0;
+    private static final int END_DOCUMENT           = 1;
+    private static final int START_ELEMENT          = 2;
+    private static final int END_ELEMENT            = 3;
+    private static final int CHARACTERS             = 4;
+    private static final int IGNORABLE_WHITESPACE   = 5;
+    private static final int PROCESSING_INSTRUCTION = 6;
+    private static final int START_PREFIX_MAPPING   = 7;
+    private static final int END_PREFIX_MAPPING     = 8;
+    private static final int SKIPPED_ENTITY         = 9;
+    private static final int DOCUMENT_LOCATOR       = 10;
+    private static final int WARNING                = 11;
+    private static final int ERROR                  = 12;
+    private static final int FATAL_ERROR            = 13;
+    private static final int RAW_DATA               = 14;
+
+    /** Shared attribute list for elements without attributes */
+    private static final Attributes EMPTY_ATTRIBUTES = new AttributesImpl();
+
+    /** The event types */
+    private int[] types = new int[64];
+
+    /**
+     * Event arguments. For character events, the offset into
+     * <code>chars</code>, for all other events the index of the
+     * first argument in <code>objects</code>.
+     */
+    private int[] args = new int[64];
+
+    /** Length of the character data for character events */
+    private int[] lengths = new int[64];
+
+    /** Number of recorded events */
+    private int size = 0;
+
+    /** Object arguments of the events */
+    private Object[] objects = new Object[256];
+
+    /** Number of used entries in <code>objects</code> */
+    private int objectCount = 0;
+
+    /** Character data */
+    private char[] chars = new char[1024];
+
+    /** Number of used entries in <code>chars</code> */
+    private int charCount = 0;
+
+    /** Flag, set if raw data is accepted */
+    private boolean rawDataSupported = false;
+
+    /** Get the number of recorded events */
+    public int size() { return size; }
+
+    /** Get the number of recorded characters */
+    public int characterCount() { return charCount; }
+
+    /** Discard all recorded events. */
+    public void clear() {
+	for (int i=0; i<objectCount; i++) objects[i] = null;
+	size = 0;
+	objectCount = 0;
+	charCount = 0;
+    }
+
+    /**
+     * Replay the recorded events.
+     * @param handler the handler to send content events to
+     * @param errorHandler the handler to send error events to. If
+     * this is <code>null</code>, warnings and errors are ignored and
+     * fatal errors are thrown.
+     * @exception SAXException if one of the handlers throws a
+     * <code>SAXException</code>
+     */
+    public void replay(ContentHandler handler, ErrorHandler errorHandler)
+	        throws SAXException {
+	for (int i=0; i<size; i++) {
+	    int arg = args[i];
+	    switch (types[i]) {
+	    case START_DOCUMENT:
+		handler.startDocument();
+		break;
+	    case END_DOCUMENT:
+		handler.endDocument();
+		break;
+	    case START_ELEMENT:
+		handler.startElement((String)objects[arg],
+				     (String)objects[arg+1],
+				     (String)objects[arg+2],
+				     (Attributes)objects[arg+3]);
+		break;
+	    case END_ELEMENT:
+		handler.endElement((String)objects[arg],
+				   (String)objects[arg+1],
+				   (String)objects[arg+2]);
+		break;
+	    case CHARACTERS:
+		handler.characters(chars, arg, lengths[i]);
+		break;
+	    case IGNORABLE_WHITESPACE:
+		handler.ignorableWhitespace(chars, arg, lengths[i]);
+		break;
+	    case PROCESSING_INSTRUCTION:
+		handler.processingInstruction((String)objects[arg],
+					      (String)objects[arg+1]);
+		break;
+	    case START_PREFIX_MAPPING:
+		handler.startPrefixMapping((String)objects[arg],
+					   (String)objects[arg+1]);
+		break;
+	    case END_PREFIX_MAPPING:
+		handler.endPrefixMapping((String)objects[arg]);
+		break;
+	    case SKIPPED_ENTITY:
+		handler.skippedEntity((String)objects[arg]);
+		break;
+	    case DOCUMENT_LOCATOR:
+		handler.setDocumentLocator((Locator)objects[arg]);
+		break;
+	    case WARNING:
+		if (errorHandler != null) {
+		    errorHandler.warning((SAXParseException)objects[arg]);
+		}
+		break;
+	    case ERROR:
+		if (errorHandler != null) {
+		    errorHandler.error((SAXParseException)objects[arg]);
+		}
+		break;
+	    case RAW_DATA:
+		if (!(handler instanceof SWFRawDataHandler)) {
+		    throw new SAXException(
+			"Content handler does not accept raw data");
+		}
+		((SWFRawDataHandler)handler).rawData(
+		    ((ByteBuffer)objects[arg]).duplicate());
+		break;
+	    case FATAL_ERROR:
+		if (errorHandler != null) {
+		    errorHandler.fatalError((SAXParseException)objects[arg]);
+		} else throw (SAXParseException)objects[arg];
+		break;
+	    }
+	}
+    }
+
+    /** Append an event and reserve room for its object arguments. */
+    private void addEvent(int type, int objectArgs) {
+	if (size == types.length) {
+	    int[] tmp = new int[size * 2];
+	    System.arraycopy(types, 0, tmp, 0, size);
+	    types = tmp;
+	    tmp = new int[size * 2];
+	    System.arraycopy(args, 0, tmp, 0, size);
+	    args = tmp;
+	    tmp = new int[size * 2];
+	    System.arraycopy(lengths, 0, tmp, 0, size);
+	    lengths = tmp;
+	}
+	if (objectCount + objectArgs > objects.length) {
+	    Object[] tmp = new Object[Math.max(objects.length * 2,
+					       objectCount + objectArgs)];
+	    System.arraycopy(objects, 0, tmp, 0, objectCount);
+	    objects = tmp;
+	}
+	types[size] = type;
+	args[size] = objectCount;
+	size++;
+	objectCount += objectArgs;
+    }
+
+    /** Append an event with character data. */
+    private void addCharacters(int type, char[] ch, int start, int length) {
+	addEvent(type, 0);
+	if (charCount + length > chars.length) {
+	    char[] tmp = new char[Math.max(chars.length * 2,
+					   charCount + length)];
+	    System.arraycopy(chars, 0, tmp, 0, charCount);
+	    chars = tmp;
+	}
+	System.arraycopy(ch, start, chars, charCount, length);
+	args[size-1] = charCount;
+	lengths[size-1] = length;
+	charCount += length;
+    }
+
+    /** @see ContentHandler#setDocumentLocator */
+    public void setDocumentLocator(Locator locator) {
+	addEvent(DOCUMENT_LOCATOR, 1);
+	objects[objectCount-1] = locator;
+    }
+
+    /** @see ContentHandler#startDocument */
+    public void startDocument() { addEvent(START_DOCUMENT, 0); }
+
+    /** @see ContentHandler#endDocument */
+    public void endDocument() { addEvent(END_DOCUMENT, 0); }
+
+    /** @see ContentHandler#startPrefixMapping */
+    public void startPrefixMapping(String prefix, String uri) {
+	addEvent(START_PREFIX_MAPPING, 2);
+	objects[objectCount-2] = prefix;
+	objects[objectCount-1] = uri;
+    }
+
+    /** @see ContentHandler#endPrefixMapping */
+    public void endPrefixMapping(String prefix) {
+	addEvent(END_PREFIX_MAPPING, 1);
+	objects[objectCount-1] = prefix;
+    }
+
+    /** @see ContentHandler#startElement */
+    public void startElement(String uri, String localName, String qName,
+			     Attributes atts) {
+	addEvent(START_ELEMENT, 4);
+	objects[objectCount-4] = uri;
+	objects[objectCount-3] = localName;
+	objects[objectCount-2] = qName;
+	if (atts == null || atts.getLength() == 0) {
+	    objects[objectCount-1] = EMPTY_ATTRIBUTES;
+	} else if (atts instanceof SWFTypedAttributes) {
+	    // Keep numeric values unformatted
+	    objects[objectCount-1] = new SWFAttributes(atts);
+	} else {
+	    objects[objectCount-1] = new AttributesImpl(atts);
+	}
+    }
+
+    /** @see ContentHandler#endElement */
+    public void endElement(String uri, String localName, String qName) {
+	addEvent(END_ELEMENT, 3);
+	objects[objectCount-3] = uri;
+	objects[objectCount-2] = localName;
+	objects[objectCount-1] = qName;
+    }
+
+    /** @see ContentHandler#characters */
+    public void characters(char[] ch, int start, int length) {
+	addCharacters(CHARACTERS, ch, start, length);
+    }
+
+    /** @see ContentHandler#ignorableWhitespace */
+    public void ignorableWhitespace(char[] ch, int start, int length) {
+	addCharacters(IGNORABLE_WHITESPACE, ch, start, length);
+    }
+
+    /** @see ContentHandler#processingInstruction */
+    public void processingInstruction(String target, String data) {
+	addEvent(PROCESSING_INSTRUCTION, 2);
+	objects[objectCount-2] = target;
+	objects[objectCount-1] = data;
+    }
+
+    /** @see ContentHandler#skippedEntity */
+    public void skippedEntity(String name) {
+	addEvent(SKIPPED_ENTITY, 1);
+	objects[objectCount-1] = name;
+    }
+
+    /** @see ErrorHandler#warning */
+    public void warning(SAXParseException exception) {
+	addEvent(WARNING, 1);
+	objects[objectCount-1] = exception;
+    }
+
+    /** @see ErrorHandler#error */
+    public void error(SAXParseException exception) {
+	addEvent(ERROR, 1);
+	objects[objectCount-1] = exception;
+    }
+
+    /** @see ErrorHandler#fatalError */
+    public void fatalError(SAXParseException exception) {
+	addEvent(FATAL_ERROR, 1);
+	objects[objectCount-1] = exception;
+    }
+
+    /**
+     * Enable or disable recording raw data. The setting must match
+     * the handler the events are replayed to. Defaults to
+     * <code>false</code>.
+     * @see SWFRawDataHandler#isRawDataSupported
+     */
+    public void setRawDataSupported(boolean rawDataSupported) {
+	this.rawDataSupported = rawDataSupported;
+    }
+
+    /** @see SWFRawDataHandler#isRawDataSupported */
+    public boolean isRawDataSupported() { return rawDataSupported; }
+
+    /** @see SWFRawDataHandler#rawData */
+    public void rawData(ByteBuffer data) {
+	addEvent(RAW_DATA, 1);
+	objects[objectCount-1] = data;
+    }
+}
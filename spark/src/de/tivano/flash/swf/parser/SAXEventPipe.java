@@ -0,0 +1,332 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.parser;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+
+import de.tivano.flash.swf.common.SWFRawDataHandler;
+
+/**
+ * A bounded pipe for SAX events between two threads.
+ *
+ * <p>The producing thread sends SAX events to this object as a
+ * <code>ContentHandler</code> and <code>ErrorHandler</code>. The
+ * events are recorded in batches of {@link SAXEventBuffer}s, which
+ * are passed through a ring of fixed size to a consumer thread. The
+ * consumer thread replays them to the target handlers in the order
+ * they were received.</p>
+ *
+ * <p>If the ring is full, the producer blocks until the consumer
+ * has caught up. If one of the target handlers throws an exception,
+ * the consumer thread stops and the exception is thrown to the
+ * producer on its next attempt to pass on a batch, or from {@link
+ * #finish}.</p>
+ *
+ * @author Richard Kunze
+ */
+class SAXEventPipe
+    implements ContentHandler, ErrorHandler, SWFRawDataHandler {
+
+    /** The number of batches in the ring */
+    private static final int RING_SIZE = 8;
+
+    /** Maximum number of events per batch */
+    private static final int BATCH_EVENTS = 512;
+
+    /** Maximum number of characters per batch */
+    static final int BATCH_CHARS = 16384;
+
+    /** The target content handler */
+    private final ContentHandler handler;
+
+    /** The target error handler. May be <code>null</code>. */
+    private final ErrorHandler errorHandler;
+
+    /** Flag, set if the target handler accepts raw data */
+    private final boolean rawDataSupported;
+
+    /** The batches passed on to the consumer */
+    private final SAXEventBuffer[] ring = new SAXEventBuffer[RING_SIZE];
+
+    /** Index of the first batch in <code>ring</code> */
+    private int head = 0;
+
+    /** Number of batches in <code>ring</code> */
+    private int count = 0;
+
+    /** Replayed batches, available for reuse */
+    private final SAXEventBuffer[] free = new SAXEventBuffer[RING_SIZE];
+
+    /** Number of batches in <code>free</code> */
+    private int freeCount = 0;
+
+    /** The batch currently being recorded */
+    private SAXEventBuffer current = new SAXEventBuffer();
+
+    /** Flag, set when the producer has sent the last batch */
+    private boolean closed = false;
+
+    /** Flag, set when the consumer thread has terminated */
+    private boolean done = false;
+
+    /** The exception thrown by a target handler, if any */
+    private Throwable failure = null;
+
+    /**
+     * Create a new pipe and start the consumer thread.
+     * @param handler the content handler to replay the events to
+     * @param errorHandler the error handler to replay the events to.
+     * May be <code>null</code>, see {@link SAXEventBuffer#replay}.
+     */
+    SAXEventPipe(ContentHandler handler, ErrorHandler errorHandler) {
+	this.handler = handler;
+	this.errorHandler = errorHandler;
+	rawDataSupported = handler instanceof SWFRawDataHandler &&
+	    ((SWFRawDataHandler)handler).isRawDataSupported();
+	Thread consumer = new Thread("SAX event pipe") {
+		public void run() { consume(); }
+	    };
+	consumer.setDaemon(true);
+	consumer.start();
+    }
+
+    /** Replay batches until the pipe is closed or a handler fails. */
+    private void consume() {
+	SAXEventBuffer batch;
+	try {
+	    while ((batch = take()) != null) {
+		batch.replay(handler, errorHandler);
+		batch.clear();
+		release(batch);
+	    }
+	    synchronized (this) { done = true; notifyAll(); }
+	} catch (Throwable e) {
+	    synchronized (this) {
+		failure = e;
+		done = true;
+		notifyAll();
+	    }
+	}
+    }
+
+    /**
+     * Get the next batch to replay.
+     * @return the batch, or <code>null</code> if the pipe is closed
+     * and all batches have been replayed
+     */
+    private synchronized SAXEventBuffer take() throws InterruptedException {
+	while (count == 0 && !closed) wait();
+	if (count == 0) return null;
+	SAXEventBuffer batch = ring[head];
+	ring[head] = null;
+	head = (head + 1) % RING_SIZE;
+	count--;
+	notifyAll();
+	return batch;
+    }
+
+    /** Return a replayed batch for reuse. */
+    private synchronized void release(SAXEventBuffer batch) {
+	if (freeCount < free.length) free[freeCount++] = batch;
+    }
+
+    /**
+     * Pass the current batch on to the consumer and start a new one.
+     * Blocks while the ring is full.
+     * @exception SAXException if a target handler has failed, or if
+     * the producing thread is interrupted
+     */
+    private synchronized void publish() throws SAXException {
+	try {
+	    while (count == RING_SIZE && !done) wait();
+	} catch (InterruptedException e) {
+	    throw new SAXException(
+		"Interrupted while waiting for the SAX event consumer",
+		new InterruptedIOException());
+	}
+	checkFailure();
+	if (done) throw new IllegalStateException("SAX event pipe is closed");
+	ring[(head + count) % RING_SIZE] = current;
+	count++;
+	notifyAll();
+	current = freeCount > 0?free[--freeCount]:new SAXEventBuffer();
+    }
+
+    /** Publish the current batch if it is full. */
+    private void checkBatch() throws SAXException {
+	if (current.size() >= BATCH_EVENTS ||
+	    current.characterCount() >= BATCH_CHARS) {
+	    publish();
+	}
+    }
+
+    /**
+     * Re-throw the exception thrown by a target handler, if any.
+     * Must be called with the lock held.
+     */
+    private void checkFailure() throws SAXException {
+	if (failure == null) return;
+	if (failure instanceof SAXException) throw (SAXException)failure;
+	if (failure instanceof RuntimeException) {
+	    throw (RuntimeException)failure;
+	}
+	if (failure instanceof Error) throw (Error)failure;
+	throw new SAXException((Exception)failure);
+    }
+
+    /**
+     * Pass on the remaining events and wait until the consumer thread
+     * has replayed all of them. Must be called exactly once, by the
+     * producing thread, after the last event.
+     * @exception SAXException if a target handler has failed, or if
+     * the producing thread is interrupted
+     */
+    void finish() throws SAXException {
+	if (current.size() > 0 && !isDone()) publish();
+	synchronized (this) {
+	    closed = true;
+	    notifyAll();
+	    try {
+		while (!done) wait();
+	    } catch (InterruptedException e) {
+		throw new SAXException(
+		    "Interrupted while waiting for the SAX event consumer",
+		    new InterruptedIOException());
+	    }
+	    checkFailure();
+	}
+    }
+
+    /** Check if the consumer thread has terminated */
+    private synchronized boolean isDone() { return done; }
+
+    /** @see ContentHandler#setDocumentLocator */
+    public void setDocumentLocator(Locator locator) {
+	current.setDocumentLocator(locator);
+    }
+
+    /** @see ContentHandler#startDocument */
+    public void startDocument() throws SAXException {
+	current.startDocument();
+	checkBatch();
+    }
+
+    /** @see ContentHandler#endDocument */
+    public void endDocument() throws SAXException {
+	current.endDocument();
+	checkBatch();
+    }
+
+    /** @see ContentHandler#startPrefixMapping */
+    public void startPrefixMapping(String prefix, String uri)
+	throws SAXException {
+	current.startPrefixMapping(prefix, uri);
+	checkBatch();
+    }
+
+    /** @see ContentHandler#endPrefixMapping */
+    public void endPrefixMapping(String prefix) throws SAXException {
+	current.endPrefixMapping(prefix);
+	checkBatch();
+    }
+
+    /** @see ContentHandler#startElement */
+    public void startElement(String uri, String localName, String qName,
+			     Attributes atts) throws SAXException {
+	current.startElement(uri, localName, qName, atts);
+	checkBatch();
+    }
+
+    /** @see ContentHandler#endElement */
+    public void endElement(String uri, String localName, String qName)
+	throws SAXException {
+	current.endElement(uri, localName, qName);
+	checkBatch();
+    }
+
+    /** @see ContentHandler#characters */
+    public void characters(char[] ch, int start, int length)
+	throws SAXException {
+	current.characters(ch, start, length);
+	checkBatch();
+    }
+
+    /** @see ContentHandler#ignorableWhitespace */
+    public void ignorableWhitespace(char[] ch, int start, int length)
+	throws SAXException {
+	current.ignorableWhitespace(ch, start, length);
+	checkBatch();
+    }
+
+    /** @see ContentHandler#processingInstruction */
+    public void processingInstruction(String target, String data)
+	throws SAXException {
+	current.processingInstruction(target, data);
+	checkBatch();
+    }
+
+    /** @see ContentHandler#skippedEntity */
+    public void skippedEntity(String name) throws SAXException {
+	current.skippedEntity(name);
+	checkBatch();
+    }
+
+    /** @see ErrorHandler#warning */
+    public void warning(SAXParseException exception) throws SAXException {
+	current.warning(exception);
+	checkBatch();
+    }
+
+    /** @see ErrorHandler#error */
+    public void error(SAXParseException exception) throws SAXException {
+	current.error(exception);
+	checkBatch();
+    }
+
+    /** @see ErrorHandler#fatalError */
+    public void fatalError(SAXParseException exception) throws SAXException {
+	current.fatalError(exception);
+	checkBatch();
+    }
+
+    /** @see SWFRawDataHandler#isRawDataSupported */
+    public boolean isRawDataSupported() { return rawDataSupported; }
+
+    /** @see SWFRawDataHandler#rawData */
+    public void rawData(ByteBuffer data) throws SAXException {
+	int size = data.remaining();
+	current.rawData(data);
+	// Raw data is not copied, but keep large chunks from piling
+	// up in the ring anyway.
+	if (size >= BATCH_CHARS) publish();
+	else checkBatch();
+    }
+}
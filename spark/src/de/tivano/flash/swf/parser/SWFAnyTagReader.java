@@ -26,9 +26,11 @@ import org.xml.sax.SAXException;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import de.tivano.flash.swf.common.SWFTagHeader;
 import de.tivano.flash.swf.common.BitInputStream;
+import de.tivano.flash.swf.common.ByteBufferBitInputStream;
 
 /**
  * Tag reader for arbitrary SWF tags.
@@ -39,15 +41,36 @@ import de.tivano.flash.swf.common.BitInputStream;
  *   <em>&lt;!-- Content of the unkown tag as raw or base64-encoded data --&gt;</em>
  * &lt;/RawData&gt;
  * </pre>
- * <em>TagType</em> is the ID of the SWF tag.
+ * <em>TagType</em> is the ID of the SWF tag. If the content handler
+ * accepts raw data as bytes (see {@link
+ * de.tivano.flash.swf.common.SWFRawDataHandler}), the content is
+ * passed on as is instead.
  * @author Richard Kunze
  */
-public class SWFAnyTagReader extends SWFTagReaderBase {
+public class SWFAnyTagReader extends SWFTagReaderBase
+                             implements SWFParallelTagReader {
+
+    /** Size of the copy buffer. A multiple of 3 so that full reads
+     * line up with base64 triples. Short reads can still end in the
+     * middle of a triple, which the base64 stream carries over. */
+    private static final int COPY_BUFFER_SIZE = 3 * 4096;
+
+    /** Buffer for copying the tag data. Allocated lazily. */
+    private byte[] copyBuffer = null;
+
+    /** @see SWFParallelTagReader#copy */
+    public SWFTagReader copy() {
+	SWFAnyTagReader copy = (SWFAnyTagReader)copyReader();
+	copy.copyBuffer = null;
+	return copy;
+    }
 
     /**
      * Read the tag content.
      * This class simply reads <code>header.getLength()</code> bytes
      * from <code>input</code> and sends it as raw data to the client.
+     * The data is copied in large chunks. If the tag is truncated, a
+     * warning is sent and the available data is reported.
      * @param input the SWF data stream
      * @param header the record header for this record
      */
@@ -57,10 +80,23 @@ public class SWFAnyTagReader extends SWFTagReaderBase {
 	attrib.addAttribute("type", header.getID());
 	startElement("RawData", attrib);
 	long length = header.getRecordLength();
-	if (length > 0) {
+	if (length > 0 && isRawDataSupported()) {
+	    rawData(readRawData(input, header));
+	} else if (length > 0) {
 	    OutputStream out = getRawDataOutputStream();
 	    try {
-		for (int i=0; i<length; i++) out.write(input.read());
+		if (copyBuffer == null) copyBuffer = new byte[COPY_BUFFER_SIZE];
+		while (length > 0) {
+		    int count = input.read(copyBuffer, 0,
+					   (int)Math.min(length, copyBuffer.length));
+		    if (count < 0) {
+			warning("Unexpected end of file in tag " +
+				header.getID());
+			break;
+		    }
+		    out.write(copyBuffer, 0, count);
+		    length -= count;
+		}
 		out.close();
 	    } catch (SAXIOException e) {
 		// Re-throw the wrapped exception
@@ -69,4 +105,34 @@ public class SWFAnyTagReader extends SWFTagReaderBase {
 	}
 	endElement("RawData");
     }
+
+    /**
+     * Read the tag data into a buffer. If the input is an in-memory
+     * stream, the data is not copied. If the tag is truncated, a
+     * warning is sent and the available data is returned.
+     * @param input the SWF data stream
+     * @param header the record header for this record
+     */
+    private ByteBuffer readRawData(BitInputStream input, SWFTagHeader header)
+	throws SAXException, IOException {
+	int length = (int)header.getRecordLength();
+	if (input instanceof ByteBufferBitInputStream &&
+	    input.isAtByteBoundary() &&
+	    ((ByteBufferBitInputStream)input).available() >= length) {
+	    return ((ByteBufferBitInputStream)input).readBuffer(length);
+	}
+	// The handler may keep the buffer, so use a new array for
+	// every tag.
+	byte[] data = new byte[length];
+	int pos = 0;
+	while (pos < length) {
+	    int count = input.read(data, pos, length - pos);
+	    if (count < 0) {
+		warning("Unexpected end of file in tag " + header.getID());
+		break;
+	    }
+	    pos += count;
+	}
+	return ByteBuffer.wrap(data, 0, pos).asReadOnlyBuffer();
+    }
 }
@@ -23,20 +23,54 @@
 
 package de.tivano.flash.swf.parser;
 
+import org.xml.sax.Attributes;
 import org.xml.sax.helpers.AttributesImpl;
 
+import de.tivano.flash.swf.common.SWFTypedAttributes;
+
 /**
  * A convenience class for handling attributes. This class
  * provides convenience methods for setting attributes without
  * having to worry about namespace support. 
+ * <p>Numeric attribute values are stored as numbers and only
+ * converted to strings when they are first asked for. Consumers can
+ * read them directly via the {@link SWFTypedAttributes}
+ * interface.</p>
  * @see org.xml.sax.Attributes
  */
-public class SWFAttributes extends AttributesImpl {
+public class SWFAttributes extends AttributesImpl
+                           implements SWFTypedAttributes {
     /** Attribute type constant */
     public static final String TYPE_CDATA = "CDATA";
     
     /** Attribute type constant */
     public static final String TYPE_ID = "ID";
+
+    /** The value types */
+    private int[] valueTypes = new int[8];
+
+    /**
+     * The numeric values. Floating point values are stored as their
+     * bit patterns.
+     */
+    private long[] numbers = new long[8];
+
+    /** Create an empty attribute list. */
+    public SWFAttributes() {
+	super();
+    }
+
+    /**
+     * Create a copy of an attribute list. Numeric values of
+     * <code>atts</code> are copied without converting them to
+     * strings if <code>atts</code> implements {@link
+     * SWFTypedAttributes}.
+     * @param atts the attributes to copy
+     */
+    public SWFAttributes(Attributes atts) {
+	super();
+	setAttributes(atts);
+    }
     
     /** Add an attribute. This is a wrapper around
      * <code>AttributeImpl.addAttribute()</code> that handles
@@ -47,7 +81,7 @@ public class SWFAttributes extends AttributesImpl {
      */
     public void addAttribute(String name, String value, String type) {
 	// FIXME: Really handle the name space stuff
-	super.addAttribute("", name, name, type, value);
+	addAttribute("", name, name, type, value);
     }
     
     /** Add an attribute. This is a wrapper around
@@ -59,7 +93,7 @@ public class SWFAttributes extends AttributesImpl {
      */
     public void addAttribute(String name, long value, String type) {
 	// FIXME: Really handle the name space stuff
-	super.addAttribute("", name, name, type, Long.toString(value));
+	addNumber("", name, name, type, VALUE_LONG, value);
     }
     
     /** Add an attribute. This is a wrapper around
@@ -71,7 +105,8 @@ public class SWFAttributes extends AttributesImpl {
      */
     public void addAttribute(String name, double value, String type) {
 	// FIXME: Really handle the name space stuff
-	super.addAttribute("", name, name, type, Double.toString(value));
+	addNumber("", name, name, type, VALUE_DOUBLE,
+		  Double.doubleToLongBits(value));
     }
     
     /** Add an attribute. This is a wrapper around
@@ -106,4 +141,162 @@ public class SWFAttributes extends AttributesImpl {
     public void addAttribute(String name, double value) {
 	addAttribute(name, value, TYPE_CDATA);
     }
+
+    /** Add an attribute with a numeric value. */
+    private void addNumber(String uri, String localName, String qName,
+			   String type, int valueType, long bits) {
+	super.addAttribute(uri, localName, qName, type, null);
+	int index = getLength() - 1;
+	ensureCapacity(index + 1);
+	valueTypes[index] = valueType;
+	numbers[index] = bits;
+    }
+
+    /** Make sure the value arrays can hold <code>n</code> entries. */
+    private void ensureCapacity(int n) {
+	if (n <= valueTypes.length) return;
+	int capacity = Math.max(n, valueTypes.length * 2);
+	int[] tmp = new int[capacity];
+	System.arraycopy(valueTypes, 0, tmp, 0, valueTypes.length);
+	valueTypes = tmp;
+	long[] tmp2 = new long[capacity];
+	System.arraycopy(numbers, 0, tmp2, 0, numbers.length);
+	numbers = tmp2;
+    }
+
+    /** @see SWFTypedAttributes#getValueType */
+    public int getValueType(int index) {
+	if (index < 0 || index >= getLength()) {
+	    throw new IndexOutOfBoundsException("Index: " + index);
+	}
+	return valueTypes[index];
+    }
+
+    /** @see SWFTypedAttributes#getLongValue */
+    public long getLongValue(int index) {
+	switch (getValueType(index)) {
+	case VALUE_LONG:
+	    return numbers[index];
+	case VALUE_DOUBLE:
+	    throw new NumberFormatException(
+		"Not an integer: " + getValue(index));
+	default:
+	    return Long.parseLong(getValue(index));
+	}
+    }
+
+    /** @see SWFTypedAttributes#getDoubleValue */
+    public double getDoubleValue(int index) {
+	switch (getValueType(index)) {
+	case VALUE_LONG:
+	    return numbers[index];
+	case VALUE_DOUBLE:
+	    return Double.longBitsToDouble(numbers[index]);
+	default:
+	    return Double.parseDouble(getValue(index));
+	}
+    }
+
+    /**
+     * Get the value of an attribute. Numeric values are converted to
+     * strings on the first call.
+     * @see Attributes#getValue(int)
+     */
+    public String getValue(int index) {
+	String value = super.getValue(index);
+	if (value == null && index >= 0 && index < getLength()) {
+	    switch (valueTypes[index]) {
+	    case VALUE_LONG:
+		value = Long.toString(numbers[index]);
+		break;
+	    case VALUE_DOUBLE:
+		value = Double.toString(
+		    Double.longBitsToDouble(numbers[index]));
+		break;
+	    default:
+		return null;
+	    }
+	    super.setValue(index, value);
+	}
+	return value;
+    }
+
+    /** @see Attributes#getValue(String, String) */
+    public String getValue(String uri, String localName) {
+	return getValue(getIndex(uri, localName));
+    }
+
+    /** @see Attributes#getValue(String) */
+    public String getValue(String qName) {
+	return getValue(getIndex(qName));
+    }
+
+    /** @see AttributesImpl#addAttribute(String, String, String, String, String) */
+    public void addAttribute(String uri, String localName, String qName,
+			     String type, String value) {
+	super.addAttribute(uri, localName, qName, type, value);
+	int index = getLength() - 1;
+	ensureCapacity(index + 1);
+	valueTypes[index] = VALUE_STRING;
+    }
+
+    /** @see AttributesImpl#setAttribute */
+    public void setAttribute(int index, String uri, String localName,
+			     String qName, String type, String value) {
+	super.setAttribute(index, uri, localName, qName, type, value);
+	valueTypes[index] = VALUE_STRING;
+    }
+
+    /** @see AttributesImpl#setValue */
+    public void setValue(int index, String value) {
+	super.setValue(index, value);
+	if (index >= 0 && index < getLength()) {
+	    valueTypes[index] = VALUE_STRING;
+	}
+    }
+
+    /** @see AttributesImpl#removeAttribute */
+    public void removeAttribute(int index) {
+	int length = getLength();
+	super.removeAttribute(index);
+	if (index >= 0 && index < length - 1) {
+	    System.arraycopy(valueTypes, index+1, valueTypes, index,
+			     length - index - 1);
+	    System.arraycopy(numbers, index+1, numbers, index,
+			     length - index - 1);
+	}
+    }
+
+    /**
+     * Copy an entire attribute list. Numeric values of
+     * <code>atts</code> are copied without converting them to
+     * strings if <code>atts</code> implements {@link
+     * SWFTypedAttributes}.
+     * @see AttributesImpl#setAttributes
+     */
+    public void setAttributes(Attributes atts) {
+	clear();
+	SWFTypedAttributes typed = null;
+	if (atts instanceof SWFTypedAttributes) typed = (SWFTypedAttributes)atts;
+	int length = atts.getLength();
+	for (int i=0; i<length; i++) {
+	    int valueType = (typed != null?typed.getValueType(i):VALUE_STRING);
+	    switch (valueType) {
+	    case VALUE_LONG:
+		addNumber(atts.getURI(i), atts.getLocalName(i),
+			  atts.getQName(i), atts.getType(i), VALUE_LONG,
+			  typed.getLongValue(i));
+		break;
+	    case VALUE_DOUBLE:
+		addNumber(atts.getURI(i), atts.getLocalName(i),
+			  atts.getQName(i), atts.getType(i), VALUE_DOUBLE,
+			  Double.doubleToLongBits(typed.getDoubleValue(i)));
+		break;
+	    default:
+		addAttribute(atts.getURI(i), atts.getLocalName(i),
+			     atts.getQName(i), atts.getType(i),
+			     atts.getValue(i));
+	    }
+	}
+    }
 }
@@ -0,0 +1,296 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.parser;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import de.tivano.flash.swf.common.BitInputStream;
+import de.tivano.flash.swf.common.SWFRawDataHandler;
+import de.tivano.flash.swf.common.SWFTagHeader;
+
+/**
+ * A pool of worker threads for decoding SWF tags in parallel.
+ *
+ * <p>{@link SWFReader} slices the data of independent tags off the
+ * input stream and submits them to this pool. Each worker thread has
+ * its own copies of the tag readers and decodes the tags into {@link
+ * SAXEventBuffer}s, which <code>SWFReader</code> then replays in file
+ * order.</p>
+ *
+ * <p>Only tag readers known to read exactly their own tag data and
+ * to at most <em>add</em> to the context map can be run in the
+ * pool. These implement {@link SWFParallelTagReader} (see {@link
+ * #canDecode}). All other tags are parsed by
+ * <code>SWFReader</code> itself after all previous tags have been
+ * replayed, so context map entries from earlier tags (e.g. fonts
+ * used by text fields) are always available.</p>
+ *
+ * @author Richard Kunze
+ */
+class SWFDecoderPool {
+
+    /** A tag to decode. */
+    static class Task {
+	/** The tag reader, as registered with the parent reader */
+	private final SWFTagReader reader;
+
+	/** The tag header */
+	private final SWFTagHeader header;
+
+	/** The tag data */
+	private BitInputStream data;
+
+	/** The decoded events */
+	private final SAXEventBuffer events = new SAXEventBuffer();
+
+	/** The exception thrown by the tag reader, if any */
+	private Throwable failure = null;
+
+	/** Flag, set when decoding is finished */
+	private boolean done = false;
+
+	/** Create a new task */
+	Task(SWFTagReader reader, SWFTagHeader header, BitInputStream data) {
+	    this.reader = reader;
+	    this.header = header;
+	    this.data   = data;
+	}
+
+	/** Mark this task as finished */
+	private synchronized void finish(Throwable failure) {
+	    this.failure = failure;
+	    data = null;
+	    done = true;
+	    notifyAll();
+	}
+
+	/** Check if decoding is finished */
+	synchronized boolean isDone() { return done; }
+
+	/**
+	 * Wait until decoding is finished.
+	 * @exception InterruptedIOException if the waiting thread is
+	 * interrupted
+	 */
+	synchronized void waitFor() throws InterruptedIOException {
+	    while (!done) {
+		try {
+		    wait();
+		} catch (InterruptedException e) {
+		    throw new InterruptedIOException(
+			"Interrupted while decoding tag " + header.getID());
+		}
+	    }
+	}
+
+	/** Get the decoded events. Only valid after decoding is finished. */
+	SAXEventBuffer getEvents() { return events; }
+
+	/**
+	 * Re-throw the exception thrown by the tag reader, if any. Only
+	 * valid after decoding is finished.
+	 */
+	void rethrow() throws SAXException, IOException {
+	    if (failure == null) return;
+	    if (failure instanceof SAXException) throw (SAXException)failure;
+	    if (failure instanceof IOException) throw (IOException)failure;
+	    if (failure instanceof RuntimeException) {
+		throw (RuntimeException)failure;
+	    }
+	    throw (Error)failure;
+	}
+    }
+
+    /**
+     * The SAX driver for the tag readers of one worker thread. Sends
+     * the events to the buffer of the current task and shares the
+     * context map with the parent reader.
+     */
+    private class WorkerReader extends SWFReader {
+	/** Map of parent tag readers to the copies of this worker */
+	private final Map copies = new HashMap();
+
+	/**
+	 * Get this worker's copy of a tag reader. The copy is
+	 * created on the first call.
+	 */
+	SWFTagReader getCopy(SWFTagReader original) {
+	    SWFTagReader copy = (SWFTagReader)copies.get(original);
+	    if (copy == null) {
+		copy = ((SWFParallelTagReader)original).copy();
+		copy.setSAXDriver(this);
+		copies.put(original, copy);
+	    }
+	    return copy;
+	}
+
+	/** @see SWFReader#getContextMap */
+	protected Map getContextMap() { return context; }
+
+	/** @see SWFReader#isBase64LineBreaks */
+	protected boolean isBase64LineBreaks() { return base64LineBreaks; }
+    }
+
+    /** A worker thread */
+    private class Worker extends Thread {
+	/** The SAX driver for this worker's tag readers */
+	private final WorkerReader driver = new WorkerReader();
+
+	/** Create a new worker thread */
+	Worker(int number) {
+	    super("SWF decoder " + number);
+	    setDaemon(true);
+	}
+
+	/** Decode tags until the pool is shut down */
+	public void run() {
+	    Task task;
+	    while ((task = nextTask()) != null) {
+		Throwable failure = null;
+		try {
+		    driver.setContentHandler(task.events);
+		    driver.setErrorHandler(task.events);
+		    driver.getCopy(task.reader).parse(task.data, task.header);
+		} catch (Throwable e) {
+		    failure = e;
+		}
+		task.finish(failure);
+	    }
+	}
+    }
+
+    /** The context map shared by all workers */
+    private final Map context;
+
+    /** The base64 line break setting of the parent reader */
+    private final boolean base64LineBreaks;
+
+    /** Flag, set if the parent's content handler accepts raw data */
+    private final boolean rawDataSupported;
+
+    /** Queue of tasks waiting for a worker */
+    private final LinkedList queue = new LinkedList();
+
+    /** Flag, set when the pool is shut down */
+    private boolean shutdown = false;
+
+    /**
+     * Create a new pool and start the worker threads.
+     * @param parent the reader submitting the tags
+     * @param threads the number of worker threads
+     */
+    SWFDecoderPool(SWFReader parent, int threads) {
+	context = Collections.synchronizedMap(parent.getContextMap());
+	base64LineBreaks = parent.isBase64LineBreaks();
+	ContentHandler handler = parent.getContentHandler();
+	rawDataSupported = handler instanceof SWFRawDataHandler &&
+	    ((SWFRawDataHandler)handler).isRawDataSupported();
+	for (int i=0; i<threads; i++) new Worker(i).start();
+    }
+
+    /**
+     * Check whether a tag reader can be run in the pool.
+     * @param reader the tag reader as registered with the parent
+     * reader
+     */
+    static boolean canDecode(SWFTagReader reader) {
+	return reader instanceof SWFParallelTagReader;
+    }
+
+    /**
+     * Submit a tag for decoding. If the pool has been shut down, the
+     * task fails immediately with an
+     * <code>InterruptedIOException</code>.
+     * @param reader the tag reader as registered with the parent
+     * reader
+     * @param header the tag header
+     * @param data the tag data. Must contain exactly the tag data.
+     * @return the task for decoding this tag
+     */
+    Task submit(SWFTagReader reader, SWFTagHeader header,
+		BitInputStream data) {
+	Task task = new Task(reader, header, data);
+	task.events.setRawDataSupported(rawDataSupported);
+	synchronized (queue) {
+	    if (shutdown) {
+		task.finish(new InterruptedIOException(
+		    "Decoder pool is shut down"));
+	    } else {
+		queue.addLast(task);
+		queue.notify();
+	    }
+	}
+	return task;
+    }
+
+    /**
+     * Get the next task to run. If the calling worker is interrupted
+     * while waiting, the pool is shut down, all waiting tasks fail
+     * with an <code>InterruptedIOException</code> and the interrupt
+     * status of the worker is restored.
+     * @return the task, or <code>null</code> if the pool is shut down
+     */
+    private Task nextTask() {
+	synchronized (queue) {
+	    while (queue.isEmpty() && !shutdown) {
+		try {
+		    queue.wait();
+		} catch (InterruptedException e) {
+		    shutdown = true;
+		    while (!queue.isEmpty()) {
+			Task task = (Task)queue.removeFirst();
+			task.finish(new InterruptedIOException(
+			    "Decoder thread interrupted before decoding tag "
+			    + task.header.getID()));
+		    }
+		    queue.notifyAll();
+		    Thread.currentThread().interrupt();
+		    return null;
+		}
+	    }
+	    if (shutdown) return null;
+	    return (Task)queue.removeFirst();
+	}
+    }
+
+    /**
+     * Shut down the pool. Tasks that have not been started yet are
+     * discarded, the worker threads terminate as soon as their
+     * current task is finished.
+     */
+    void shutdown() {
+	synchronized (queue) {
+	    shutdown = true;
+	    queue.clear();
+	    queue.notifyAll();
+	}
+    }
+}
@@ -75,7 +75,8 @@ import de.tivano.flash.swf.common.BitInputStream;
  * instance indexed by its font ID.</p>
  * @author Richard Kunze
  */
-public class SWFDefineFont2Reader extends SWFTagReaderBase {
+public class SWFDefineFont2Reader extends SWFTagReaderBase
+                                  implements SWFParallelTagReader {
     /** Helper class for converting SWF shape structures to XML */
     protected SWFShapeReader shapeReader;
 
@@ -85,6 +86,17 @@ public class SWFDefineFont2Reader extends SWFTagReaderBase {
 	shapeReader = new SWFRawShapeReader(false);
     }
 
+    /**
+     * Create a copy for a worker thread. The copy gets its own copy
+     * of the shape reader.
+     * @see SWFParallelTagReader#copy
+     */
+    public SWFTagReader copy() {
+	SWFDefineFont2Reader copy = (SWFDefineFont2Reader)copyReader();
+	copy.shapeReader = (SWFShapeReader)shapeReader.copyReader();
+	return copy;
+    }
+
     /** @see SWFTagReaderBase#setSAXDriver */
     public void setSAXDriver(SWFReader driver) {
 	super.setSAXDriver(driver);
@@ -99,7 +111,8 @@ public class SWFDefineFont2Reader extends SWFTagReaderBase {
     public void parse(BitInputStream input, SWFTagHeader header)
                 throws SAXException, IOException {
 
-	SWFDefineFont2 fontTag = new SWFDefineFont2(input);
+	SWFDefineFont2 fontTag =
+	    new SWFDefineFont2(getTagData(input, header));
 	SWFFont font = new SWFFont();
 	font.setFontID(fontTag.getID());
 	font.setFontName(fontTag.getName());
@@ -154,7 +167,7 @@ public class SWFDefineFont2Reader extends SWFTagReaderBase {
 		attrib.addAttribute("ymax",  bounds.getYMax());
 	    }
 	    startElement("Glyph", attrib);
-	    shapeReader.toXML(fontTag.getShape(i));
+	    shapeReader.toXML(fontTag, i);
 	    endElement("Glyph");
 	}
 	for (int i=0; i<fontTag.getKerningCount(); i++) {
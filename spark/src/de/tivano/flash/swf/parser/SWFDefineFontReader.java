@@ -98,7 +98,8 @@ public class SWFDefineFontReader extends SWFTagReaderBase {
     public void parse(BitInputStream input, SWFTagHeader header)
                 throws SAXException, IOException {
 
-	SWFDefineFont fontTag = new SWFDefineFont(input);
+	SWFDefineFont fontTag =
+	    new SWFDefineFont(getTagData(input, header));
 	SWFDefineFontInfo fontInfo = null;
 	SWFFont font = new SWFFont();
 	font.setFontID(fontTag.getID());
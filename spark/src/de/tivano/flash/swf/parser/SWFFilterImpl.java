@@ -0,0 +1,85 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.parser;
+
+import java.nio.ByteBuffer;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import de.tivano.flash.swf.common.SWFRawDataHandler;
+
+/**
+ * Base class for SAX filters between an {@link SWFReader} and a
+ * content handler that processes SWF XML, such as an
+ * <code>SWFWriter</code>.
+ *
+ * <p>This class behaves exactly like <code>XMLFilterImpl</code>, but
+ * also passes raw data on as bytes if the next content handler
+ * accepts it (see {@link SWFRawDataHandler}). The content of
+ * <em>&lt;RawData&gt;</em> elements then reaches the filter via
+ * {@link #rawData} instead of <code>characters()</code>. Filters
+ * that need to see the content of <em>&lt;RawData&gt;</em> elements
+ * should override {@link #rawData} in addition to
+ * <code>characters()</code>, or override {@link
+ * #isRawDataSupported} to return <code>false</code>.</p>
+ *
+ * @author Richard Kunze
+ */
+public class SWFFilterImpl extends XMLFilterImpl implements SWFRawDataHandler {
+
+    /** Construct an empty filter. */
+    public SWFFilterImpl() {
+	super();
+    }
+
+    /**
+     * Construct a filter with the specified parent.
+     * @param parent the parent reader
+     */
+    public SWFFilterImpl(XMLReader parent) {
+	super(parent);
+    }
+
+    /**
+     * Check whether raw data can be passed on as bytes. This is the
+     * case if the next content handler accepts it.
+     * @see SWFRawDataHandler#isRawDataSupported
+     */
+    public boolean isRawDataSupported() {
+	ContentHandler handler = getContentHandler();
+	return handler instanceof SWFRawDataHandler &&
+	    ((SWFRawDataHandler)handler).isRawDataSupported();
+    }
+
+    /**
+     * Filter raw data. Passes the data on to the next content
+     * handler.
+     * @see SWFRawDataHandler#rawData
+     */
+    public void rawData(ByteBuffer data) throws SAXException {
+	((SWFRawDataHandler)getContentHandler()).rawData(data);
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.parser;
+
+/**
+ * Interface for SWF tag readers that can decode tags in parallel.
+ * <p>{@link SWFReader} decodes the tags of readers implementing this
+ * interface on worker threads if more than one decoder thread is
+ * configured (see {@link SWFReader#PROPERTY_DECODER_THREADS}). Each
+ * worker thread uses its own copy of the reader, created with
+ * {@link #copy}.</p>
+ * <p>By implementing this interface, a tag reader promises to read
+ * exactly its own tag data and to at most <em>add</em> to the
+ * context map of the associated <code>SWFReader</code>. Subclasses
+ * inherit this promise, so a subclass that depends on context set
+ * up by earlier tags must not extend an implementing class.</p>
+ * @author Richard Kunze
+ */
+public interface SWFParallelTagReader extends SWFTagReader {
+
+    /**
+     * Create a copy of this tag reader for a worker thread. The copy
+     * must be configured like this reader, but must not share any
+     * state used while parsing. It is not associated with a SAX
+     * driver, the worker thread calls <code>setSAXDriver()</code>
+     * on it.
+     * @return the copy
+     */
+    public SWFTagReader copy();
+}
@@ -22,6 +22,7 @@
 
 package de.tivano.flash.swf.parser;
 
+import de.tivano.flash.swf.common.SWFDefineFont2;
 import de.tivano.flash.swf.common.SWFShape;
 import de.tivano.flash.swf.common.SWFShapeRecord;
 import de.tivano.flash.swf.common.SWFMoveTo;
@@ -65,6 +66,24 @@ public class SWFRawShapeReader extends SWFShapeReader {
      */
     public SWFRawShapeReader(boolean useRGBA) { super(useRGBA); }
 
+    /**
+     * Read the content.
+     * @param input the SWF data stream
+     */
+    public void parse(BitInputStream input) throws SAXException, IOException {
+	toXML(new SWFShape(input, USE_RGBA));
+    }
+
+    /**
+     * Convert the shape of a glyph in a font to XML.
+     * @param font the font
+     * @param glyph the index of the glyph
+     */
+    public void toXML(SWFDefineFont2 font, int glyph)
+	        throws IOException, SAXException {
+	toXML(font.getShape(glyph));
+    }
+
     /**
      * Convert a {@link SWFShape} to XML.
      * @param the shape structure
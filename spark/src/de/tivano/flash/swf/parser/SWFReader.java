@@ -28,6 +28,7 @@ import de.tivano.flash.swf.common.SWFTagHeader;
 import de.tivano.flash.swf.common.SWFFileHeader;
 import de.tivano.flash.swf.common.SWFFormatException;
 import de.tivano.flash.swf.common.BitInputStream;
+import de.tivano.flash.swf.common.ByteBufferBitInputStream;
 
 import org.xml.sax.XMLReader;
 import org.xml.sax.ContentHandler;
@@ -45,7 +46,16 @@ import java.io.InputStream;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
+import java.io.SequenceInputStream;
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
+import java.util.LinkedList;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -88,12 +98,123 @@ public class SWFReader implements XMLReader {
     private Map context = new HashMap();
     
 
+    /**
+     * Property name for selecting how SWF data is read. Possible
+     * values are {@link #INPUT_MODE_AUTO} (the default), {@link
+     * #INPUT_MODE_MAPPED} and {@link #INPUT_MODE_STREAM}.
+     */
+    public static final String PROPERTY_INPUT_MODE =
+	"http://tivano.de/swf/parser/properties/input-mode";
+
+    /**
+     * Input mode: Map the file into memory if the input source only
+     * holds a system ID that designates a local file. Read all other
+     * input from a stream.
+     */
+    public static final String INPUT_MODE_AUTO = "auto";
+
+    /**
+     * Input mode: Like {@link #INPUT_MODE_AUTO}, but also map the
+     * file into memory if the input source holds a
+     * <code>FileInputStream</code>. Input that cannot be mapped is
+     * still read from a stream.
+     */
+    public static final String INPUT_MODE_MAPPED = "mapped";
+
+    /** Input mode: Always read input from a stream. */
+    public static final String INPUT_MODE_STREAM = "stream";
+
+    /** The current input mode */
+    private String inputMode = INPUT_MODE_AUTO;
+
+    /** Buffer size for reading compressed SWF data */
+    private static final int INFLATE_BUFFER_SIZE = 65536;
+
+    /** The inflater for compressed SWF data. Reused for all files. */
+    private Inflater inflater = null;
+
+    /**
+     * Property name for the tag filter. The value is a {@link
+     * SWFTagFilter} or <code>null</code>. Tags not accepted by the
+     * filter are skipped without generating any SAX events.
+     */
+    public static final String PROPERTY_TAG_FILTER =
+	"http://tivano.de/swf/parser/properties/tag-filter";
+
+    /**
+     * Feature name for reporting tags without a specific tag reader
+     * as raw data. If this feature is switched off, such tags are
+     * skipped instead. Defaults to <code>true</code>.
+     */
+    public static final String FEATURE_RAW_DATA =
+	"http://tivano.de/swf/parser/features/raw-data";
+
+    /**
+     * Feature name for breaking base64-encoded raw data into lines of
+     * 76 characters. If this feature is switched off, raw data is
+     * reported as one unbroken block of base64 text. Defaults to
+     * <code>true</code>.
+     */
+    public static final String FEATURE_BASE64_LINE_BREAKS =
+	"http://tivano.de/swf/parser/features/base64-line-breaks";
+
+    /**
+     * Feature name for pipelined parsing. If this feature is switched
+     * on, the SAX events are passed to the content and error handlers
+     * on a separate thread, so that decoding the SWF data and
+     * processing the events (e.g. serializing them as XML) overlap.
+     * The events and their order are the same as without pipelining.
+     * Exceptions thrown by the handlers are re-thrown from
+     * <code>parse()</code>. Defaults to <code>false</code>.
+     */
+    public static final String FEATURE_PIPELINED =
+	"http://tivano.de/swf/parser/features/pipelined";
+
+    /**
+     * Property name for the number of decoder threads. The value is
+     * an <code>Integer</code> of at least 1. If more than one thread
+     * is used, independent tags are decoded in parallel by a pool of
+     * worker threads, and the resulting SAX events are reported in
+     * file order from the thread calling <code>parse()</code>.
+     * Defaults to 1, i.e. all tags are decoded by the parsing thread.
+     */
+    public static final String PROPERTY_DECODER_THREADS =
+	"http://tivano.de/swf/parser/properties/decoder-threads";
+
+    /**
+     * Maximum number of decoded tags waiting to be reported, per
+     * decoder thread
+     */
+    private static final int MAX_PENDING_PER_THREAD = 4;
+
+    /** Flag, set if events are passed to the handlers on a separate thread */
+    private boolean pipelined = false;
+
+    /** The event pipe for pipelined parsing, or <code>null</code> */
+    private SAXEventPipe pipe = null;
+
+    /** The number of decoder threads */
+    private int decoderThreads = 1;
+
+    /** The current tag filter */
+    private SWFTagFilter tagFilter = null;
+
+    /** Flag, set if unknown tags are reported as raw data */
+    private boolean reportRawData = true;
+
+    /** Flag, set if base64 data is broken into lines */
+    private boolean base64LineBreaks = true;
+
+    /** Tag reader for skipped tags */
+    private SWFTagReader skipReader = new SWFIgnoreTagReader();
+
     /** Special "tag ID" for tags which don't have a registered tag reader. */
     public final Integer TAGID_DEFAULT = new Integer(-1);
 
     /** Construct a new <code>SWFReader</code> */
     public SWFReader() {
 	super();
+	skipReader.setSAXDriver(this);
 
 	// Setup the default tag handlers
 	registerTagReader(TAGID_DEFAULT,
@@ -116,8 +237,11 @@ public class SWFReader implements XMLReader {
 
     /**
      * Look up the value of a feature.
-     * <p>This method is delegated to the wrapped <code>XMLReader</code>. If
-     * <code>SWFReader</code> works standalone, no features are supported.</p>
+     * <p>The features {@link #FEATURE_RAW_DATA}, {@link
+     * #FEATURE_BASE64_LINE_BREAKS} and {@link #FEATURE_PIPELINED}
+     * are handled by the parser. Other features are delegated to the wrapped
+     * <code>XMLReader</code>. If <code>SWFReader</code> works
+     * standalone, no other features are supported.</p>
      * @param name The feature name, which is a fully-qualified URI.
      * @return The current state of the feature (true or false).
      * @exception org.xml.sax.SAXNotRecognizedException When the
@@ -129,14 +253,20 @@ public class SWFReader implements XMLReader {
      */
     public boolean getFeature (String name)
         throws SAXNotRecognizedException, SAXNotSupportedException {
+	if (FEATURE_RAW_DATA.equals(name)) return reportRawData;
+	if (FEATURE_BASE64_LINE_BREAKS.equals(name)) return base64LineBreaks;
+	if (FEATURE_PIPELINED.equals(name)) return pipelined;
 	if (xmlReader != null) return xmlReader.getFeature(name);
 	else throw new SAXNotRecognizedException(name);
     }
 
     /**
      * Set the state of a feature.
-     * <p>This method is delegated to the wrapped <code>XMLReader</code>. If
-     * <code>SWFReader</code> works standalone, no features are supported.</p>
+     * <p>The features {@link #FEATURE_RAW_DATA}, {@link
+     * #FEATURE_BASE64_LINE_BREAKS} and {@link #FEATURE_PIPELINED}
+     * are handled by the parser. Other features are delegated to the wrapped
+     * <code>XMLReader</code>. If <code>SWFReader</code> works
+     * standalone, no other features are supported.</p>
      * @param name The feature name, which is a fully-qualified URI.
      * @param state The requested state of the feature (true or false).
      * @exception org.xml.sax.SAXNotRecognizedException When the
@@ -148,7 +278,12 @@ public class SWFReader implements XMLReader {
      */
     public void setFeature (String name, boolean value)
 	throws SAXNotRecognizedException, SAXNotSupportedException {
-	if (xmlReader != null) xmlReader.setFeature(name, value);
+	if (FEATURE_RAW_DATA.equals(name)) reportRawData = value;
+	else if (FEATURE_BASE64_LINE_BREAKS.equals(name)) {
+	    base64LineBreaks = value;
+	}
+	else if (FEATURE_PIPELINED.equals(name)) pipelined = value;
+	else if (xmlReader != null) xmlReader.setFeature(name, value);
 	else throw new SAXNotRecognizedException(name);
     }
 
@@ -163,6 +298,10 @@ public class SWFReader implements XMLReader {
      * <code>SWFTagReader</code></p>, this class is used to handle 
      * SWF tags with the corresponding tag id (all tags with no
      * specific handler for <code>DEFAULT</code>).
+     * <p>The property {@link #PROPERTY_INPUT_MODE} selects how SWF
+     * data is read, {@link #PROPERTY_TAG_FILTER} selects the tags
+     * to report and {@link #PROPERTY_DECODER_THREADS} sets the
+     * number of decoder threads.</p>
      * <p>Other properties are delegated to the wrapped
      * <code>XMLReader</code> if one is set.</p>
      * @param name The property name, which is a fully-qualified URI.
@@ -176,7 +315,12 @@ public class SWFReader implements XMLReader {
      */
     public Object getProperty (String name)
 	throws SAXNotRecognizedException, SAXNotSupportedException {
-	// FIXME: Property handling not yet implemented
+	// FIXME: Tag reader properties not yet implemented
+	if (PROPERTY_INPUT_MODE.equals(name)) return inputMode;
+	if (PROPERTY_TAG_FILTER.equals(name)) return tagFilter;
+	if (PROPERTY_DECODER_THREADS.equals(name)) {
+	    return new Integer(decoderThreads);
+	}
 	if (xmlReader != null) return xmlReader.getProperty(name);
 	else throw new SAXNotRecognizedException(name);
     }
@@ -193,6 +337,10 @@ public class SWFReader implements XMLReader {
      * <code>SWFTagReader</code></p>, this class is used to handle 
      * SWF tags with the corresponding tag id (all tags with no
      * specific handler for <code>DEFAULT</code>).
+     * <p>The property {@link #PROPERTY_INPUT_MODE} selects how SWF
+     * data is read, {@link #PROPERTY_TAG_FILTER} selects the tags
+     * to report and {@link #PROPERTY_DECODER_THREADS} sets the
+     * number of decoder threads.</p>
      * <p>Other properties are delegated to the wrapped
      * <code>XMLReader</code> if one is set.</p>
      * @param name The property name, which is a fully-qualified URI.
@@ -205,8 +353,30 @@ public class SWFReader implements XMLReader {
      */
     public void setProperty (String name, Object value)
 	throws SAXNotRecognizedException, SAXNotSupportedException {
-	// FIXME: Implement property handling
-	if (xmlReader != null) xmlReader.setProperty(name, value);
+	// FIXME: Implement tag reader properties
+	if (PROPERTY_INPUT_MODE.equals(name)) {
+	    if (INPUT_MODE_AUTO.equals(value) ||
+		INPUT_MODE_MAPPED.equals(value) ||
+		INPUT_MODE_STREAM.equals(value)) {
+		inputMode = (String)value;
+	    } else {
+		throw new SAXNotSupportedException(
+		    "Unknown input mode: " + value);
+	    }
+	} else if (PROPERTY_TAG_FILTER.equals(name)) {
+	    if (value != null && !(value instanceof SWFTagFilter)) {
+		throw new SAXNotSupportedException(
+		    "Tag filter must implement SWFTagFilter");
+	    }
+	    tagFilter = (SWFTagFilter)value;
+	} else if (PROPERTY_DECODER_THREADS.equals(name)) {
+	    if (!(value instanceof Integer) ||
+		((Integer)value).intValue() < 1) {
+		throw new SAXNotSupportedException(
+		    "Number of decoder threads must be a positive Integer");
+	    }
+	    decoderThreads = ((Integer)value).intValue();
+	} else if (xmlReader != null) xmlReader.setProperty(name, value);
 	else throw new SAXNotRecognizedException(name);
     }
 
@@ -302,6 +472,8 @@ public class SWFReader implements XMLReader {
      * @see #setContentHandler
      */
     public ContentHandler getContentHandler () {
+	// While parsing in pipelined mode, all events go through the pipe
+	if (pipe != null) return pipe;
 	// Delegate in case the wrapped parser wants to do something
 	// special. Unlikely, but who knows...
 	if (xmlReader != null) return xmlReader.getContentHandler();
@@ -338,6 +510,7 @@ public class SWFReader implements XMLReader {
      * @see #setErrorHandler
      */
     public ErrorHandler getErrorHandler () {
+	if (pipe != null) return pipe;
 	// Delegate in case the wrapped parser wants to do something
 	// special. Unlikely, but who knows...
 	if (xmlReader != null) return xmlReader.getErrorHandler();
@@ -380,6 +553,11 @@ public class SWFReader implements XMLReader {
      * is not SWF, the stream is passed on to the wrapped
      * <code>XMLReader</code></li>.
      * </ul>
+     * <p>If the system ID designates a local file, the file is
+     * mapped into memory instead of being read through a stream,
+     * unless this is disabled via {@link #PROPERTY_INPUT_MODE}.</p>
+     * <p>Compressed SWF files are decompressed on the fly while
+     * parsing.</p>
      * @param source The input source for the top-level of the
      *        SWF or XML document.
      * @exception org.xml.sax.SAXException Any SAX exception, possibly
@@ -396,13 +574,136 @@ public class SWFReader implements XMLReader {
      */
     public void parse (InputSource input)
 	throws IOException, SAXException {
-	InputStream in = input.getByteStream();
-
 	if (input.getCharacterStream() != null) {
 	    delegateParsing(input);
+	    return;
+	}
+
+	BitInputStream bits = openSWF(input);
+	if (bits == null) {
+	    // Not an SWF file -> delegate
+	    delegateParsing(input);
+	    return;
+	}
+	try {
+	    parse(bits);
+	} finally {
+	    bits.close();
+	}
+    }
+
+    /**
+     * Build an index of the tags in an SWF file without decoding the
+     * tag contents. Input is read as for {@link #parse(InputSource)},
+     * but nothing is delegated to the wrapped XML reader and no SAX
+     * events are generated.
+     * @param input the input source for the SWF file
+     * @return the tag index
+     * @exception SWFFormatException if the input is not SWF data
+     * @exception IOException if an I/O error occurs
+     */
+    public SWFTagIndex scan(InputSource input) throws IOException {
+	if (input.getCharacterStream() != null) {
+	    throw new SWFFormatException("Cannot read SWF data from a character stream");
+	}
+	BitInputStream bits = openSWF(input);
+	if (bits == null) throw new SWFFormatException("Not an SWF file");
+	try {
+	    return new SWFTagIndex(bits);
+	} finally {
+	    bits.close();
+	}
+    }
+
+    /**
+     * Build an index of the tags in an SWF file without decoding the
+     * tag contents.
+     * @param systemId the system identifier (URI) of the SWF file
+     * @see #scan(InputSource)
+     */
+    public SWFTagIndex scan(String systemId) throws IOException {
+	return scan(new InputSource(systemId));
+    }
+
+    /**
+     * Open a cursor for reading the tags of an SWF file one at a
+     * time. Input is read as for {@link #parse(InputSource)}, but
+     * nothing is delegated to the wrapped XML reader and no SAX
+     * events are generated. The cursor must be closed by the caller.
+     * @param input the input source for the SWF file
+     * @return the cursor, positioned before the first tag
+     * @exception SWFFormatException if the input is not SWF data
+     * @exception IOException if an I/O error occurs
+     */
+    public SWFTagCursor openCursor(InputSource input) throws IOException {
+	if (input.getCharacterStream() != null) {
+	    throw new SWFFormatException("Cannot read SWF data from a character stream");
+	}
+	BitInputStream bits = openSWF(input);
+	if (bits == null) throw new SWFFormatException("Not an SWF file");
+	try {
+	    return new SWFTagCursor(bits);
+	} catch (IOException e) {
+	    bits.close();
+	    throw e;
+	}
+    }
+
+    /**
+     * Open a cursor for reading the tags of an SWF file one at a
+     * time.
+     * @param systemId the system identifier (URI) of the SWF file
+     * @see #openCursor(InputSource)
+     */
+    public SWFTagCursor openCursor(String systemId) throws IOException {
+	return openCursor(new InputSource(systemId));
+    }
+
+    /**
+     * Open the binary input of <code>input</code> for reading SWF
+     * data.
+     *
+     * <p>Depending on the input source and the input mode, the data
+     * is read from a memory mapped buffer or from a stream, and
+     * compressed data is decompressed on the fly.</p>
+     * @param input the input source. Must not have a character
+     * stream.
+     * @return a stream that delivers the (uncompressed) SWF data,
+     * starting with the file header, or <code>null</code> if
+     * <code>input</code> does not contain SWF data. In the latter
+     * case, the input source is left in a state that allows
+     * reading the data again from the start.
+     */
+    private BitInputStream openSWF(InputSource input) throws IOException {
+	InputStream in = input.getByteStream();
+
+	// Parse directly from a memory mapped buffer if possible
+	ByteBuffer data = mapInput(input);
+	if (data != null) {
+	    SWFFileHeader header;
+	    try {
+		header = new SWFFileHeader(new ByteBufferBitInputStream(data));
+	    } catch (SWFFormatException e) {
+		return null;
+	    }
+	    // Leave a stream provided by the client at the end of the
+	    // data, just as if it had been read.
+	    if (in != null) {
+		FileChannel channel = ((FileInputStream)in).getChannel();
+		channel.position(channel.size());
+	    }
+	    if (!header.isCompressed()) {
+		return new ByteBufferBitInputStream(data);
+	    }
+	    // Compressed data has to go through an inflater stream
+	    // anyway, so read it from the buffer like from any other
+	    // stream.
+	    in = new ByteBufferBitInputStream(data);
 	} else if (in == null) {
 	    // FIXME: Handle system identifiers other than "file"
-	    in = new FileInputStream(input.getSystemId());
+	    File file = getLocalFile(input.getSystemId());
+	    if (file != null) in = new FileInputStream(file);
+	    else in = new FileInputStream(input.getSystemId());
 	}
 
 	// Examine the start of the binary stream. Use a byte array
@@ -419,22 +720,123 @@ public class SWFReader implements XMLReader {
 	in.mark(SWFFileHeader.MAX_LENGTH);
 	in.read(buffer);
 	in.reset();
-	
+
+	SWFFileHeader header;
 	try {
-	    SWFFileHeader dummy = new SWFFileHeader(buffer);
+	    header = new SWFFileHeader(buffer);
 	} catch (SWFFormatException e) {
-	    // Not an SWF file -> delegate
-	    delegateParsing(input);
+	    return null;
+	}
+
+	if (header.isCompressed()) {
+	    return new BitInputStream(inflate(in));
+	} else if (in instanceof ByteArrayInputStream) {
+	    // The data is already in memory, so use the much faster
+	    // in-memory bit stream. ByteArrayInputStream.available()
+	    // returns the exact number of remaining bytes, and read()
+	    // always returns all of them at once.
+	    byte[] tmp = new byte[in.available()];
+	    in.read(tmp, 0, tmp.length);
+	    return new ByteBufferBitInputStream(tmp);
+	} else {
+	    return new BitInputStream(in);
+	}
+    }
+
+    /**
+     * Get a stream that delivers the uncompressed data for a
+     * compressed SWF file. The data is decompressed on the fly as it
+     * is read.
+     * @param in the compressed SWF data, positioned at the start of
+     * the file
+     * @return a stream that delivers the file header prefix as is,
+     * followed by the decompressed rest of the file.
+     */
+    private InputStream inflate(InputStream in) throws IOException {
+	byte[] prefix = new byte[SWFFileHeader.PREFIX_LENGTH];
+	int pos = 0;
+	while (pos < prefix.length) {
+	    int count = in.read(prefix, pos, prefix.length - pos);
+	    if (count < 0) throw new EOFException();
+	    pos += count;
+	}
+	if (inflater == null) inflater = new Inflater();
+	else inflater.reset();
+	// Inflating a few bytes at a time is expensive, so read the
+	// inflated data through a buffer as well.
+	return new BufferedInputStream(
+	    new SequenceInputStream(
+		new ByteArrayInputStream(prefix),
+		new InflaterInputStream(in, inflater, INFLATE_BUFFER_SIZE)),
+	    INFLATE_BUFFER_SIZE);
+    }
+
+
+    /**
+     * Map the SWF data of <code>input</code> into memory, if
+     * possible and permitted by the input mode (see {@link
+     * #PROPERTY_INPUT_MODE}).
+     * @return a buffer with the mapped data, or <code>null</code> if
+     * the data should be read from a stream.
+     */
+    private ByteBuffer mapInput(InputSource input) throws IOException {
+	if (INPUT_MODE_STREAM.equals(inputMode)) return null;
+	
+	InputStream in = input.getByteStream();
+	FileChannel channel = null;
+	if (in == null) {
+	    File file = getLocalFile(input.getSystemId());
+	    if (file == null) return null;
+	    channel = new FileInputStream(file).getChannel();
+	} else if (INPUT_MODE_MAPPED.equals(inputMode) &&
+		   in instanceof FileInputStream) {
+	    channel = ((FileInputStream)in).getChannel();
+	} else {
+	    return null;
 	}
 
-	BitInputStream bits = new BitInputStream(in);
 	try {
-	    parse(bits);
+	    long start = channel.position();
+	    long size  = channel.size() - start;
+	    // A ByteBuffer can't hold more than 2GB.
+	    if (size > Integer.MAX_VALUE) return null;
+	    return channel.map(FileChannel.MapMode.READ_ONLY, start, size);
 	} finally {
-	    bits.close();
+	    // Close the channel if we opened it. The mapping remains
+	    // valid until the buffer is garbage collected.
+	    if (in == null) channel.close();
 	}
     }
 
+    /**
+     * Get the local file designated by <code>systemId</code>.
+     * <code>systemId</code> may either be a <code>file:</code> URI or a
+     * plain file name.
+     * @return the file, or <code>null</code> if
+     * <code>systemId</code> does not designate an existing local file.
+     */
+    private File getLocalFile(String systemId) {
+	if (systemId == null) return null;
+	File file;
+	try {
+	    URI uri = new URI(systemId);
+	    if ("file".equals(uri.getScheme())) {
+		file = new File(uri);
+	    } else if (uri.getScheme() == null) {
+		file = new File(systemId);
+	    } else {
+		return null;
+	    }
+	} catch (URISyntaxException e) {
+	    // Not a valid URI, so this may be a plain file name
+	    // (e.g. a windows path)
+	    file = new File(systemId);
+	} catch (IllegalArgumentException e) {
+	    // Thrown by new File(URI) for things like "file://host/x"
+	    return null;
+	}
+	return file.isFile()?file:null;
+    }
 
     /**
      * Parse an XML or SWF document from a system identifier (URI).
@@ -482,8 +884,40 @@ public class SWFReader implements XMLReader {
      */
     private void parse (BitInputStream input)
 	throws IOException, SAXException {
+	if (pipelined && pipe == null) parsePipelined(input);
+	else parseDocument(input);
+    }
 
+    /**
+     * Parse an SWF file, passing the events to the handlers on a
+     * separate thread.
+     * <p>While parsing, {@link #getContentHandler} and {@link
+     * #getErrorHandler} return the event pipe. If an exception is
+     * thrown while parsing, the events up to that point are still
+     * passed on, and an exception thrown by one of the handlers takes
+     * precedence, just as if the handlers were called directly.</p>
+     * @see #FEATURE_PIPELINED
+     */
+    private void parsePipelined(BitInputStream input)
+	throws IOException, SAXException {
+	SAXEventPipe events =
+	    new SAXEventPipe(getContentHandler(), getErrorHandler());
+	pipe = events;
+	try {
+	    parseDocument(input);
+	} finally {
+	    // Throws the handler exception, if any, in place of the
+	    // parser exception
+	    pipe = null;
+	    events.finish();
+	}
+    }
 
+    /**
+     * Parse an SWF file, sending the events to the current handlers.
+     */
+    private void parseDocument (BitInputStream input)
+	throws IOException, SAXException {
 	ContentHandler handler = getContentHandler();
 	handler.startDocument();
 	// Handle the file header
@@ -494,9 +928,10 @@ public class SWFReader implements XMLReader {
 	// input available, so this loop *will* terminate
 	// eventually...
 	try {
-	    while (true) {
+	    if (decoderThreads > 1) parseTagsParallel(input);
+	    else while (true) {
 		SWFTagHeader nextTag = new SWFTagHeader(input);
-		getTagReader(nextTag).parse(input, nextTag);
+		getTagReaderFiltered(nextTag).parse(input, nextTag);
 	    }
 	} catch (EOFException e) {
 	    // OK, we're done
@@ -507,6 +942,81 @@ public class SWFReader implements XMLReader {
 	handler.endDocument();
     }
 
+    /**
+     * Parse the SWF tags, decoding independent tags in parallel.
+     *
+     * <p>The tags are read from <code>input</code> by the calling
+     * thread. Tags with a tag reader that can run in a {@link
+     * SWFDecoderPool} are handed to the pool, all other tags are
+     * parsed by the calling thread as soon as all previous tags have
+     * been reported. The SAX events for each tag are reported in file
+     * order from the calling thread.</p>
+     * @exception EOFException if the input ends inside a tag
+     */
+    private void parseTagsParallel(BitInputStream input)
+	throws IOException, SAXException {
+	SWFDecoderPool pool = new SWFDecoderPool(this, decoderThreads);
+	LinkedList pending = new LinkedList();
+	int maxPending = decoderThreads * MAX_PENDING_PER_THREAD;
+	try {
+	    while (true) {
+		SWFTagHeader nextTag;
+		try {
+		    nextTag = new SWFTagHeader(input);
+		} catch (EOFException e) {
+		    break;
+		}
+		SWFTagReader reader = getTagReaderFiltered(nextTag);
+		if (reader != skipReader && SWFDecoderPool.canDecode(reader)) {
+		    BitInputStream data;
+		    try {
+			data = SWFTagReaderBase.readTagData(input, nextTag);
+		    } catch (EOFException e) {
+			replayAll(pending);
+			throw e;
+		    }
+		    pending.addLast(pool.submit(reader, nextTag, data));
+		    while (!pending.isEmpty() &&
+			   (pending.size() > maxPending ||
+			    ((SWFDecoderPool.Task)pending.getFirst()).isDone())) {
+			replay((SWFDecoderPool.Task)pending.removeFirst());
+		    }
+		} else {
+		    // Skipped tags don't generate any events, everything
+		    // else may depend on the context set up by earlier
+		    // tags.
+		    if (reader != skipReader &&
+			reader.getClass() != SWFIgnoreTagReader.class) {
+			replayAll(pending);
+		    }
+		    reader.parse(input, nextTag);
+		}
+	    }
+	    replayAll(pending);
+	} finally {
+	    pool.shutdown();
+	}
+    }
+
+    /** Report the events of all pending tags. */
+    private void replayAll(LinkedList pending)
+	throws IOException, SAXException {
+	while (!pending.isEmpty()) {
+	    replay((SWFDecoderPool.Task)pending.removeFirst());
+	}
+    }
+
+    /**
+     * Wait for a tag to be decoded and report its events. Exceptions
+     * thrown by the tag reader are re-thrown on the calling thread.
+     */
+    private void replay(SWFDecoderPool.Task task)
+	throws IOException, SAXException {
+	task.waitFor();
+	task.getEvents().replay(getContentHandler(), getErrorHandler());
+	task.rethrow();
+    }
+
     /**
      * Send the XML Events for the start of the file.
      *
@@ -528,6 +1038,7 @@ public class SWFReader implements XMLReader {
 	SWFAttributes attr = new SWFAttributes();
 	attr.addAttribute("version", header.getVersion());
 	attr.addAttribute("framerate", header.getFrameRate());
+	if (header.isCompressed()) attr.addAttribute("compressed", "yes");
 	// Convert the values from "TWIPS" to pixels (divide by 20).
 	double x = header.getMovieSize().getXMin() / 20.0;
 	double y = header.getMovieSize().getYMin() / 20.0;
@@ -619,4 +1130,24 @@ public class SWFReader implements XMLReader {
      */
     protected Map getContextMap() { return context; }
 
+    /**
+     * Check if base64-encoded raw data is broken into lines.
+     * @see #FEATURE_BASE64_LINE_BREAKS
+     */
+    protected boolean isBase64LineBreaks() { return base64LineBreaks; }
+
+    /**
+     * Get the tag reader for a tag, taking the tag filter and the
+     * raw data feature into account.
+     * @return the tag reader for <code>header</code>, or a reader
+     * that skips the tag if it should not be reported.
+     */
+    private SWFTagReader getTagReaderFiltered(SWFTagHeader header) {
+	if (tagFilter != null && !tagFilter.accept(header)) return skipReader;
+	SWFTagReader reader = getTagReader(header);
+	if (!reportRawData &&
+	    reader == tagReaderMap.get(TAGID_DEFAULT)) return skipReader;
+	return reader;
+    }
+
 }
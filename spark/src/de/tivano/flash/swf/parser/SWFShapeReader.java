@@ -22,12 +22,10 @@
 
 package de.tivano.flash.swf.parser;
 
+import de.tivano.flash.swf.common.SWFDefineFont2;
 import de.tivano.flash.swf.common.SWFShape;
-import de.tivano.flash.swf.common.SWFShapeRecord;
-import de.tivano.flash.swf.common.SWFMoveTo;
+import de.tivano.flash.swf.common.SWFShapeRecordVisitor;
 import de.tivano.flash.swf.common.SWFStateChange;
-import de.tivano.flash.swf.common.SWFStraightEdge;
-import de.tivano.flash.swf.common.SWFCurvedEdge;
 import de.tivano.flash.swf.common.SWFTagHeader;
 import de.tivano.flash.swf.common.BitInputStream;
 
@@ -35,8 +33,6 @@ import org.xml.sax.SAXException;
 
 import java.io.IOException;
 
-import java.util.Iterator;
-
 /**
  * Converts an SWF shape structure to XML.
  * This class emits the following XML snippet:
@@ -61,7 +57,7 @@ public class SWFShapeReader extends SWFTagReaderBase {
 
     /** Flag, tells if this shape readers uses RGB or RGBA colors in
 	fill- and line style definitions. */
-    private final boolean USE_RGBA;
+    protected final boolean USE_RGBA;
 
     /**
      * Construct a new <code>SWFShapeReader</code>
@@ -82,11 +78,18 @@ public class SWFShapeReader extends SWFTagReaderBase {
     }
     
     /**
-     * Read the content.
+     * Read the content. The shape is converted to XML while it is
+     * read, without building a {@link SWFShape} object.
      * @param input the SWF data stream
      */
     public void parse(BitInputStream input) throws SAXException, IOException {
-	toXML(new SWFShape(input, USE_RGBA));
+	XMLVisitor visitor = new XMLVisitor();
+	try {
+	    SWFShape.parse(input, USE_RGBA, visitor);
+	} catch (SAXIOException e) {
+	    // Re-throw the wrapped exception
+	    throw e.getSAXCause();
+	}
     }
 
     /**
@@ -94,80 +97,161 @@ public class SWFShapeReader extends SWFTagReaderBase {
      * @param the shape structure
      */
     public void toXML(SWFShape shape) throws IOException, SAXException {
-	SWFAttributes attrib = createAttributes();
-	startElement("Shape", null);
-	Iterator records = shape.getShapeRecords();
-	boolean insidePath = false;
-	while (records.hasNext()) {
-	    attrib.clear();
-	    Object entry = records.next();
-	    if (entry instanceof SWFCurvedEdge) {
-		// Paranoia code. Should never happen.
-		if (!insidePath) {
-		    fatalError(
-		      "SWF edge record found without preceding MoveTo");
-		    return;
-		}
-		SWFCurvedEdge c = (SWFCurvedEdge)entry;
-		attrib.addAttribute("x", c.getAnchorX());
-		attrib.addAttribute("y", c.getAnchorY());
-		attrib.addAttribute("cx", c.getControlX());
-		attrib.addAttribute("cy", c.getControlY());
-		emptyElement("Bezier", attrib);
-	    } else if (entry instanceof SWFStraightEdge) {
-		if (!insidePath) {
-		    fatalError(
-		       "SWF edge record found without preceding MoveTo");
-		    return;
-		}
-		SWFStraightEdge s = (SWFStraightEdge)entry;
-		attrib.addAttribute("x", s.getX());
-		attrib.addAttribute("y", s.getY());
-		emptyElement("Line", attrib);
-	    } else if (entry instanceof SWFStateChange) {
+	try {
+	    shape.accept(new XMLVisitor());
+	} catch (SAXIOException e) {
+	    // Re-throw the wrapped exception
+	    throw e.getSAXCause();
+	}
+    }
+
+    /**
+     * Convert the shape of a glyph in a font to XML. The glyph
+     * shape is converted directly from the SWF data if possible.
+     * @param font the font
+     * @param glyph the index of the glyph
+     */
+    public void toXML(SWFDefineFont2 font, int glyph)
+	        throws IOException, SAXException {
+	try {
+	    font.visitShape(glyph, new XMLVisitor());
+	} catch (SAXIOException e) {
+	    // Re-throw the wrapped exception
+	    throw e.getSAXCause();
+	}
+    }
+
+    /**
+     * Shape record visitor emitting the XML for a shape. SAX
+     * exceptions are wrapped in {@link SAXIOException}s.
+     */
+    private class XMLVisitor implements SWFShapeRecordVisitor {
+	private final SWFAttributes attrib = createAttributes();
+	private boolean insidePath = false;
+
+	/** Set after a fatal error. All further records are ignored. */
+	private boolean aborted = false;
+
+	public void startShape(int fillBits, int lineBits)
+	            throws IOException {
+	    try {
+		startElement("Shape", null);
+	    } catch (SAXException e) {
+		throw new SAXIOException(e);
+	    }
+	}
+
+	public void styleChange(int flags, int fillStyle0, int fillStyle1,
+				int lineStyle, SWFStateChange newStyles)
+	            throws IOException {
+	    if (aborted) return;
+	    try {
 		if (insidePath) {
 		    endElement("Path");
 		    insidePath = false;
 		}
-		SWFStateChange state = (SWFStateChange)entry;
-		if (!state.isEndOfShape()) {
-		    if (state.hasFillStyle0()) {
-			attrib.clear();
-			attrib.addAttribute("slot", 0);
-			attrib.addAttribute("style",
-					    state.getFillStyle0());
-			emptyElement("FillStyle", attrib);
-		    }
-		    if (state.hasFillStyle1()) {
-			attrib.clear();
-			attrib.addAttribute("slot", 1);
-			attrib.addAttribute("style",
-					    state.getFillStyle1());
-			emptyElement("FillStyle", attrib);
-		    }
-		    if (state.hasLineStyle()) {
-			attrib.clear();
-			attrib.addAttribute("style",
-					    state.getLineStyle());
-			emptyElement("LineStyle", attrib);
-		    }
-		    startElement("Path", null);
-		    insidePath = true;
+		if ((flags & FILL_STYLE_0) != 0) {
 		    attrib.clear();
-		    if (state.hasMoveTo()) {
-			SWFMoveTo m = state.getMoveTo();
-			attrib.addAttribute("x", m.getX());
-			attrib.addAttribute("y", m.getY());
-		    } else {
-			// XXX: Don't know what to do except implicitly
-			// starting at (0, 0);
-			attrib.addAttribute("x", 0);
-			attrib.addAttribute("y", 0);
-		    }
-		    emptyElement("Start", attrib);
+		    attrib.addAttribute("slot", 0);
+		    attrib.addAttribute("style", fillStyle0);
+		    emptyElement("FillStyle", attrib);
 		}
+		if ((flags & FILL_STYLE_1) != 0) {
+		    attrib.clear();
+		    attrib.addAttribute("slot", 1);
+		    attrib.addAttribute("style", fillStyle1);
+		    emptyElement("FillStyle", attrib);
+		}
+		if ((flags & LINE_STYLE) != 0) {
+		    attrib.clear();
+		    attrib.addAttribute("style", lineStyle);
+		    emptyElement("LineStyle", attrib);
+		}
+		startElement("Path", null);
+		insidePath = true;
+		if ((flags & MOVE_TO) == 0) {
+		    // XXX: Don't know what to do except implicitly
+		    // starting at (0, 0);
+		    start(0, 0);
+		}
+	    } catch (SAXException e) {
+		throw new SAXIOException(e);
+	    }
+	}
+
+	public void moveTo(int x, int y) throws IOException {
+	    if (aborted) return;
+	    try {
+		start(x, y);
+	    } catch (SAXException e) {
+		throw new SAXIOException(e);
+	    }
+	}
+
+	public void lineTo(int dx, int dy) throws IOException {
+	    if (aborted) return;
+	    try {
+		if (checkPath()) {
+		    attrib.clear();
+		    attrib.addAttribute("x", dx);
+		    attrib.addAttribute("y", dy);
+		    emptyElement("Line", attrib);
+		}
+	    } catch (SAXException e) {
+		throw new SAXIOException(e);
+	    }
+	}
+
+	public void curveTo(int controlX, int controlY,
+			    int anchorX, int anchorY) throws IOException {
+	    if (aborted) return;
+	    try {
+		if (checkPath()) {
+		    attrib.clear();
+		    attrib.addAttribute("x", anchorX);
+		    attrib.addAttribute("y", anchorY);
+		    attrib.addAttribute("cx", controlX);
+		    attrib.addAttribute("cy", controlY);
+		    emptyElement("Bezier", attrib);
+		}
+	    } catch (SAXException e) {
+		throw new SAXIOException(e);
+	    }
+	}
+
+	public void endShape() throws IOException {
+	    if (aborted) return;
+	    try {
+		if (insidePath) {
+		    endElement("Path");
+		    insidePath = false;
+		}
+		endElement("Shape");
+	    } catch (SAXException e) {
+		throw new SAXIOException(e);
+	    }
+	}
+
+	/** Emit the <code>&lt;Start&gt;</code> element of a path */
+	private void start(int x, int y) throws SAXException {
+	    attrib.clear();
+	    attrib.addAttribute("x", x);
+	    attrib.addAttribute("y", y);
+	    emptyElement("Start", attrib);
+	}
+
+	/**
+	 * Check that an edge record is inside a path. If not, report
+	 * a fatal error and ignore the rest of the shape.
+	 * @return <code>true</code> if the edge can be converted.
+	 */
+	private boolean checkPath() throws SAXException {
+	    // Paranoia code. Should never happen.
+	    if (!insidePath) {
+		aborted = true;
+		fatalError("SWF edge record found without preceding MoveTo");
 	    }
+	    return insidePath;
 	}
-	endElement("Shape");
     }
 }
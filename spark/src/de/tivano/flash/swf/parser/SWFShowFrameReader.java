@@ -40,7 +40,8 @@ import de.tivano.flash.swf.common.BitInputStream;
  * @author Richard Kunze
  * @see org.xml.sax.ContentHandler
  */
-public class SWFShowFrameReader extends SWFTagReaderBase {
+public class SWFShowFrameReader extends SWFTagReaderBase
+                                implements SWFParallelTagReader {
     /**
      * Read the tag content. Actually, this method reads nothing
      * because the SWF ShowFrame structure does not contain any
@@ -55,5 +56,8 @@ public class SWFShowFrameReader extends SWFTagReaderBase {
 	throws SAXException, IOException {
 	emptyElement("ShowFrame", null);
     }
+
+    /** @see SWFParallelTagReader#copy */
+    public SWFTagReader copy() { return copyReader(); }
 }
 
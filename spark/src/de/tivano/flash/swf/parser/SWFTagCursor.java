@@ -0,0 +1,234 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.parser;
+
+import java.io.IOException;
+import java.io.EOFException;
+
+import de.tivano.flash.swf.common.BitInputStream;
+import de.tivano.flash.swf.common.SWFDataType;
+import de.tivano.flash.swf.common.SWFDefineFont;
+import de.tivano.flash.swf.common.SWFDefineFont2;
+import de.tivano.flash.swf.common.SWFDefineTextField;
+import de.tivano.flash.swf.common.SWFFileHeader;
+import de.tivano.flash.swf.common.SWFFormatException;
+import de.tivano.flash.swf.common.SWFTagHeader;
+import de.tivano.flash.swf.common.SWFTypes;
+
+/**
+ * A cursor for reading the tags of an SWF file one at a time.
+ *
+ * <p>This is the pull-style counterpart to the SAX interface of
+ * {@link SWFReader}. Each call to {@link #next} advances the cursor
+ * to the next tag. The caller can then look at the tag header, read
+ * the tag as a typed object with {@link #getTag}, get the raw tag
+ * data, or simply move on to the next tag. Tag data that is not
+ * asked for is skipped without being decoded, and nothing is
+ * converted to strings, so a cursor is the cheapest way to find a
+ * few tags in a file. Reading can stop at any time.</p>
+ *
+ * <p>Typical use:</p>
+ * <pre>
+ * SWFTagCursor cursor = new SWFReader().openCursor("movie.swf");
+ * try {
+ *     while (cursor.next()) {
+ *         if (cursor.getType() == SWFTypes.DEFINE_FONT2) {
+ *             SWFDefineFont2 font = (SWFDefineFont2)cursor.getTag();
+ *             ...
+ *         }
+ *     }
+ * } finally {
+ *     cursor.close();
+ * }
+ * </pre>
+ *
+ * <p><em>Caution: This class is <strong>not</strong> thread
+ * safe.</em></p>
+ *
+ * @see SWFReader#openCursor(org.xml.sax.InputSource)
+ * @author Richard Kunze
+ */
+public class SWFTagCursor {
+
+    /** The SWF data */
+    private final BitInputStream input;
+
+    /** The file header */
+    private final SWFFileHeader fileHeader;
+
+    /** The header of the current tag, or <code>null</code> */
+    private SWFTagHeader header = null;
+
+    /**
+     * The in-memory data of the current tag, or <code>null</code> if
+     * it has not been read yet. Marked at the start of the tag.
+     */
+    private BitInputStream data = null;
+
+    /** Flag, set when the end of the file has been reached */
+    private boolean atEnd = false;
+
+    /**
+     * Create a cursor for an SWF file. The cursor is positioned
+     * before the first tag.
+     * @param input the SWF data, positioned at the start of the
+     * file. If the file is compressed, the data following the file
+     * header prefix must already be decompressed.
+     * @exception SWFFormatException if the data is not a valid SWF
+     * file
+     * @exception IOException if an I/O error occurs
+     */
+    public SWFTagCursor(BitInputStream input) throws IOException {
+	this.input = input;
+	fileHeader = new SWFFileHeader(input);
+    }
+
+    /** Get the file header */
+    public SWFFileHeader getFileHeader() { return fileHeader; }
+
+    /**
+     * Advance to the next tag. The rest of the current tag is
+     * skipped.
+     * @return <code>true</code> if the cursor is positioned on a
+     * tag, <code>false</code> if there are no more tags.
+     * @exception SWFFormatException if the current tag is truncated
+     * @exception IOException if an I/O error occurs
+     */
+    public boolean next() throws IOException {
+	if (atEnd) return false;
+	if (header != null && data == null) {
+	    long length = header.getRecordLength();
+	    if (input.skip(length) != length) {
+		throw new SWFFormatException(
+		    "Unexpected end of file in tag " + header.getID());
+	    }
+	}
+	data = null;
+	try {
+	    header = new SWFTagHeader(input);
+	} catch (EOFException e) {
+	    header = null;
+	    atEnd = true;
+	}
+	return !atEnd;
+    }
+
+    /**
+     * Get the header of the current tag.
+     * @exception IllegalStateException if the cursor is not
+     * positioned on a tag
+     */
+    public SWFTagHeader getHeader() {
+	if (header == null) throw new IllegalStateException(
+	    "Cursor is not positioned on a tag");
+	return header;
+    }
+
+    /**
+     * Get the type of the current tag.
+     * @exception IllegalStateException if the cursor is not
+     * positioned on a tag
+     */
+    public int getType() { return getHeader().getID(); }
+
+    /**
+     * Get the data of the current tag as an in-memory stream. Every
+     * call returns a stream positioned at the start of the tag data.
+     * @exception IllegalStateException if the cursor is not
+     * positioned on a tag
+     * @exception SWFFormatException if the tag is truncated
+     * @exception IOException if an I/O error occurs
+     */
+    public BitInputStream getData() throws IOException {
+	SWFTagHeader tag = getHeader();
+	if (data == null) {
+	    try {
+		data = SWFTagReaderBase.readTagData(input, tag);
+	    } catch (EOFException e) {
+		throw new SWFFormatException(
+		    "Unexpected end of file in tag " + tag.getID());
+	    }
+	    data.mark((int)tag.getRecordLength());
+	} else {
+	    data.reset();
+	}
+	return data;
+    }
+
+    /**
+     * Get the data of the current tag as a byte array.
+     * @exception IllegalStateException if the cursor is not
+     * positioned on a tag
+     * @exception SWFFormatException if the tag is truncated
+     * @exception IOException if an I/O error occurs
+     */
+    public byte[] getRawData() throws IOException {
+	BitInputStream in = getData();
+	byte[] raw = new byte[(int)header.getRecordLength()];
+	int pos = 0;
+	while (pos < raw.length) {
+	    int count = in.read(raw, pos, raw.length - pos);
+	    if (count < 0) throw new EOFException();
+	    pos += count;
+	}
+	return raw;
+    }
+
+    /**
+     * Decode the current tag. The following tag types are supported:
+     * <ul>
+     * <li><code>DefineFont</code> as {@link SWFDefineFont}</li>
+     * <li><code>DefineFont2</code> as {@link SWFDefineFont2}</li>
+     * <li><code>DefineEditText</code> as {@link SWFDefineTextField}</li>
+     * </ul>
+     * @return the decoded tag, or <code>null</code> if the tag type
+     * is not supported. Use {@link #getData} to read unsupported tags.
+     * @exception IllegalStateException if the cursor is not
+     * positioned on a tag
+     * @exception SWFFormatException if the tag data is invalid
+     * @exception IOException if an I/O error occurs
+     */
+    public SWFDataType getTag() throws IOException {
+	switch (getType()) {
+	case SWFTypes.DEFINE_FONT:
+	    return new SWFDefineFont(getData());
+	case SWFTypes.DEFINE_FONT2:
+	    return new SWFDefineFont2(getData());
+	case SWFTypes.DEFINE_TEXTFIELD:
+	    return new SWFDefineTextField(getData());
+	default:
+	    return null;
+	}
+    }
+
+    /**
+     * Close the cursor and the underlying input.
+     * @exception IOException if an I/O error occurs
+     */
+    public void close() throws IOException {
+	header = null;
+	data = null;
+	atEnd = true;
+	input.close();
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash). 
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License. 
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved. 
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.parser;
+
+import de.tivano.flash.swf.common.SWFTagHeader;
+
+/**
+ * Interface for selecting the SWF tags reported by {@link SWFReader}.
+ * <p>Tags that are not accepted by the filter are skipped without
+ * reading their content and do not produce any SAX events.</p>
+ * @author Richard Kunze
+ * @see SWFReader#PROPERTY_TAG_FILTER
+ * @see SWFTagTypeFilter
+ */
+public interface SWFTagFilter {
+
+    /**
+     * Decide whether a tag should be parsed and reported.
+     * @param header the tag header
+     * @return <code>true</code> if the tag should be parsed,
+     * <code>false</code> if it should be skipped.
+     */
+    public boolean accept(SWFTagHeader header);
+}
@@ -0,0 +1,238 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.parser;
+
+import java.io.IOException;
+import java.io.EOFException;
+
+import de.tivano.flash.swf.common.BitInputStream;
+import de.tivano.flash.swf.common.SWFFileHeader;
+import de.tivano.flash.swf.common.SWFFormatException;
+import de.tivano.flash.swf.common.SWFTagHeader;
+import de.tivano.flash.swf.common.SWFTypes;
+
+/**
+ * A table of contents for an SWF file.
+ *
+ * <p>The index is built by reading only the tag headers of an SWF
+ * file and skipping the tag contents. For every tag, it holds the
+ * tag type, the byte offset and length of the tag contents and the
+ * number of the frame the tag belongs to. Use this class to find out
+ * what is in an SWF file without the cost of actually parsing
+ * it.</p>
+ *
+ * <p>The index data is held in arrays of primitive types, so even
+ * indexes for files with a very large number of tags are cheap to
+ * build and to keep around.</p>
+ *
+ * <p>Offsets are counted from the start of the file. For compressed
+ * files, offsets refer to the uncompressed data.</p>
+ *
+ * @see SWFReader#scan(org.xml.sax.InputSource)
+ * @author Richard Kunze
+ */
+public class SWFTagIndex {
+
+    /** Initial capacity of the index arrays */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** The file header */
+    private final SWFFileHeader header;
+
+    /** The number of tags */
+    private int size = 0;
+
+    /** The tag types */
+    private int[] types = new int[INITIAL_CAPACITY];
+
+    /** The offsets of the tag contents */
+    private long[] offsets = new long[INITIAL_CAPACITY];
+
+    /** The lengths of the tag contents */
+    private int[] lengths = new int[INITIAL_CAPACITY];
+
+    /** The frame numbers */
+    private int[] frames = new int[INITIAL_CAPACITY];
+
+    /** The number of frames */
+    private int frameCount = 0;
+
+    /**
+     * Build the index for an SWF file.
+     * @param input the SWF data, positioned at the start of the
+     * file. If the file is compressed, the data following the file
+     * header prefix must already be decompressed.
+     * @exception SWFFormatException if the data is not a valid SWF
+     * file
+     * @exception IOException if an I/O error occurs
+     */
+    public SWFTagIndex(BitInputStream input) throws IOException {
+	header = new SWFFileHeader(input);
+	long offset = header.length() / 8;
+
+	// SWFTagHeader() throws an EOFException if there is no more
+	// input available, so this loop *will* terminate
+	// eventually...
+	try {
+	    while (true) {
+		SWFTagHeader tag = new SWFTagHeader(input);
+		long length = tag.getRecordLength();
+		if (length > Integer.MAX_VALUE) {
+		    throw new SWFFormatException(
+			"Tag length out of range: " + length);
+		}
+		offset += tag.length() / 8;
+		add(tag.getID(), offset, (int)length);
+		if (input.skip(length) != length) {
+		    throw new SWFFormatException(
+			"Unexpected end of file in tag " + tag.getID());
+		}
+		offset += length;
+		if (tag.getID() == SWFTypes.SHOW_FRAME) frameCount++;
+	    }
+	} catch (EOFException e) {
+	    // OK, we're done
+	}
+	trim();
+    }
+
+    /** Append an entry to the index. */
+    private void add(int type, long offset, int length) {
+	if (size == types.length) ensureCapacity(size * 2);
+	types[size]   = type;
+	offsets[size] = offset;
+	lengths[size] = length;
+	frames[size]  = frameCount;
+	size++;
+    }
+
+    /** Resize the index arrays to <code>capacity</code>. */
+    private void ensureCapacity(int capacity) {
+	int[] tmp = new int[capacity];
+	System.arraycopy(types, 0, tmp, 0, size);
+	types = tmp;
+	tmp = new int[capacity];
+	System.arraycopy(lengths, 0, tmp, 0, size);
+	lengths = tmp;
+	tmp = new int[capacity];
+	System.arraycopy(frames, 0, tmp, 0, size);
+	frames = tmp;
+	long[] tmp2 = new long[capacity];
+	System.arraycopy(offsets, 0, tmp2, 0, size);
+	offsets = tmp2;
+    }
+
+    /** Free the unused parts of the index arrays. */
+    private void trim() {
+	if (size < types.length) ensureCapacity(size);
+    }
+
+    /** Get the file header */
+    public SWFFileHeader getFileHeader() { return header; }
+
+    /** Get the number of tags in the file. */
+    public int size() { return size; }
+
+    /**
+     * Get the number of frames in the file, as counted from the
+     * ShowFrame tags. Note that this may differ from the frame count
+     * given in the file header.
+     */
+    public int getFrameCount() { return frameCount; }
+
+    /**
+     * Get the type of tag number <code>i</code>.
+     * @exception IndexOutOfBoundsException if <code>i</code> is not
+     * in the range 0 to <code>size()-1</code>
+     */
+    public int getType(int i) {
+	checkIndex(i);
+	return types[i];
+    }
+
+    /**
+     * Get the offset of the contents of tag number <code>i</code>,
+     * i.e. the position of the first byte after the tag header.
+     * @exception IndexOutOfBoundsException if <code>i</code> is not
+     * in the range 0 to <code>size()-1</code>
+     */
+    public long getOffset(int i) {
+	checkIndex(i);
+	return offsets[i];
+    }
+
+    /**
+     * Get the length in bytes of the contents of tag number
+     * <code>i</code>, excluding the tag header.
+     * @exception IndexOutOfBoundsException if <code>i</code> is not
+     * in the range 0 to <code>size()-1</code>
+     */
+    public int getLength(int i) {
+	checkIndex(i);
+	return lengths[i];
+    }
+
+    /**
+     * Get the number of the frame tag number <code>i</code> belongs
+     * to. Frames are counted from 0, a ShowFrame tag belongs to the
+     * frame it ends.
+     * @exception IndexOutOfBoundsException if <code>i</code> is not
+     * in the range 0 to <code>size()-1</code>
+     */
+    public int getFrame(int i) {
+	checkIndex(i);
+	return frames[i];
+    }
+
+    /**
+     * Find the next tag of a given type.
+     * @param type the tag type to look for
+     * @param start the index to start searching at
+     * @return the index of the first tag of type <code>type</code>
+     * at or after <code>start</code>, or -1 if there is no such tag.
+     */
+    public int find(int type, int start) {
+	for (int i=Math.max(start, 0); i<size; i++) {
+	    if (types[i] == type) return i;
+	}
+	return -1;
+    }
+
+    /**
+     * Count the tags of a given type.
+     * @param type the tag type to count
+     */
+    public int count(int type) {
+	int count = 0;
+	for (int i=0; i<size; i++) {
+	    if (types[i] == type) count++;
+	}
+	return count;
+    }
+
+    /** Check if <code>i</code> is a valid index */
+    private void checkIndex(int i) {
+	if (i < 0 || i >= size) throw new IndexOutOfBoundsException(
+	    "Index: " + i + ", size: " + size);
+    }
+}
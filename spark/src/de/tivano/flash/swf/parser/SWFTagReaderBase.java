@@ -26,14 +26,19 @@ package de.tivano.flash.swf.parser;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
 
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.IOException;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import de.tivano.flash.swf.common.SWFTagHeader;
 import de.tivano.flash.swf.common.BitInputStream;
+import de.tivano.flash.swf.common.ByteBufferBitInputStream;
+import de.tivano.flash.swf.common.SWFRawDataHandler;
 
 /**
  * Base class for SWF tag readers. 
@@ -44,7 +49,7 @@ import de.tivano.flash.swf.common.BitInputStream;
  * @see SWFReader
  * @see org.xml.sax.ContentHandler
  */
-public abstract class SWFTagReaderBase implements SWFTagReader {
+public abstract class SWFTagReaderBase implements SWFTagReader, Cloneable {
     private static final Attributes EMPTY_ATTRIBUTES = new SWFAttributes();
 
     /**
@@ -65,64 +70,122 @@ public abstract class SWFTagReaderBase implements SWFTagReader {
 	public SAXException getSAXCause() { return CAUSE; }
     }
 
+    /** Encoding table for Base64 according to RFC 1341 */
+    private static final char[] BASE64_TABLE = {
+	'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M',
+	'N', 'O', 'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z',
+	'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm',
+	'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z',
+	'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '+', '/'
+    };
+
+    /** Maximum length for a line of Base64-encoded data according to
+     * RFC 1341
+     */
+    private static final int LINE_LENGTH = 76;
+
+    /**
+     * Size of the buffer for Base64-encoded text. Room for 64 full
+     * lines, including the line breaks.
+     */
+    private static final int BASE64_BUFFER_SIZE = 64 * (LINE_LENGTH + 1);
+
+    /** Buffer for building the Base64-encoded text. Allocated lazily
+     * and shared by all raw data streams of this tag reader. */
+    private char[] base64Buffer = null;
+
     /**
      * A helper class for sending raw data as base64-encoded text to
      * the client.
+     * <p>The encoded text is collected in a large buffer and passed
+     * on in a single <code>characters()</code> call whenever the
+     * buffer is full, so the client sees a few big chunks instead of
+     * one call per line.</p>
      */
     private class Base64DataOutputStream extends OutputStream {
-	/** Encoding table for Base64 according to RFC 1341 */
-	private final char[] BASE64_TABLE = {
-	    'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M',
-	    'N', 'O', 'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z',
-	    'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm',
-	    'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z',
-	    '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '+', '/'
-	};
-
-	/** Maximum length for a line of Base64-encoded data according to
-	 * RFC 1341
-	 */
-	private final int LINE_LENGTH = 76;
-
 	/** Buffer for building the Base64-encoded strings */
-	char[] buffer = new char[LINE_LENGTH + 1];
+	private final char[] buffer;
+
+	/** Flag, set if the output is broken into lines */
+	private final boolean lineBreaks;
 
 	/** Current position in the buffer */
 	private int bufPos = 0;
 
+	/** Number of characters in the current line */
+	private int linePos = 0;
+
 	/** Temporary buffer for storing a byte triplet for encoding */
 	private int currentTriplet = 0;
 
 	/** Number of bytes currently in the temp buffer */
 	private int bytesLeft = 0;
 
+	/**
+	 * Create a new stream.
+	 * @param buffer the buffer to use for building the output
+	 * @param lineBreaks if <code>true</code>, the output is broken
+	 * into lines of <code>LINE_LENGTH</code> characters
+	 */
+	public Base64DataOutputStream(char[] buffer, boolean lineBreaks) {
+	    this.buffer = buffer;
+	    this.lineBreaks = lineBreaks;
+	}
+
 	/** @see OutputStream#write(int) */
 	public void write(int b) throws IOException {
 	    bytesLeft++;
 	    currentTriplet <<= 8;
 	    currentTriplet |= (b & 0xFF);
 	    if (bytesLeft == 3) {
-		buffer[bufPos++] =
-		    BASE64_TABLE[(currentTriplet >>> 18) & 0x3F];
-		buffer[bufPos++] =
-		    BASE64_TABLE[(currentTriplet >>> 12) & 0x3F];
-		buffer[bufPos++] =
-		    BASE64_TABLE[(currentTriplet >>>  6) & 0x3F];
-		buffer[bufPos++] =
-		    BASE64_TABLE[currentTriplet & 0x3F];
+		encode(currentTriplet);
 		bytesLeft = 0;
-		if (bufPos == LINE_LENGTH) {
-		    buffer[bufPos++] = '\n';
-		    try {
-			characters(buffer, 0, bufPos);
-		    } catch (SAXException e) {
-			throw new SAXIOException(e);
-		    }
-		    bufPos = 0;
-		}
 	    }
 	}
 
+	/** @see OutputStream#write(byte[], int, int) */
+	public void write(byte[] b, int off, int len) throws IOException {
+	    if (len<0 || off<0 || off+len > b.length) {
+		throw new IndexOutOfBoundsException();
+	    }
+	    int end = off + len;
+	    // Complete a pending triplet first
+	    while (bytesLeft != 0 && off < end) write(b[off++]);
+	    for (; off + 3 <= end; off += 3) {
+		currentTriplet = (b[off] & 0xFF) << 16 |
+		                 (b[off+1] & 0xFF) << 8 |
+		                 (b[off+2] & 0xFF);
+		encode(currentTriplet);
+	    }
+	    while (off < end) write(b[off++]);
+	}
+
+	/** Encode a complete byte triplet */
+	private void encode(int triplet) throws IOException {
+	    // Room for 4 characters and a line break
+	    if (bufPos + 5 > buffer.length) flushBuffer();
+	    buffer[bufPos++] = BASE64_TABLE[(triplet >>> 18) & 0x3F];
+	    buffer[bufPos++] = BASE64_TABLE[(triplet >>> 12) & 0x3F];
+	    buffer[bufPos++] = BASE64_TABLE[(triplet >>>  6) & 0x3F];
+	    buffer[bufPos++] = BASE64_TABLE[triplet & 0x3F];
+	    linePos += 4;
+	    if (lineBreaks && linePos == LINE_LENGTH) {
+		buffer[bufPos++] = '\n';
+		linePos = 0;
+	    }
+	}
+
+	/** Send the contents of the buffer to the client. */
+	private void flushBuffer() throws IOException {
+	    if (bufPos == 0) return;
+	    try {
+		characters(buffer, 0, bufPos);
+	    } catch (SAXException e) {
+		throw new SAXIOException(e);
+	    }
+	    bufPos = 0;
+	}
+
 	/**
 	 * Flush the output stream. If there are currently bytes left
 	 * (i.e., if the number of bytes written since the last flush
@@ -130,6 +193,7 @@ public abstract class SWFTagReaderBase implements SWFTagReader {
 	 * padded as specified in RFC 1341
 	 */
 	public void flush() throws IOException {
+	    if (bufPos + 5 > buffer.length) flushBuffer();
 	    switch (bytesLeft) {
 	    case 2:
 		buffer[bufPos++] =
@@ -148,13 +212,9 @@ public abstract class SWFTagReaderBase implements SWFTagReader {
 		buffer[bufPos++] = '=';
 		buffer[bufPos++] = '=';
 	    }
-	    buffer[bufPos++] = '\n';
-	    try {
-		characters(buffer, 0, bufPos);
-	    } catch (SAXException e) {
-		throw new SAXIOException(e);
-	    }
-	    bufPos = 0;
+	    if (lineBreaks) buffer[bufPos++] = '\n';
+	    flushBuffer();
+	    linePos = 0;
 	    bytesLeft = 0;
 	}
 
@@ -179,6 +239,27 @@ public abstract class SWFTagReaderBase implements SWFTagReader {
 	saxDriver = driver;
     }
 
+    /**
+     * Create a shallow copy of this tag reader. The copy has the
+     * same class and configuration as this reader, but is not
+     * associated with any <code>SWFReader</code> and has its own
+     * scratch buffers. Subclasses with other state used while
+     * parsing must reset it on the copy. Used to implement {@link
+     * SWFParallelTagReader#copy}.
+     */
+    protected SWFTagReaderBase copyReader() {
+	SWFTagReaderBase copy;
+	try {
+	    copy = (SWFTagReaderBase)clone();
+	} catch (CloneNotSupportedException e) {
+	    // Can't happen, this class is Cloneable
+	    throw new InternalError(e.toString());
+	}
+	copy.saxDriver = null;
+	copy.base64Buffer = null;
+	return copy;
+    }
+
     /**
      * Get the associated <code>SWFReader</code>.
      * @exception IllegalStateException if no <code>SWFReader</code>
@@ -258,6 +339,28 @@ public abstract class SWFTagReaderBase implements SWFTagReader {
 	characters(ch, 0, ch.length);
     }
 
+    /**
+     * Check whether raw data can be sent as bytes via {@link
+     * #rawData} instead of as text.
+     * @see SWFRawDataHandler
+     */
+    protected boolean isRawDataSupported() {
+	ContentHandler handler = getSAXDriver().getContentHandler();
+	return handler instanceof SWFRawDataHandler &&
+	    ((SWFRawDataHandler)handler).isRawDataSupported();
+    }
+
+    /**
+     * Send raw data as bytes. Only allowed if {@link
+     * #isRawDataSupported} returns <code>true</code>.
+     * @param data the data. Its content must not change after this
+     * call.
+     * @see SWFRawDataHandler#rawData
+     */
+    protected void rawData(ByteBuffer data) throws SAXException {
+	((SWFRawDataHandler)getSAXDriver().getContentHandler()).rawData(data);
+    }
+
     /** Get an <code>Attributes</code> object. */
     protected SWFAttributes createAttributes() {
 	return new SWFAttributes();
@@ -278,6 +381,54 @@ public abstract class SWFTagReaderBase implements SWFTagReader {
      */
     protected Map getContextMap() { return getSAXDriver().getContextMap(); }
 
+    /**
+     * Get the body of the current tag as an in-memory stream.
+     *
+     * <p>Reading from an in-memory stream is a lot faster than
+     * reading from a general {@link BitInputStream}, so tag readers
+     * that decode a lot of bit fields (e.g. font outlines) should
+     * use this method instead of reading directly from the input
+     * stream. If <code>input</code> is already an in-memory stream,
+     * the data is not copied.</p>
+     * <p>After calling this method, <code>input</code> is positioned
+     * directly behind the current tag.</p>
+     * @param input the SWF data stream, positioned at the start of
+     * the tag body
+     * @param header the record header for the current tag
+     * @exception EOFException if the tag body is truncated
+     */
+    protected BitInputStream getTagData(BitInputStream input,
+					SWFTagHeader header)
+	      throws IOException {
+	return readTagData(input, header);
+    }
+
+    /**
+     * Read the body of a tag into an in-memory stream. This is the
+     * implementation of {@link #getTagData}, for use by the parser
+     * itself.
+     * @param input the SWF data stream, positioned at the start of
+     * the tag body
+     * @param header the record header for the tag
+     * @exception EOFException if the tag body is truncated
+     */
+    static BitInputStream readTagData(BitInputStream input,
+				      SWFTagHeader header)
+	   throws IOException {
+	int length = (int)header.getRecordLength();
+	if (input instanceof ByteBufferBitInputStream) {
+	    return ((ByteBufferBitInputStream)input).slice(length);
+	}
+	byte[] data = new byte[length];
+	int pos = 0;
+	while (pos < length) {
+	    int count = input.read(data, pos, length - pos);
+	    if (count < 0) throw new EOFException();
+	    pos += count;
+	}
+	return new ByteBufferBitInputStream(data);
+    }
+
     /**
      * Get an output stream for sending raw data.
      * 
@@ -287,6 +438,11 @@ public abstract class SWFTagReaderBase implements SWFTagReader {
      * same numerical value as the corresponding byte on the
      * stream. In any case, the raw data is passed on via the {@link
      * #characters} method.</p>
+     * <p>The returned stream buffers the data internally, so it is
+     * much faster to write large blocks than single bytes. The data
+     * is only guaranteed to be passed on after <code>close()</code>
+     * has been called. Only one raw data stream per tag reader may be
+     * in use at a time.</p>
      * <p>If there is an error in delivering the data to the client,
      * this output stream will throw a {@link SAXIOException} that
      * contains the original cause of the error.</p>
@@ -296,7 +452,9 @@ public abstract class SWFTagReaderBase implements SWFTagReader {
      * @return an output stream that sends raw data to the client application.
      */
     protected OutputStream getRawDataOutputStream() {
-	return new Base64DataOutputStream();
+	if (base64Buffer == null) base64Buffer = new char[BASE64_BUFFER_SIZE];
+	return new Base64DataOutputStream(base64Buffer,
+					  getSAXDriver().isBase64LineBreaks());
     }
 
     /**
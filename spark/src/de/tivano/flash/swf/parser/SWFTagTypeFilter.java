@@ -0,0 +1,71 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash). 
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License. 
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved. 
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.parser;
+
+import java.util.BitSet;
+
+import de.tivano.flash.swf.common.SWFTagHeader;
+
+/**
+ * A {@link SWFTagFilter} that selects tags by their type.
+ * <p>The filter holds a set of tag types to emit and a set of tag types
+ * to skip. A tag is accepted if its type is not in the skip set and
+ * either the emit set is empty or its type is in the emit set.</p>
+ * <p>Example: Only read fonts and text fields:</p>
+ * <pre>
+ * SWFTagTypeFilter filter = new SWFTagTypeFilter();
+ * filter.emit(SWFTypes.DEFINE_FONT);
+ * filter.emit(SWFTypes.DEFINE_FONT2);
+ * filter.emit(SWFTypes.DEFINE_FONTINFO);
+ * filter.emit(SWFTypes.DEFINE_TEXTFIELD);
+ * reader.setProperty(SWFReader.PROPERTY_TAG_FILTER, filter);
+ * </pre>
+ * @author Richard Kunze
+ */
+public class SWFTagTypeFilter implements SWFTagFilter {
+
+    /** The tag types to emit */
+    private final BitSet emitTypes = new BitSet();
+
+    /** The tag types to skip */
+    private final BitSet skipTypes = new BitSet();
+
+    /**
+     * Add a tag type to the emit set.
+     * @param type the tag type
+     */
+    public void emit(int type) { emitTypes.set(type); }
+
+    /**
+     * Add a tag type to the skip set.
+     * @param type the tag type
+     */
+    public void skip(int type) { skipTypes.set(type); }
+
+    /** @see SWFTagFilter#accept */
+    public boolean accept(SWFTagHeader header) {
+	int type = header.getID();
+	if (skipTypes.get(type)) return false;
+	return emitTypes.isEmpty() || emitTypes.get(type);
+    }
+}
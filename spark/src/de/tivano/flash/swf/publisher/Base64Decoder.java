@@ -28,9 +28,49 @@ import de.tivano.flash.swf.common.BitOutputStream;
 /**
  * Helper class to decode base64-encoded data.
  * This class decodes the data and writes it to the specified output stream.
+ * <p>Characters are classified with a lookup table, and the decoded
+ * bytes of every call to {@link #write(char[], int, int)} are
+ * collected in a buffer and written to the output stream in one
+ * go. Decoding state is kept between calls, so the data may be split
+ * at arbitrary positions (e.g. at SAX <code>characters()</code>
+ * chunk boundaries).</p>
  * @author Richard Kunze
  */
 public class Base64Decoder {
+    /** Table value for characters that are silently ignored */
+    private static final byte IGNORE = -1;
+
+    /** Table value for illegal characters */
+    private static final byte ILLEGAL = -2;
+
+    /**
+     * Decoding table for the ASCII range. Maps every character to its
+     * 6 bit value, or to <code>IGNORE</code> or <code>ILLEGAL</code>.
+     */
+    private static final byte[] DECODE_TABLE = new byte[128];
+
+    static {
+	for (int i=0; i<DECODE_TABLE.length; i++) DECODE_TABLE[i] = ILLEGAL;
+	for (int i=0; i<26; i++) {
+	    DECODE_TABLE['A' + i] = (byte)i;
+	    DECODE_TABLE['a' + i] = (byte)(i + 26);
+	}
+	for (int i=0; i<10; i++) DECODE_TABLE['0' + i] = (byte)(i + 52);
+	DECODE_TABLE['+'] = 62;
+	DECODE_TABLE['/'] = 63;
+	// Padding is implied by the number of characters
+	DECODE_TABLE['='] = IGNORE;
+	// Whitespace as defined by Character.isSpace()
+	DECODE_TABLE[' ']  = IGNORE;
+	DECODE_TABLE['\t'] = IGNORE;
+	DECODE_TABLE['\n'] = IGNORE;
+	DECODE_TABLE['\f'] = IGNORE;
+	DECODE_TABLE['\r'] = IGNORE;
+    }
+
+    /** Size of the output buffer. Must be a multiple of 3. */
+    private static final int OUTPUT_BUFFER_SIZE = 3 * 1024;
+
     OutputStream out;
 
     /** The write buffer */
@@ -38,6 +78,9 @@ public class Base64Decoder {
 
     /** The number of valid bits in the write buffer */
     int validBits = 0;
+
+    /** Buffer for the decoded bytes. Allocated lazily. */
+    private byte[] outputBuffer = null;
     
     /**
      * Create a new base64 decoder.
@@ -47,6 +90,19 @@ public class Base64Decoder {
 	this.out = out;
     }
 
+    /**
+     * Start decoding a new block of data, writing the decoded data
+     * to <code>out</code>. Any pending bits from previous calls are
+     * discarded. This allows reusing a decoder for several blocks of
+     * data.
+     * @param out the stream to write the decoded data to.
+     */
+    public void reset(OutputStream out) {
+	this.out = out;
+	buffer = 0;
+	validBits = 0;
+    }
+
     /**
      * Decode some data. This method will not attempt to read from
      * <code>data</code> outside the range of <code>start</code>
@@ -59,7 +115,42 @@ public class Base64Decoder {
      * that are not legal in base64 encoded data.
      */
     public void write(char[] data, int start, int length) throws IOException {
-	for (int i=start; i<start+length; i++) write(data[i]);
+	if (outputBuffer == null) outputBuffer = new byte[OUTPUT_BUFFER_SIZE];
+	byte[] outBuf = outputBuffer;
+	int outPos = 0;
+	// Keep the decoding state in local variables while looping
+	int bits = buffer;
+	int count = validBits;
+	int end = start + length;
+	for (int i=start; i<end; i++) {
+	    char c = data[i];
+	    int value = (c < 128)?DECODE_TABLE[c]:ILLEGAL;
+	    if (value < 0) {
+		if (value == IGNORE) continue;
+		// Write out what has been decoded so far
+		buffer = bits;
+		validBits = count;
+		if (outPos > 0) out.write(outBuf, 0, outPos);
+		throw new IllegalArgumentException(
+		    "Not a legal base64 character: " + c);
+	    }
+	    bits = (bits << 6) | value;
+	    count += 6;
+	    if (count == 24) {
+		if (outPos == outBuf.length) {
+		    out.write(outBuf, 0, outPos);
+		    outPos = 0;
+		}
+		outBuf[outPos++] = (byte)(bits >>> 16);
+		outBuf[outPos++] = (byte)(bits >>> 8);
+		outBuf[outPos++] = (byte)bits;
+		bits = 0;
+		count = 0;
+	    }
+	}
+	buffer = bits;
+	validBits = count;
+	if (outPos > 0) out.write(outBuf, 0, outPos);
     }
     
     /**
@@ -70,29 +161,15 @@ public class Base64Decoder {
      * encoded data.
      */
     public void write(char data) throws IOException {
-	byte value;
-	if (data >= 'A' && data <= 'Z') {
-	    value = (byte)(data - 'A');
-	} else if (data >= 'a' && data <= 'z') {
-	    value = (byte)(data - 'a' + 26);
-	} else if (data >= '0' && data <= '9') {
-	    value = (byte)(data - '0' + 52);
-	} else if (data == '+') {
-	    value = 62;
-	} else if (data == '/') {
-	    value = 63;
-	} else if (data == '=') {
-	    return;
-	} else if (Character.isSpace(data)) {
-	    // Ignore whitespace
-	    return;
-	} else {
+	int value = (data < 128)?DECODE_TABLE[data]:ILLEGAL;
+	if (value == IGNORE) return;
+	if (value == ILLEGAL) {
 	    throw new IllegalArgumentException(
 		  "Not a legal base64 character: " + data);
 	}
 	validBits += 6;
 	buffer <<= 6;
-	buffer |= (value & 0x3F);
+	buffer |= value;
 	if (validBits == 24) {
 	    out.write((buffer >>> 16) & 0xFF);
 	    out.write((buffer >>> 8) & 0xFF);
@@ -46,6 +46,9 @@ public class SWFEmptyTagWriter extends SWFTagWriter {
      */
     protected long getDataLength() { return 0; }
 
+    /** Always returns <code>true</code>. */
+    public boolean isLengthKnown() { return true; }
+
     /**
      * Write the actual SWF data (excluding the header)
      * to <code>out</code>. Does nothing, as there is no data to write.
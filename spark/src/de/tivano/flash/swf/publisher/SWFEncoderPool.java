@@ -0,0 +1,211 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.publisher;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+
+import de.tivano.flash.swf.common.BitOutputBuffer;
+
+/**
+ * A pool of worker threads for serializing SWF tags in parallel.
+ *
+ * <p>Once all XML data has been processed, the tags collected by
+ * {@link SWFWriter} are independent of each other: every {@link
+ * SWFTagWriter} only writes its own data. <code>SWFWriter</code>
+ * submits them to this pool, and each worker serializes a tag
+ * (including its header) into a buffer of its own. The buffers are
+ * then written in document order.</p>
+ *
+ * @author Richard Kunze
+ */
+class SWFEncoderPool {
+
+    /** Initial buffer size per tag. The buffers grow as needed. */
+    private static final int TASK_BUFFER_SIZE = 1024;
+
+    /** A tag to serialize. */
+    static class Task {
+	/** The tag */
+	private final SWFTagWriter tag;
+
+	/** The serialized tag */
+	private final BitOutputBuffer buffer =
+	    new BitOutputBuffer(TASK_BUFFER_SIZE);
+
+	/** The exception thrown while serializing, if any */
+	private Throwable failure = null;
+
+	/** Flag, set when serializing is finished */
+	private boolean done = false;
+
+	/** Create a new task */
+	Task(SWFTagWriter tag) {
+	    this.tag = tag;
+	}
+
+	/** Mark this task as finished */
+	private synchronized void finish(Throwable failure) {
+	    this.failure = failure;
+	    done = true;
+	    notifyAll();
+	}
+
+	/**
+	 * Wait until serializing is finished.
+	 * @exception InterruptedIOException if the waiting thread is
+	 * interrupted
+	 */
+	synchronized void waitFor() throws InterruptedIOException {
+	    while (!done) {
+		try {
+		    wait();
+		} catch (InterruptedException e) {
+		    throw new InterruptedIOException(
+			"Interrupted while writing tag " + tag.getTypeID());
+		}
+	    }
+	}
+
+	/**
+	 * Get the serialized tag. Only valid after serializing is
+	 * finished.
+	 */
+	BitOutputBuffer getBuffer() { return buffer; }
+
+	/**
+	 * Re-throw the exception thrown while serializing, if any.
+	 * Only valid after serializing is finished.
+	 */
+	void rethrow() throws IOException {
+	    if (failure == null) return;
+	    if (failure instanceof IOException) throw (IOException)failure;
+	    if (failure instanceof RuntimeException) {
+		throw (RuntimeException)failure;
+	    }
+	    throw (Error)failure;
+	}
+    }
+
+    /** A worker thread */
+    private class Worker extends Thread {
+	/** Create a new worker thread */
+	Worker(int number) {
+	    super("SWF encoder " + number);
+	    setDaemon(true);
+	}
+
+	/** Serialize tags until the pool is shut down */
+	public void run() {
+	    Task task;
+	    while ((task = nextTask()) != null) {
+		Throwable failure = null;
+		try {
+		    task.tag.serialize(task.buffer);
+		} catch (Throwable e) {
+		    failure = e;
+		}
+		task.finish(failure);
+	    }
+	}
+    }
+
+    /** Queue of tasks waiting for a worker */
+    private final LinkedList queue = new LinkedList();
+
+    /** Flag, set when the pool is shut down */
+    private boolean shutdown = false;
+
+    /**
+     * Create a new pool and start the worker threads.
+     * @param threads the number of worker threads
+     */
+    SWFEncoderPool(int threads) {
+	for (int i=0; i<threads; i++) new Worker(i).start();
+    }
+
+    /**
+     * Submit a tag for serializing. If the pool has been shut down,
+     * the task fails immediately with an
+     * <code>InterruptedIOException</code>.
+     * @param tag the tag to serialize
+     * @return the task for serializing this tag
+     */
+    Task submit(SWFTagWriter tag) {
+	Task task = new Task(tag);
+	synchronized (queue) {
+	    if (shutdown) {
+		task.finish(new InterruptedIOException(
+		    "Encoder pool is shut down"));
+	    } else {
+		queue.addLast(task);
+		queue.notify();
+	    }
+	}
+	return task;
+    }
+
+    /**
+     * Get the next task to run. If the calling worker is interrupted
+     * while waiting, the pool is shut down, all waiting tasks fail
+     * with an <code>InterruptedIOException</code> and the interrupt
+     * status of the worker is restored.
+     * @return the task, or <code>null</code> if the pool is shut down
+     */
+    private Task nextTask() {
+	synchronized (queue) {
+	    while (queue.isEmpty() && !shutdown) {
+		try {
+		    queue.wait();
+		} catch (InterruptedException e) {
+		    shutdown = true;
+		    while (!queue.isEmpty()) {
+			Task task = (Task)queue.removeFirst();
+			task.finish(new InterruptedIOException(
+			    "Encoder thread interrupted before writing tag "
+			    + task.tag.getTypeID()));
+		    }
+		    queue.notifyAll();
+		    Thread.currentThread().interrupt();
+		    return null;
+		}
+	    }
+	    if (shutdown) return null;
+	    return (Task)queue.removeFirst();
+	}
+    }
+
+    /**
+     * Shut down the pool. Tasks that have not been started yet are
+     * discarded, the worker threads terminate as soon as their
+     * current task is finished.
+     */
+    void shutdown() {
+	synchronized (queue) {
+	    shutdown = true;
+	    queue.clear();
+	    queue.notifyAll();
+	}
+    }
+}
@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import de.tivano.flash.swf.common.SWFTagHeader;
 import de.tivano.flash.swf.common.BitOutputStream;
+import de.tivano.flash.swf.common.BitOutputBuffer;
 import de.tivano.flash.swf.common.SWFFont;
 import de.tivano.flash.swf.common.SWFTagHeader;
 import de.tivano.flash.swf.common.SWFDefineFont;
@@ -77,6 +78,20 @@ public class SWFFontWriter extends SWFTagWriter {
 	    fontInfoHeader.write(out);
 	    fontInfo.write(out);
 	}
+
+	/**
+	 * Write both tags to <code>out</code>, the font with
+	 * <code>fontHeader</code> and the font info with its own header.
+	 */
+	public void serialize(BitOutputBuffer out, SWFTagHeader fontHeader)
+	            throws IOException {
+	    int pos = out.startTag();
+	    font.write(out);
+	    out.endTag(fontHeader, pos);
+	    pos = out.startTag();
+	    fontInfo.write(out);
+	    out.endTag(fontInfoHeader, pos);
+	}
     }
     
     /** The font data */
@@ -95,6 +110,12 @@ public class SWFFontWriter extends SWFTagWriter {
 	this.font = font;
     }
 
+    /**
+     * Fonts are always deferred, because the glyphs to include
+     * depend on the texts that use the font.
+     */
+    public boolean isDeferred() { return true; }
+
     /**
      * Get the length (excluding the header) in bytes.
      * @returns 0
@@ -139,7 +160,7 @@ public class SWFFontWriter extends SWFTagWriter {
 	// The length of the header varies with the length of the
 	// following record, so we have to set it here to get correct
 	// results...
-	long dataLength = getDataLength();
+	long dataLength = getCachedDataLength();
 	// If the data is a DefineFont/DefineFontInfo pair, the header
 	// must be set to the length of the font only. The
 	// DefineFontInfo has its own header...
@@ -167,11 +188,25 @@ public class SWFFontWriter extends SWFTagWriter {
 	    HEADER.setRecordLength(
 		      ((DefineFontPair)fontWriter).fontLength()/8);
 	} else { 
-	    HEADER.setRecordLength(getDataLength());
+	    HEADER.setRecordLength(getCachedDataLength());
 	}
 	HEADER.write(out);
 	writeData(out);
     }
 
+    /**
+     * Write the complete SWF data (including the header) to
+     * <code>out</code> in a single pass. A DefineFont/DefineFontInfo
+     * pair is written as two separate tags.
+     */
+    public void serialize(BitOutputBuffer out) throws IOException {
+	doInitWriteData();
+	if (fontWriter instanceof DefineFontPair) {
+	    ((DefineFontPair)fontWriter).serialize(out, HEADER);
+	} else {
+	    super.serialize(out);
+	}
+    }
+
 
 }
@@ -23,8 +23,11 @@
 package de.tivano.flash.swf.publisher;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import de.tivano.flash.swf.common.SWFTagHeader;
 import de.tivano.flash.swf.common.BitOutputStream;
+import de.tivano.flash.swf.common.BitOutputBuffer;
 
 /**
  * Base class for all classes that represent SWF toplevel data structures.
@@ -53,7 +56,7 @@ public abstract class SWFTagWriter {
 	// The length of the header varies with the length of the
 	// following record, so we have to set it here to get correct
 	// results...
-	long dataLength = getDataLength();
+	long dataLength = getCachedDataLength();
 	HEADER.setRecordLength(dataLength);
 	// SWFHeader.length() returns the length in bits, but for an SWF
 	// header, this is always a multiple of 8
@@ -66,11 +69,70 @@ public abstract class SWFTagWriter {
      */
     public void write(BitOutputStream out) throws IOException {
 	doInitWriteData();
-	HEADER.setRecordLength(getDataLength());
+	HEADER.setRecordLength(getCachedDataLength());
 	HEADER.write(out);
 	writeData(out);
     }
 
+    /**
+     * Write the complete SWF data (including the header) to
+     * <code>out</code> in a single pass. Unlike {@link #write}, this
+     * does not need the data length in advance: room for the header
+     * is reserved, the data is written, and the header is filled in
+     * afterwards with the actual length.
+     */
+    public void serialize(BitOutputBuffer out) throws IOException {
+	doInitWriteData();
+	int pos = out.startTag();
+	writeData(out);
+	out.endTag(HEADER, pos);
+    }
+
+    /**
+     * Check whether the data length of this structure can be
+     * determined without walking the data. {@link SWFWriter} writes
+     * such structures directly with {@link #write} and uses {@link
+     * #serialize} for all others. The default implementation returns
+     * <code>false</code>.
+     */
+    public boolean isLengthKnown() { return false; }
+
+    /**
+     * Get the complete SWF data (including the header) as a list of
+     * buffers, for gathering writes to a channel. Used by {@link
+     * SWFWriter} for structures with a known length. The default
+     * implementation writes the data to a new buffer. Subclasses
+     * holding their data in memory already should return it
+     * directly instead. Subclasses that can't provide their data as
+     * buffers return <code>null</code> and override {@link
+     * #write(WritableByteChannel)}.
+     */
+    public ByteBuffer[] getBuffers() throws IOException {
+	BitOutputBuffer out = new BitOutputBuffer((int)getTotalLength());
+	write(out);
+	out.padToByteBoundary();
+	return new ByteBuffer[] { out.toByteBuffer() };
+    }
+
+    /**
+     * Write the complete SWF data (including the header) to
+     * <code>out</code>. Used by {@link SWFWriter} if {@link
+     * #getBuffers} returns <code>null</code>. The default
+     * implementation writes the buffers returned by
+     * <code>getBuffers()</code>.
+     */
+    public void write(WritableByteChannel out) throws IOException {
+	SWFWriter.writeFully(out, getBuffers());
+    }
+
+    /**
+     * Release the resources held by this structure, such as
+     * temporary files. Called by {@link SWFWriter} once the
+     * structure has been written. The default implementation does
+     * nothing.
+     */
+    public void release() {}
+
     /** Flag, tells if {@link #initWriteData} has been called already */
     private boolean dataInitialized = false;
 
@@ -92,6 +154,23 @@ public abstract class SWFTagWriter {
      */
     protected void initWriteData() throws IOException {}
 
+    /** The data length, or -1 if it has not been calculated yet */
+    private long dataLength = -1;
+
+    /**
+     * Get the length (excluding the header) in bytes. Once {@link
+     * #initWriteData} has been called, the data can't change any
+     * more, so the result of {@link #getDataLength} is kept and
+     * reused. This avoids walking the complete data structure once
+     * for {@link #getTotalLength} and again for {@link #write}.
+     */
+    protected long getCachedDataLength() {
+	if (dataLength >= 0) return dataLength;
+	long length = getDataLength();
+	if (dataInitialized) dataLength = length;
+	return length;
+    }
+
     /** Flag, tells if {@link #initDataLength} has been called already */
     private boolean lengthInitialized = false;
 
@@ -116,6 +195,15 @@ public abstract class SWFTagWriter {
 	doInitWriteData();
     }
 
+    /**
+     * Check whether this structure can only be written after all XML
+     * data has been processed. In streaming mode, {@link SWFWriter}
+     * writes all other structures as soon as their XML element is
+     * finished. The default implementation returns
+     * <code>false</code>.
+     */
+    public boolean isDeferred() { return false; }
+
    /** Get the SWF type ID for this structure */
     public int getTypeID() { return HEADER.getID(); }
 
@@ -23,17 +23,35 @@
 package de.tivano.flash.swf.publisher;
 
 import java.io.OutputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
 import org.xml.sax.SAXException;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.Attributes;
 import org.xml.sax.Locator;
 import de.tivano.flash.swf.common.BitOutputStream;
+import de.tivano.flash.swf.common.BitOutputBuffer;
 import de.tivano.flash.swf.common.SWFFileHeader;
 import de.tivano.flash.swf.common.SWFTagHeader;
+import de.tivano.flash.swf.common.SWFRawDataHandler;
 import de.tivano.flash.swf.common.SWFRectangle;
 import de.tivano.flash.swf.common.SWFTypes;
 import java.util.Map;
@@ -47,12 +65,77 @@ import java.util.HashMap;
  * XML conforming to the SWFML DTD to SWF data and writes this data on
  * a provided output stream.</p>
  *
+ * <p>The SWF data may optionally be written in the compressed SWF
+ * format understood by Flash 6 and later players. Compression is
+ * selected either for all documents via {@link #setCompressed} (or
+ * the corresponding constructor) or per document via the
+ * <em>compressed</em> attribute of the <em>&lt;SWF&gt;</em>
+ * element.</p>
+ *
+ * <p>By default, all SWF data is kept in memory until the end of the
+ * document, because the SWF file header contains the file size and
+ * frame count. In streaming mode (see {@link #setStreaming}), tags
+ * are written as soon as their XML element is finished, and the file
+ * header is filled in at the end. If the output stream is a
+ * <code>FileOutputStream</code> (or the output channel a
+ * <code>FileChannel</code>) on a regular file and the output is
+ * not compressed, the tags go directly to the file and the header is
+ * back-patched with a positional write. Otherwise, the tags are
+ * spilled to a temporary file and copied to the output stream at the
+ * end. Tags that can only be completed at the end of the document
+ * (see {@link SWFTagWriter#isDeferred}) are always kept in memory.</p>
+ *
+ * <p>Instead of a stream, the output can be a
+ * <code>WritableByteChannel</code> (see {@link #setOutputChannel}).
+ * Uncompressed documents are then written with gathering writes
+ * straight from the buffers holding the tag data.</p>
+ *
+ * <p>When chained directly to an SWF parser (or through a filter
+ * implementing {@link SWFRawDataHandler}), the content of
+ * <em>&lt;RawData&gt;</em> elements is received as bytes, without
+ * base64 encoding.</p>
+ *
  * <p><em>Note:</em> this class is <em>not</em> thread safe. It is
  * assumed that one instance of this class is only used by one thread
- * at a time.</p>
+ * at a time. Different instances don't share any state, so several
+ * documents can be converted in parallel with one writer per
+ * thread.</p>
  * @author Richard Kunze
  */
-public class SWFWriter extends XMLHandlerBase implements ContentHandler {
+public class SWFWriter extends XMLHandlerBase
+                       implements ContentHandler, SWFRawDataHandler {
+
+    /** The default handlers for toplevel elements */
+    private static final XMLDispatchTable DISPATCH_TABLE;
+    static {
+	XMLDispatchTable table = new XMLDispatchTable();
+	table.register("RawData", new XMLHandlerFactory() {
+		public XMLHandlerBase createHandler() {
+		    return new XMLRawDataHandler();
+		}
+	    });
+	table.register("ShowFrame", new XMLHandlerFactory() {
+		public XMLHandlerBase createHandler() {
+		    return new XMLShowFrameHandler();
+		}
+	    });
+	table.register("Font", new XMLHandlerFactory() {
+		public XMLHandlerBase createHandler() {
+		    return new XMLFontHandler();
+		}
+	    });
+	table.register("Text", new XMLHandlerFactory() {
+		public XMLHandlerBase createHandler() {
+		    return new XMLTextHandler();
+		}
+	    });
+	table.register("TextInput", new XMLHandlerFactory() {
+		public XMLHandlerBase createHandler() {
+		    return new XMLTextInputHandler();
+		}
+	    });
+	DISPATCH_TABLE = table.freeze();
+    }
 
     /** The output stream to write on */
     private BitOutputStream out = null;
@@ -71,6 +154,96 @@ public class SWFWriter extends XMLHandlerBase implements ContentHandler {
 
     /** The file header for the SWF file */
     private SWFFileHeader fileHeader = new SWFFileHeader();
+
+    /** Compress the output unless the document says otherwise? */
+    private boolean compressed = false;
+
+    /** The compression level */
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /** The deflater for compressed output. Reused for all documents. */
+    private Deflater deflater = null;
+
+    /** Buffer size for writing compressed SWF data */
+    private static final int DEFLATE_BUFFER_SIZE = 65536;
+
+    /** Buffer size for writing and copying tags in streaming mode */
+    private static final int STREAM_BUFFER_SIZE = 65536;
+
+    /** The number of threads for serializing tags in endDocument() */
+    private int encoderThreads = 1;
+
+    /** Size above which RawData tags are spilled to a temporary file */
+    private long rawDataSpillThreshold = DEFAULT_RAW_DATA_SPILL_THRESHOLD;
+
+    /**
+     * Default size above which the data of <em>&lt;RawData&gt;</em>
+     * elements is spilled to a temporary file
+     */
+    public static final long DEFAULT_RAW_DATA_SPILL_THRESHOLD = 16 << 20;
+
+    /** Write tags as soon as they are complete? */
+    private boolean streaming = false;
+
+    /** The stream passed to <code>setOutputStream()</code> */
+    private OutputStream target = null;
+
+    /**
+     * The channel passed to <code>setOutputChannel()</code>, or
+     * <code>null</code> if writing to a stream
+     */
+    private WritableByteChannel targetOut = null;
+
+    /**
+     * Maximum number of tags waiting to be serialized, per encoder
+     * thread
+     */
+    private static final int MAX_PENDING_PER_THREAD = 4;
+
+    /** Initial size of the buffers for serialized tags */
+    private static final int PART_BUFFER_SIZE = 1024;
+
+    /** Maximum number of buffers passed to a single gathering write */
+    private static final int MAX_GATHER = 1024;
+
+    /** The stream complete tags are written to in streaming mode */
+    private BitOutputStream tagOut = null;
+
+    /**
+     * The channel of the output file if tags are written directly to
+     * the output and the file header is back-patched.
+     */
+    private FileChannel targetChannel = null;
+
+    /** Position of the file header in <code>targetChannel</code> */
+    private long headerPosition = 0;
+
+    /** Temporary file for spilling tags in streaming mode */
+    private File spillFile = null;
+
+    /** Number of bytes written to <code>spillFile</code> */
+    private long spillSize = 0;
+
+    /**
+     * Marker in <code>swfData</code> for the position in the spill
+     * file at which the following deferred tag belongs.
+     */
+    private static class SpillMark {
+	/** The position in the spill file */
+	final long position;
+
+	/** Create a new spill file marker */
+	SpillMark(long position) { this.position = position; }
+    }
+
+    /** Total length of the tags already written in streaming mode */
+    private long streamedSize = 0;
+
+    /** Number of ShowFrame tags already written in streaming mode */
+    private int streamedFrames = 0;
+
+    /** Buffer for serializing single tags in streaming mode */
+    private BitOutputBuffer tagBuffer = null;
     
     /**
      * Map of IDs to context object. Used by different XML element
@@ -78,6 +251,13 @@ public class SWFWriter extends XMLHandlerBase implements ContentHandler {
      * definitions)
      */
     private Map context = new HashMap();
+
+    /**
+     * Pool of XML handler instances for this writer. Contains a
+     * <code>LinkedList</code> of available instances per handler
+     * class.
+     */
+    private Map handlerPool = new HashMap();
     
     /**
      * Construct a new <code>SWFWriter</code>. The SWF data will be
@@ -99,21 +279,48 @@ public class SWFWriter extends XMLHandlerBase implements ContentHandler {
 	setOutputStream(out, close);
     }
 
+    /**
+     * Construct a new <code>SWFWriter</code>. Depending on
+     * <code>close</code>, the stream is closed after writing the
+     * data or not.
+     * @param out the stream to write on
+     * @param close Flag, tells the writer whether to close the stream
+     * after writing or not.
+     * @param compress Flag, tells the writer whether to write
+     * compressed SWF data by default.
+     * @see #setCompressed
+     */
+    public SWFWriter(OutputStream out, boolean close, boolean compress) {
+	this(out, close);
+	setCompressed(compress);
+    }
+
+    /**
+     * Construct a new <code>SWFWriter</code> writing to a channel.
+     * Depending on <code>close</code>, the channel is closed after
+     * writing the data or not.
+     * @param out the channel to write on
+     * @param close Flag, tells the writer whether to close the channel
+     * after writing or not.
+     * @see #setOutputChannel(WritableByteChannel, boolean)
+     */
+    public SWFWriter(WritableByteChannel out, boolean close) {
+	this();
+	setOutputChannel(out, close);
+    }
+
     /**
      * Construct a new <code>SWFWriter</code> without an associated
      * output stream. An output stream must be assigned to this SWF
      * writer before the endDocument() method is called.
      * @see #setOutputStream(OutputStream)
      * @see #setOutputStream(OutputStream, boolean)
+     * @see #setOutputChannel(WritableByteChannel, boolean)
      */
     public SWFWriter() {
 	setCurrentXMLHandler(this);
 	// Setup the default XML element handler map.
-	registerElementHandler("RawData", XMLRawDataHandler.class);
-	registerElementHandler("ShowFrame", XMLShowFrameHandler.class);
-	registerElementHandler("Font", XMLFontHandler.class);
-	registerElementHandler("Text", XMLTextHandler.class);
-	registerElementHandler("TextInput", XMLTextInputHandler.class);
+	setDispatchTable(DISPATCH_TABLE);
     }
 
     /**
@@ -134,10 +341,147 @@ public class SWFWriter extends XMLHandlerBase implements ContentHandler {
      * after writing or not.
      */
     public void setOutputStream(OutputStream out, boolean close) {
+	this.target = out;
+	this.targetOut = null;
 	this.out = new BitOutputStream(out);
 	this.closeOut = close;
     }
 
+    /**
+     * Assign an output channel to this writer.
+     * The channel is <em>not</em> closed after writing the data.
+     * @param out the channel to write on
+     */
+    public void setOutputChannel(WritableByteChannel out) {
+	setOutputChannel(out, false);
+    }
+
+    /**
+     * Assign an output channel to this writer. Depending on
+     * <code>close</code>, the channel is closed after writing the
+     * data.
+     * <p>Uncompressed documents are written to the channel with
+     * gathering writes, straight from the buffers holding the tag
+     * data. In streaming mode, the tags spilled to the temporary
+     * file are transferred from there with
+     * <code>FileChannel.transferTo()</code>. If the channel is a
+     * <code>FileChannel</code>, streamed tags go directly to the
+     * channel instead and the file header is back-patched.
+     * Compressed documents go through a stream on top of the
+     * channel. The channel must be in blocking mode.</p>
+     * @param out the channel to write on
+     * @param close Flag, tells the writer whether to close the channel
+     * after writing or not.
+     */
+    public void setOutputChannel(WritableByteChannel out, boolean close) {
+	setOutputStream(Channels.newOutputStream(out), close);
+	this.targetOut = out;
+    }
+
+    /**
+     * Set whether to write compressed SWF data. This setting applies
+     * to all documents that don't specify the <em>compressed</em>
+     * attribute on the <em>&lt;SWF&gt;</em> element. Note that only
+     * Flash 6 and later players can read compressed SWF data.
+     * @param flag if <code>true</code>, write compressed data.
+     */
+    public void setCompressed(boolean flag) { compressed = flag; }
+
+    /**
+     * Check whether compressed SWF data is written by default.
+     * @see #setCompressed
+     */
+    public boolean isCompressed() { return compressed; }
+
+    /**
+     * Set the compression level for compressed SWF data.
+     * @param level the compression level (0-9), or
+     * <code>Deflater.DEFAULT_COMPRESSION</code>
+     * @exception IllegalArgumentException if the compression level is
+     * invalid
+     * @see java.util.zip.Deflater#setLevel
+     */
+    public void setCompressionLevel(int level) {
+	if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+	    throw new IllegalArgumentException(
+		"Invalid compression level: " + level);
+	}
+	compressionLevel = level;
+    }
+
+    /** Get the compression level for compressed SWF data. */
+    public int getCompressionLevel() { return compressionLevel; }
+
+    /**
+     * Set whether to write tags as soon as they are complete instead
+     * of keeping the whole movie in memory until the end of the
+     * document. If the output stream is a
+     * <code>FileOutputStream</code> or the output channel a
+     * <code>FileChannel</code>, it must not be in append mode.
+     * The setting takes effect with the next
+     * <em>&lt;SWF&gt;</em> element.
+     * @param flag if <code>true</code>, write in streaming mode.
+     */
+    public void setStreaming(boolean flag) { streaming = flag; }
+
+    /**
+     * Check whether tags are written in streaming mode.
+     * @see #setStreaming
+     */
+    public boolean isStreaming() { return streaming; }
+
+    /**
+     * Set the size above which the data of <em>&lt;RawData&gt;</em>
+     * elements is kept in a temporary file instead of in memory.
+     * Spilled data is copied straight from the file when the tag is
+     * written, using <code>FileChannel.transferTo()</code> if the
+     * output is a channel. The setting applies to all
+     * <em>&lt;RawData&gt;</em> elements started afterwards. The
+     * default is {@link #DEFAULT_RAW_DATA_SPILL_THRESHOLD}.
+     * @param bytes the threshold in bytes. Use
+     * <code>Long.MAX_VALUE</code> to keep all data in memory.
+     * @exception IllegalArgumentException if <code>bytes</code> is
+     * negative
+     */
+    public void setRawDataSpillThreshold(long bytes) {
+	if (bytes < 0) {
+	    throw new IllegalArgumentException(
+		"Negative spill threshold: " + bytes);
+	}
+	rawDataSpillThreshold = bytes;
+    }
+
+    /**
+     * Get the size above which the data of <em>&lt;RawData&gt;</em>
+     * elements is kept in a temporary file.
+     * @see #setRawDataSpillThreshold
+     */
+    public long getRawDataSpillThreshold() { return rawDataSpillThreshold; }
+
+    /**
+     * Set the number of threads used to serialize the tags at the
+     * end of the document. With more than one thread, the tags are
+     * serialized in parallel and written in document order
+     * afterwards. Tags written immediately in streaming mode are
+     * always serialized on the calling thread.
+     * @param threads the number of threads
+     * @exception IllegalArgumentException if <code>threads</code> is
+     * less than 1
+     */
+    public void setEncoderThreads(int threads) {
+	if (threads < 1) {
+	    throw new IllegalArgumentException(
+		"Number of encoder threads must be positive: " + threads);
+	}
+	encoderThreads = threads;
+    }
+
+    /**
+     * Get the number of threads used to serialize the tags.
+     * @see #setEncoderThreads
+     */
+    public int getEncoderThreads() { return encoderThreads; }
+
     /**
      * Set the current XML handler. All further SAX events are
      * delivered to this handler.
@@ -168,32 +512,101 @@ public class SWFWriter extends XMLHandlerBase implements ContentHandler {
 
     /**
      * Finish processing SAX events and write the SWF data to the
-     * provided output stream
+     * provided output stream. Temporary files are deleted even if
+     * writing fails.
      * @exception IllegalStateException if no output stream is set.
      */
     public void endDocument() throws SAXException {
 	if (out == null)
 	    throw new IllegalStateException("No output stream specified!");
+	try {
+	    writeDocument();
+	} finally {
+	    discardSpillFile();
+	    releaseData();
+	}
+    }
+
+    /** Write the collected SWF data to the output. */
+    private void writeDocument() throws SAXException {
 
 	Iterator data = swfData.iterator();
 	// Implicitly create the SWF "End" tag. This is simply an SWF
 	// tag header with appropriate ID and no data...
 	SWFTagHeader endTag = new SWFTagHeader(SWFTypes.END, 0);
-	long totalSize = endTag.length() / 8;
+	long totalSize = endTag.length() / 8 + streamedSize;
 
-	// Calculate the total length and count the frames...
-	int frameCount = 0;
-	while (data.hasNext()) {
-	    SWFTagWriter tag = (SWFTagWriter)data.next();
-	    try {
-		totalSize += tag.getTotalLength();
-	    } catch (Exception e) {
-		if (e instanceof SAXException) throw (SAXException)e;
-		else throw new SWFWriterException(e.getMessage(),
-						  getDocumentLocator(),
-						  e);
+	// Serialize the tags, count the frames and calculate the total
+	// length. The result is a list of the SWF data in document
+	// order: buffers holding serialized tags, tags with a known
+	// length (written directly later on) and, in streaming mode,
+	// the spill file markers.
+	List parts = new ArrayList();
+	BitOutputBuffer buffer = null;
+	int frameCount = streamedFrames;
+	// With more than one encoder thread, the tags are serialized
+	// by a pool of workers, at most maxPending tags ahead of the
+	// loop below. The loop just collects the buffers of the workers
+	// in document order.
+	SWFEncoderPool pool = null;
+	LinkedList pending = new LinkedList();
+	Iterator ahead = null;
+	int maxPending = encoderThreads * MAX_PENDING_PER_THREAD;
+	if (encoderThreads > 1) {
+	    pool = new SWFEncoderPool(encoderThreads);
+	    ahead = swfData.iterator();
+	}
+	try {
+	    while (data.hasNext()) {
+		Object obj = data.next();
+		if (obj instanceof SpillMark) {
+		    parts.add(obj);
+		    buffer = null;
+		    continue;
+		}
+		SWFTagWriter tag = (SWFTagWriter)obj;
+		try {
+		    if (tag.isLengthKnown()) {
+			parts.add(tag);
+			buffer = null;
+			totalSize += tag.getTotalLength();
+		    } else if (pool == null) {
+			// Consecutive tags share a buffer
+			if (buffer == null) {
+			    buffer = new BitOutputBuffer(PART_BUFFER_SIZE);
+			    parts.add(buffer);
+			}
+			tag.serialize(buffer);
+		    } else {
+			// Keep the workers busy
+			while (pending.size() < maxPending) {
+			    if (!submitNext(pool, ahead, pending)) break;
+			}
+			SWFEncoderPool.Task task =
+			    (SWFEncoderPool.Task)pending.removeFirst();
+			task.waitFor();
+			task.rethrow();
+			parts.add(task.getBuffer());
+		    }
+		} catch (Exception e) {
+		    if (e instanceof SAXException) throw (SAXException)e;
+		    else throw new SWFWriterException(e.getMessage(),
+						      getDocumentLocator(),
+						      e);
+		}
+		if (tag.getTypeID() == SWFTypes.SHOW_FRAME) {
+		    frameCount++;
+		}
+	    }
+	} finally {
+	    if (pool != null) pool.shutdown();
+	}
+	Iterator iter = parts.iterator();
+	while (iter.hasNext()) {
+	    Object obj = iter.next();
+	    if (obj instanceof BitOutputBuffer) {
+		totalSize += ((BitOutputBuffer)obj).size();
 	    }
-	    if (tag.getTypeID() == SWFTypes.SHOW_FRAME) frameCount++;
 	}
 
 	try {
@@ -201,12 +614,57 @@ public class SWFWriter extends XMLHandlerBase implements ContentHandler {
 	    // Total file size includes the header length (which gets
 	    // returned in bits but is always a multiple of 8)
 	    fileHeader.setFileSize(totalSize + fileHeader.length() / 8);
-	    fileHeader.write(out);
-	    data = swfData.iterator();
-	    while (data.hasNext()) {
-		((SWFTagWriter)data.next()).write(out);
+
+	    if (targetChannel != null) {
+		// Streaming directly to the output file. Write the
+		// remaining data and patch the header.
+		BitOutputStream body = tagOut;
+		if (spillFile != null) {
+		    body = new BitOutputStream(
+			new BufferedOutputStream(target, STREAM_BUFFER_SIZE));
+		}
+		writeData(body, parts);
+		endTag.write(body);
+		body.flush();
+		patchHeader();
+		if (closeOut) out.close();
+		else out.padAndFlush();
+		return;
+	    }
+	    
+	    if (targetOut != null && targetChannel == null &&
+		!fileHeader.isCompressed()) {
+		writeData(targetOut, parts, endTag);
+		if (closeOut) targetOut.close();
+		return;
+	    }
+
+	    fileHeader.writePrefix(out);
+
+	    // Everything after the header prefix goes through the
+	    // deflater for compressed files.
+	    BitOutputStream body = out;
+	    DeflaterOutputStream deflaterOut = null;
+	    if (fileHeader.isCompressed()) {
+		if (deflater == null) deflater = new Deflater();
+		else deflater.reset();
+		deflater.setLevel(compressionLevel);
+		deflaterOut = new DeflaterOutputStream(out, deflater,
+						       DEFLATE_BUFFER_SIZE);
+		// Deflating a few bytes at a time is expensive, so
+		// buffer the uncompressed data as well.
+		body = new BitOutputStream(
+		    new BufferedOutputStream(deflaterOut,
+					     DEFLATE_BUFFER_SIZE));
+	    }
+	    
+	    fileHeader.writeMovieInfo(body);
+	    writeData(body, parts);
+	    endTag.write(body);
+	    if (deflaterOut != null) {
+		body.padAndFlush();
+		deflaterOut.finish();
 	    }
-	    endTag.write(out);
 	    if (closeOut) out.close();
 	    else out.padAndFlush();
 	} catch (IOException e) {
@@ -214,6 +672,263 @@ public class SWFWriter extends XMLHandlerBase implements ContentHandler {
 	}
     }
 
+    /** Release the resources held by the collected SWF data. */
+    private void releaseData() {
+	Iterator data = swfData.iterator();
+	while (data.hasNext()) {
+	    Object obj = data.next();
+	    if (obj instanceof SWFTagWriter) ((SWFTagWriter)obj).release();
+	}
+    }
+
+    /**
+     * Submit the next tag from <code>ahead</code> that needs to be
+     * serialized to <code>pool</code>, and add its task to
+     * <code>pending</code>.
+     * @return <code>false</code> if there are no more tags to submit
+     */
+    private static boolean submitNext(SWFEncoderPool pool, Iterator ahead,
+				      LinkedList pending) {
+	while (ahead.hasNext()) {
+	    Object obj = ahead.next();
+	    if (obj instanceof SWFTagWriter &&
+		!((SWFTagWriter)obj).isLengthKnown()) {
+		pending.addLast(pool.submit((SWFTagWriter)obj));
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Write the collected SWF data to <code>body</code>.
+     * <code>parts</code> holds the data in document order: buffers
+     * with serialized tags, tags to write directly and, in streaming
+     * mode, markers for the spill file position.
+     */
+    private void writeData(BitOutputStream body, List parts)
+	         throws IOException {
+	InputStream spill = null;
+	if (spillFile != null) {
+	    tagOut.close();
+	    spill = new FileInputStream(spillFile);
+	}
+	try {
+	    long copied = 0;
+	    Iterator data = parts.iterator();
+	    while (data.hasNext()) {
+		Object obj = data.next();
+		if (obj instanceof BitOutputBuffer) {
+		    ((BitOutputBuffer)obj).writeTo(body);
+		} else if (obj instanceof SWFTagWriter) {
+		    ((SWFTagWriter)obj).write(body);
+		} else if (obj instanceof SpillMark) {
+		    long mark = ((SpillMark)obj).position;
+		    copy(spill, body, mark - copied);
+		    copied = mark;
+		}
+	    }
+	    if (spill != null) copy(spill, body, spillSize - copied);
+	} finally {
+	    if (spill != null) spill.close();
+	}
+    }
+
+    /**
+     * Write the complete SWF file to <code>channel</code> with
+     * gathering writes. The buffers with the serialized tags and the
+     * buffers of the other tags are passed to the channel as they
+     * are. In streaming mode, the spill file segments are
+     * transferred straight from the file.
+     * @see #writeData(BitOutputStream, List)
+     */
+    private void writeData(WritableByteChannel channel, List parts,
+			   SWFTagHeader endTag) throws IOException {
+	BitOutputBuffer header = new BitOutputBuffer();
+	fileHeader.writePrefix(header);
+	fileHeader.writeMovieInfo(header);
+	header.padToByteBoundary();
+	List buffers = new ArrayList();
+	buffers.add(header.toByteBuffer());
+
+	FileChannel spill = null;
+	if (spillFile != null) {
+	    tagOut.close();
+	    spill = new FileInputStream(spillFile).getChannel();
+	}
+	try {
+	    long copied = 0;
+	    Iterator data = parts.iterator();
+	    while (data.hasNext()) {
+		Object obj = data.next();
+		if (obj instanceof BitOutputBuffer) {
+		    buffers.add(((BitOutputBuffer)obj).toByteBuffer());
+		} else if (obj instanceof SWFTagWriter) {
+		    SWFTagWriter tag = (SWFTagWriter)obj;
+		    ByteBuffer[] tagBuffers = tag.getBuffers();
+		    if (tagBuffers == null) {
+			// The tag data is not in memory. Let the tag
+			// write itself once everything before it is
+			// written.
+			write(channel, buffers);
+			buffers.clear();
+			tag.write(channel);
+			continue;
+		    }
+		    buffers.addAll(Arrays.asList(tagBuffers));
+		} else if (obj instanceof SpillMark) {
+		    long mark = ((SpillMark)obj).position;
+		    write(channel, buffers);
+		    buffers.clear();
+		    transfer(spill, copied, mark - copied, channel);
+		    copied = mark;
+		}
+		if (buffers.size() >= MAX_GATHER) {
+		    write(channel, buffers);
+		    buffers.clear();
+		}
+	    }
+	    if (spill != null) {
+		write(channel, buffers);
+		buffers.clear();
+		transfer(spill, copied, spillSize - copied, channel);
+	    }
+	} finally {
+	    if (spill != null) spill.close();
+	}
+	BitOutputBuffer end = new BitOutputBuffer(SWFTagHeader.MAX_LENGTH);
+	endTag.write(end);
+	buffers.add(end.toByteBuffer());
+	write(channel, buffers);
+    }
+
+    /**
+     * Transfer <code>length</code> bytes at <code>position</code> of
+     * <code>in</code> to <code>out</code>.
+     */
+    private static void transfer(FileChannel in, long position, long length,
+				 WritableByteChannel out) throws IOException {
+	long end = position + length;
+	while (position < end) {
+	    position += in.transferTo(position, end - position, out);
+	}
+    }
+
+    /** Write all of <code>buffers</code> to <code>channel</code>. */
+    private void write(WritableByteChannel channel, List buffers)
+	         throws IOException {
+	writeFully(channel,
+		   (ByteBuffer[])buffers.toArray(new ByteBuffer[buffers.size()]));
+    }
+
+    /**
+     * Write all of <code>tmp</code> to <code>channel</code>, with
+     * gathering writes if the channel supports them.
+     */
+    static void writeFully(WritableByteChannel channel, ByteBuffer[] tmp)
+	        throws IOException {
+	int first = 0;
+	while (first < tmp.length) {
+	    if (channel instanceof GatheringByteChannel) {
+		((GatheringByteChannel)channel).write(
+		    tmp, first, tmp.length - first);
+	    } else {
+		channel.write(tmp[first]);
+	    }
+	    while (first < tmp.length && !tmp[first].hasRemaining()) first++;
+	}
+    }
+
+    /** Copy <code>length</code> bytes from <code>in</code> to <code>out</code>. */
+    private void copy(InputStream in, OutputStream out, long length)
+	         throws IOException {
+	byte[] buffer = new byte[(int)Math.min(length, STREAM_BUFFER_SIZE)];
+	while (length > 0) {
+	    int count = in.read(buffer, 0,
+				(int)Math.min(length, buffer.length));
+	    if (count < 0) throw new EOFException();
+	    out.write(buffer, 0, count);
+	    length -= count;
+	}
+    }
+
+    /**
+     * Write the file header to its reserved place at the start of
+     * the output file.
+     */
+    private void patchHeader() throws IOException {
+	ByteArrayOutputStream headerData = new ByteArrayOutputStream();
+	BitOutputStream headerOut = new BitOutputStream(headerData);
+	fileHeader.writePrefix(headerOut);
+	fileHeader.writeMovieInfo(headerOut);
+	headerOut.padAndFlush();
+	ByteBuffer buffer = ByteBuffer.wrap(headerData.toByteArray());
+	long position = headerPosition;
+	while (buffer.hasRemaining()) {
+	    position += targetChannel.write(buffer, position);
+	}
+    }
+
+    /**
+     * Prepare for writing tags in streaming mode. Called after the
+     * file header has been set up.
+     */
+    private void startStreaming() throws IOException {
+	swfData.clear();
+	streamedSize = 0;
+	streamedFrames = 0;
+	targetChannel = null;
+	FileChannel channel = null;
+	if (targetOut instanceof FileChannel) {
+	    channel = (FileChannel)targetOut;
+	} else if (target instanceof FileOutputStream) {
+	    channel = ((FileOutputStream)target).getChannel();
+	}
+	if (!fileHeader.isCompressed() && channel != null) {
+	    try {
+		out.flush();
+		headerPosition = channel.position();
+		// Reserve space for the file header
+		channel.position(headerPosition + fileHeader.length() / 8);
+		targetChannel = channel;
+		tagOut = new BitOutputStream(
+		    new BufferedOutputStream(target, STREAM_BUFFER_SIZE));
+	    } catch (IOException e) {
+		// Not seekable (e.g. a pipe). Spill to a temporary file
+		// instead.
+	    }
+	}
+	if (targetChannel == null) startSpillFile();
+    }
+
+    /**
+     * Start writing tags to a temporary file. Tags written so far
+     * stay where they are.
+     */
+    private void startSpillFile() throws IOException {
+	if (tagOut != null) tagOut.flush();
+	spillFile = File.createTempFile("spark", ".swf");
+	spillSize = 0;
+	tagOut = new BitOutputStream(
+	    new BufferedOutputStream(new FileOutputStream(spillFile),
+				     STREAM_BUFFER_SIZE));
+    }
+
+    /** Close and delete the spill file, if any. */
+    private void discardSpillFile() {
+	if (spillFile != null) {
+	    try {
+		tagOut.close();
+	    } catch (IOException e) {
+		// Ignore, the file is deleted anyway
+	    }
+	    spillFile.delete();
+	    spillFile = null;
+	}
+	tagOut = null;
+	targetChannel = null;
+    }
+
     /** @see ContentHandler#startPrefixMapping */
     public void startPrefixMapping(java.lang.String prefix,
 				   java.lang.String uri)
@@ -253,6 +968,20 @@ public class SWFWriter extends XMLHandlerBase implements ContentHandler {
 	currentHandler.handleText(ch, start, length);
     }
 
+    /**
+     * Raw data is always accepted.
+     * @see SWFRawDataHandler#isRawDataSupported
+     */
+    public boolean isRawDataSupported() { return true; }
+
+    /**
+     * Process raw data.
+     * @see SWFRawDataHandler#rawData
+     */
+    public void rawData(ByteBuffer data) throws SAXException {
+	currentHandler.handleRawData(data);
+    }
+
     /** Process whitespace. Simply calls <code>characters</code> */
     public void ignorableWhitespace(char[] ch,
 				    int start,
@@ -282,9 +1011,48 @@ public class SWFWriter extends XMLHandlerBase implements ContentHandler {
 	throw new SWFWriterException("Unknown element: " + name, locator);
     }
 
-    /** Add a new SWF toplevel structure to the end of the data */
-    public void addData(SWFTagWriter data) {
-	swfData.add(data);
+    /**
+     * Add a new SWF toplevel structure to the end of the data. In
+     * streaming mode, the data is written immediately unless it is
+     * deferred.
+     * @exception SWFWriterException if writing the data fails
+     */
+    public void addData(SWFTagWriter data) throws SWFWriterException {
+	if (!streaming || tagOut == null) {
+	    swfData.add(data);
+	    return;
+	}
+	try {
+	    if (data.isDeferred()) {
+		// The tags following this one can't go directly to
+		// the output anymore.
+		if (spillFile == null) startSpillFile();
+		swfData.add(new SpillMark(spillSize));
+		swfData.add(data);
+	    } else {
+		// The tag is not kept, so release it even if writing fails
+		try {
+		    long length;
+		    if (data.isLengthKnown()) {
+			length = data.getTotalLength();
+			data.write(tagOut);
+		    } else {
+			if (tagBuffer == null) tagBuffer = new BitOutputBuffer();
+			data.serialize(tagBuffer);
+			length = tagBuffer.size();
+			tagBuffer.writeTo(tagOut);
+			tagBuffer.reset();
+		    }
+		    streamedSize += length;
+		    if (spillFile != null) spillSize += length;
+		    if (data.getTypeID() == SWFTypes.SHOW_FRAME) streamedFrames++;
+		} finally {
+		    data.release();
+		}
+	    }
+	} catch (IOException e) {
+	    throw new SWFWriterException("Error writing data", locator, e);
+	}
     }
 
     /** Get the flash version */
@@ -303,6 +1071,12 @@ public class SWFWriter extends XMLHandlerBase implements ContentHandler {
 	    fatalError("Illegal element for this handler: " + name);
 	}
 	fileHeader.setVersion(Integer.parseInt(attrib.getValue("","version")));
+	String compress = attrib.getValue("", "compressed");
+	if (compress != null) {
+	    fileHeader.setCompressed("yes".equals(compress));
+	} else {
+	    fileHeader.setCompressed(compressed);
+	}
 	fileHeader.setFrameRate(
 		      Double.parseDouble(attrib.getValue("","framerate")));
 	// Get the bounding box information. Don't forget to multiply
@@ -319,6 +1093,13 @@ public class SWFWriter extends XMLHandlerBase implements ContentHandler {
 	fileHeader.setMovieSize(new SWFRectangle(
 			       (int)Math.round(x), (int)Math.round(x+width),
 			       (int)Math.round(y), (int)Math.round(y+height)));
+	if (streaming) {
+	    try {
+		startStreaming();
+	    } catch (IOException e) {
+		fatalError("Cannot start streaming", e);
+	    }
+	}
     }
     
     /**
@@ -329,4 +1110,10 @@ public class SWFWriter extends XMLHandlerBase implements ContentHandler {
      */
     protected Map getContextMap() { return context; }
 
+    /**
+     * Get the XML handler instance pool associated with this object.
+     * @see XMLHandlerBase#dispatch
+     */
+    protected Map getHandlerPool() { return handlerPool; }
+
 }
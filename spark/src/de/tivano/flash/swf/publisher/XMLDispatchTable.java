@@ -0,0 +1,182 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash). 
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License. 
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved. 
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.publisher;
+import java.util.Map;
+import java.util.HashMap;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Table of handler factories for child elements, indexed by element
+ * name.
+ *
+ * <p>The built-in XML handlers build one table per handler class and
+ * share it between all instances. Shared tables are frozen, i.e. they
+ * can't be modified after construction. This makes them safe to use
+ * from several threads at once. {@link
+ * XMLHandlerBase#registerElementHandler} transparently copies a
+ * frozen table before modifying it.</p>
+ * @author Richard Kunze
+ */
+public class XMLDispatchTable {
+
+    /** An empty, frozen table. */
+    public static final XMLDispatchTable EMPTY =
+	new XMLDispatchTable().freeze();
+
+    /** Map of element names to handler factories */
+    private final Map factories;
+
+    /** Flag, set if this table can't be modified */
+    private boolean frozen = false;
+
+    /** Create a new, empty table */
+    public XMLDispatchTable() {
+	factories = new HashMap();
+    }
+
+    /**
+     * Create a new table with the same entries as
+     * <code>table</code>. The new table is not frozen.
+     */
+    public XMLDispatchTable(XMLDispatchTable table) {
+	factories = new HashMap(table.factories);
+    }
+
+    /**
+     * Associate a handler factory with an element name.
+     * @exception IllegalStateException if this table is frozen
+     */
+    public void register(String name, XMLHandlerFactory factory) {
+	if (frozen) throw new IllegalStateException(
+	    "Cannot modify a frozen dispatch table");
+	factories.put(name, factory);
+    }
+
+    /**
+     * Associate a handler class with an element name. New handler
+     * instances are created by reflection.
+     * @exception IllegalArgumentException if <code>handlerClass</code>
+     * is not derived from {@link XMLHandlerBase}.
+     * @exception IllegalStateException if this table is frozen
+     */
+    public void register(String name, Class handlerClass) {
+	register(name, createFactory(handlerClass));
+    }
+
+    /**
+     * Get the handler factory for an element.
+     * @return the factory, or <code>null</code> if no handler is
+     * registered for <code>name</code>.
+     */
+    public XMLHandlerFactory getFactory(String name) {
+	return (XMLHandlerFactory)factories.get(name);
+    }
+
+    /**
+     * Make this table unmodifiable.
+     * @return this table
+     */
+    public XMLDispatchTable freeze() {
+	frozen = true;
+	return this;
+    }
+
+    /** Check if this table is unmodifiable */
+    public boolean isFrozen() { return frozen; }
+
+    /**
+     * Reflection-based handler factories, indexed by handler
+     * class. Factories are handed out once per class so that the
+     * handler pool of {@link SWFWriter}, which is keyed by factory,
+     * reuses the handler instances.
+     */
+    private static final Map CLASS_FACTORIES = new HashMap();
+
+    /**
+     * Get the handler factory that instantiates
+     * <code>handlerClass</code> by reflection. The same factory is
+     * returned for every call with the same class.
+     * @exception IllegalArgumentException if <code>handlerClass</code>
+     * is not derived from {@link XMLHandlerBase} or has no
+     * constructor without arguments.
+     */
+    public static XMLHandlerFactory createFactory(Class handlerClass) {
+	synchronized (CLASS_FACTORIES) {
+	    XMLHandlerFactory factory =
+		(XMLHandlerFactory)CLASS_FACTORIES.get(handlerClass);
+	    if (factory == null) {
+		factory = new ReflectionFactory(handlerClass);
+		CLASS_FACTORIES.put(handlerClass, factory);
+	    }
+	    return factory;
+	}
+    }
+
+    /**
+     * Handler factory calling the constructor without arguments of
+     * a handler class.
+     */
+    private static class ReflectionFactory implements XMLHandlerFactory {
+	/** The handler constructor */
+	private final Constructor constructor;
+
+	/**
+	 * Create a new factory.
+	 * @exception IllegalArgumentException if
+	 * <code>handlerClass</code> is not derived from {@link
+	 * XMLHandlerBase} or has no constructor without arguments.
+	 */
+	ReflectionFactory(Class handlerClass) {
+	    if (!XMLHandlerBase.class.isAssignableFrom(handlerClass)) {
+		throw new IllegalArgumentException(
+		       "Not a valid XMLHandler: " + handlerClass.getName());
+	    }
+	    try {
+		constructor = handlerClass.getDeclaredConstructor(new Class[0]);
+	    } catch (NoSuchMethodException e) {
+		throw new IllegalArgumentException(
+		       "No default constructor in " + handlerClass.getName());
+	    }
+	}
+
+	public XMLHandlerBase createHandler() {
+	    try {
+		return (XMLHandlerBase)constructor.newInstance(new Object[0]);
+	    } catch (InvocationTargetException e) {
+		Throwable cause = e.getTargetException();
+		if (cause instanceof RuntimeException) {
+		    throw (RuntimeException)cause;
+		}
+		if (cause instanceof Error) throw (Error)cause;
+		throw new IllegalStateException(
+		    "Cannot create handler " +
+		    constructor.getDeclaringClass().getName() + ": " + cause);
+	    } catch (Exception e) {
+		throw new IllegalStateException(
+		    "Cannot create handler " +
+		    constructor.getDeclaringClass().getName() + ": " + e);
+	    }
+	}
+    }
+}
@@ -39,6 +39,23 @@ import java.io.UnsupportedEncodingException;
  */
 public class XMLFontHandler extends SWFTagHandlerBase {
 
+    /** Handlers for the child elements */
+    private static final XMLDispatchTable DISPATCH_TABLE;
+    static {
+	XMLDispatchTable table = new XMLDispatchTable();
+	table.register("Glyph", new XMLHandlerFactory() {
+		public XMLHandlerBase createHandler() {
+		    return new XMLGlyphHandler();
+		}
+	    });
+	table.register("Kerning", new XMLHandlerFactory() {
+		public XMLHandlerBase createHandler() {
+		    return new XMLKerningHandler();
+		}
+	    });
+	DISPATCH_TABLE = table.freeze();
+    }
+
     /** The font object to build */
     SWFFont font;
 
@@ -49,8 +66,7 @@ public class XMLFontHandler extends SWFTagHandlerBase {
      * Construct a new <code>XMLFontHandler</code>.
      */
     public XMLFontHandler() {
-	registerElementHandler("Glyph", XMLGlyphHandler.class);
-	registerElementHandler("Kerning", XMLKerningHandler.class);
+	setDispatchTable(DISPATCH_TABLE);
     }
     
     /**
@@ -102,10 +118,9 @@ public class XMLFontHandler extends SWFTagHandlerBase {
 	if (tmp!=null) font.setFontName(tmp);
 	else fatalError("No font name specified");
 	try {
-	    tmp = attrib.getValue("", "id");
-	    font.setFontID(Integer.parseInt(tmp));
+	    font.setFontID(getIntValue(attrib, "id"));
 	} catch (Exception e) {
-	    fatalError("Illegal font id: " + tmp);
+	    fatalError("Illegal font id: " + attrib.getValue("", "id"));
 	}
 	tmp = attrib.getValue("", "style");
 	if ("bold".equals(tmp)) {
@@ -126,22 +141,28 @@ public class XMLFontHandler extends SWFTagHandlerBase {
 	    font.setEncoding(SWFFont.ANSI);
 	}
 	try {
-	    tmp = attrib.getValue("", "ascent");
-	    if (tmp!=null) font.setAscent(Integer.parseInt(tmp));
+	    if (hasAttribute(attrib, "ascent")) {
+		font.setAscent(getIntValue(attrib, "ascent"));
+	    }
 	} catch (Exception e) {
-	    fatalError("Illegal font ascent value: " + tmp);
+	    fatalError("Illegal font ascent value: " +
+		       attrib.getValue("", "ascent"));
 	}
 	try {
-	    tmp = attrib.getValue("", "descent");
-	    if (tmp!=null) font.setDescent(Integer.parseInt(tmp));
+	    if (hasAttribute(attrib, "descent")) {
+		font.setDescent(getIntValue(attrib, "descent"));
+	    }
 	} catch (Exception e) {
-	    fatalError("Illegal font descent value: " + tmp);
+	    fatalError("Illegal font descent value: " +
+		       attrib.getValue("", "descent"));
 	}
 	try {
-	    tmp = attrib.getValue("", "leading");
-	    if (tmp!=null) font.setLeading(Integer.parseInt(tmp));
+	    if (hasAttribute(attrib, "leading")) {
+		font.setLeading(getIntValue(attrib, "leading"));
+	    }
 	} catch (Exception e) {
-	    fatalError("Illegal font leading height value: " + tmp);
+	    fatalError("Illegal font leading height value: " +
+		       attrib.getValue("", "leading"));
 	}
     }
     
@@ -37,14 +37,31 @@ import org.xml.sax.Attributes;
  * @see de.tivano.flash.swf.parser.SWFDefineFontInfoReader
  */
 public class XMLGlyphHandler extends XMLHandlerBase {
+
+    /** Handlers for the child elements */
+    private static final XMLDispatchTable DISPATCH_TABLE;
+    static {
+	XMLDispatchTable table = new XMLDispatchTable();
+	table.register("ShapeRaw", new XMLHandlerFactory() {
+		public XMLHandlerBase createHandler() {
+		    return new XMLShapeRawHandler();
+		}
+	    });
+	table.register("Shape", new XMLHandlerFactory() {
+		public XMLHandlerBase createHandler() {
+		    return new XMLShapeHandler();
+		}
+	    });
+	DISPATCH_TABLE = table.freeze();
+    }
+
     private Character ch;
     private int advance = 0;
     private SWFRectangle bounds = null;
     private SWFShape shape;
     
     public XMLGlyphHandler() {
-	registerElementHandler("ShapeRaw", XMLShapeRawHandler.class);
-	registerElementHandler("Shape", XMLShapeHandler.class);
+	setDispatchTable(DISPATCH_TABLE);
     }
 
     /** Get the character code for this glyph. */
@@ -86,19 +103,14 @@ public class XMLGlyphHandler extends XMLHandlerBase {
 	String tmp;
 	tmp = attrib.getValue("", "char");
 	ch = new Character(tmp.charAt(0));
-	tmp = attrib.getValue("", "advance");
-	if (tmp!=null) advance = Integer.parseInt(tmp);
-	String xmin, xmax, ymin, ymax;
-	xmin = attrib.getValue("", "xmin");
-	xmax = attrib.getValue("", "xmax");
-	ymin = attrib.getValue("", "ymin");
-	ymax = attrib.getValue("", "ymax");
-	if (!(xmin == null && xmax == null && ymin == null && ymax == null)) {
+	advance = getIntValue(attrib, "advance", advance);
+	if (hasAttribute(attrib, "xmin") || hasAttribute(attrib, "xmax") ||
+	    hasAttribute(attrib, "ymin") || hasAttribute(attrib, "ymax")) {
 	  try {
-	    bounds = new SWFRectangle(Integer.parseInt(xmin),
-				      Integer.parseInt(xmax),
-				      Integer.parseInt(ymin),
-				      Integer.parseInt(ymax));
+	    bounds = new SWFRectangle(getIntValue(attrib, "xmin"),
+				      getIntValue(attrib, "xmax"),
+				      getIntValue(attrib, "ymin"),
+				      getIntValue(attrib, "ymax"));
 	  } catch (Exception e) {
 	    fatalError(e);
 	  }
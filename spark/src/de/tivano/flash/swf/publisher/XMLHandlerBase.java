@@ -21,10 +21,11 @@
  */
 
 package de.tivano.flash.swf.publisher;
+import java.nio.ByteBuffer;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.LinkedList;
 import org.xml.sax.Attributes;
+import de.tivano.flash.swf.common.SWFTypedAttributes;
 
 /**
  * Base class for all classes that handle part of the XML data.
@@ -40,7 +41,9 @@ import org.xml.sax.Attributes;
  * XML element. However, it is guaranteed that once {@link
  * #startElement} has been called, the instance
  * will not be re-used until the element has been handled completely,
- * i.e. {@link #endElement} has been called.</p>
+ * i.e. {@link #endElement} has been called. Handler instances are
+ * pooled per {@link SWFWriter}, so different writers can be used in
+ * different threads at the same time.</p>
  * 
  * @author Richard Kunze
  */
@@ -52,14 +55,14 @@ public abstract class XMLHandlerBase {
     /** The name of the XML element currently handled by this object */
     private String elementName = null;
 
-    /** Map of XML element names to associated handler classes */
-    private Map handlerMap = new HashMap();
+    /** Dispatch table for child elements */
+    private XMLDispatchTable dispatchTable = XMLDispatchTable.EMPTY;
 
     /**
-     * Handler instance pool. Contains {@link LinkedList} of
-     * available instances indexed by class
+     * The factory that created this instance. Used as the key for
+     * putting this instance back into the handler pool.
      */
-    private static Map instancePool = new HashMap();
+    private XMLHandlerFactory factory = null;
 
     /**
      * Start processing an XML node. After some internal
@@ -87,15 +90,19 @@ public abstract class XMLHandlerBase {
     protected void endElementInternal() throws SWFWriterException {
 	endElement();
 	parent.notify(elementName, this);
-	getSWFWriter().setCurrentXMLHandler(parent);
+	SWFWriter writer = getSWFWriter();
+	writer.setCurrentXMLHandler(parent);
 	parent = null;
 	// Put this instance back into the pool....
-	LinkedList instances = (LinkedList)instancePool.get(this.getClass());
-	if (instances == null) {
-	    instances = new LinkedList();
-	    instancePool.put(this.getClass(), instances);
+	if (factory != null) {
+	    Map instancePool = writer.getHandlerPool();
+	    LinkedList instances = (LinkedList)instancePool.get(factory);
+	    if (instances == null) {
+		instances = new LinkedList();
+		instancePool.put(factory, instances);
+	    }
+	    instances.add(this);
 	}
-	instances.add(this);
     }
 
     /**
@@ -128,37 +135,60 @@ public abstract class XMLHandlerBase {
 
 
     /**
-     * Associate a handler class with an element name
+     * Associate a handler class with an element name. New handler
+     * instances are created by reflection.
      * @exception IllegalArgumentException if
      * {@link XMLHandler} is not assignable from <code>handlerClass</code>.
      */
     protected void registerElementHandler(String name,
 					  Class handlerClass) {
-	if (!XMLHandlerBase.class.isAssignableFrom(handlerClass)) {
-	    throw new IllegalArgumentException(
-		   "Not a valid XMLHandler: " + handlerClass.getName());
+	registerElementHandler(name,
+			       XMLDispatchTable.createFactory(handlerClass));
+    }
+
+    /**
+     * Associate a handler factory with an element name. If the
+     * current dispatch table is shared, this object gets a private
+     * copy first.
+     */
+    protected void registerElementHandler(String name,
+					  XMLHandlerFactory factory) {
+	if (dispatchTable.isFrozen()) {
+	    dispatchTable = new XMLDispatchTable(dispatchTable);
 	}
-	handlerMap.put(name, handlerClass);
+	dispatchTable.register(name, factory);
+    }
+
+    /**
+     * Set the dispatch table for child elements. Handler classes
+     * with a fixed set of child elements should build a frozen table
+     * once and set it in their constructor instead of registering
+     * the child element handlers for every instance.
+     */
+    protected void setDispatchTable(XMLDispatchTable table) {
+	dispatchTable = table;
     }
 
     /** Dispatch an XML element to the appropriate element handler */
     protected void dispatch(String name, Attributes attrib)
 	      throws SWFWriterException {
 
-	Class handlerClass = (Class)handlerMap.get(name);
-	if (handlerClass != null) {
+	XMLHandlerFactory handlerFactory = dispatchTable.getFactory(name);
+	if (handlerFactory != null) {
 	    // Get an instance from the pool or create a new one if
 	    // necessary.
-	    LinkedList instances =(LinkedList)instancePool.get(handlerClass);
+	    LinkedList instances =
+		(LinkedList)getSWFWriter().getHandlerPool().get(handlerFactory);
 	    XMLHandlerBase handler = null;
-	    if (instances != null) {
+	    if (instances != null && !instances.isEmpty()) {
 		handler = (XMLHandlerBase)instances.removeFirst();
 	    } else {
 		try {
-		    handler = (XMLHandlerBase)handlerClass.newInstance();
-		} catch (Exception e) {
+		    handler = handlerFactory.createHandler();
+		} catch (RuntimeException e) {
 		    fatalError(e);
 		}
+		handler.factory = handlerFactory;
 	    }
 	    handler.startElementInternal(name, attrib, this);
 	} else dispatchDefault(name, attrib);
@@ -187,6 +217,18 @@ public abstract class XMLHandlerBase {
               throws SWFWriterException {
     }
 
+    /**
+     * Handle the content of the current XML element as raw bytes
+     * (see {@link de.tivano.flash.swf.common.SWFRawDataHandler}).
+     * The default implementation signals a fatal error, only
+     * handlers for <em>&lt;RawData&gt;</em> elements accept raw data.
+     * @param data the data. The handler may keep a reference to it.
+     */
+    protected void handleRawData(ByteBuffer data)
+              throws SWFWriterException {
+	fatalError("Unexpected raw data");
+    }
+
     /**
      * Signal a fatal error to the application.
      * This convenience method always throws a {@link SWFWriterException}
@@ -231,6 +273,74 @@ public abstract class XMLHandlerBase {
 				     cause);
     }
 
+    /**
+     * Get the value of an integer attribute. If <code>attrib</code>
+     * implements {@link SWFTypedAttributes}, numeric values are read
+     * directly instead of being parsed from a string.
+     * @param attrib the attributes of the current element
+     * @param name the (local) attribute name
+     * @exception NumberFormatException if the attribute is missing or
+     * not an integer
+     */
+    protected static int getIntValue(Attributes attrib, String name) {
+	int index = attrib.getIndex("", name);
+	if (index >= 0 && attrib instanceof SWFTypedAttributes) {
+	    SWFTypedAttributes typed = (SWFTypedAttributes)attrib;
+	    if (typed.getValueType(index) == SWFTypedAttributes.VALUE_LONG) {
+		long value = typed.getLongValue(index);
+		if (value == (int)value) return (int)value;
+	    }
+	}
+	return Integer.parseInt(index < 0?null:attrib.getValue(index));
+    }
+
+    /**
+     * Get the value of an optional integer attribute.
+     * @param attrib the attributes of the current element
+     * @param name the (local) attribute name
+     * @param defaultValue the value to return if the attribute is
+     * missing
+     * @exception NumberFormatException if the attribute is not an
+     * integer
+     * @see #getIntValue(Attributes, String)
+     */
+    protected static int getIntValue(Attributes attrib, String name,
+				     int defaultValue) {
+	if (attrib.getIndex("", name) < 0) return defaultValue;
+	return getIntValue(attrib, name);
+    }
+
+    /**
+     * Get the value of a floating point attribute. If
+     * <code>attrib</code> implements {@link SWFTypedAttributes},
+     * numeric values are read directly instead of being parsed from
+     * a string.
+     * @param attrib the attributes of the current element
+     * @param name the (local) attribute name
+     * @exception NumberFormatException if the attribute is not a
+     * number
+     * @exception NullPointerException if the attribute is missing
+     */
+    protected static float getFloatValue(Attributes attrib, String name) {
+	int index = attrib.getIndex("", name);
+	if (index >= 0 && attrib instanceof SWFTypedAttributes) {
+	    SWFTypedAttributes typed = (SWFTypedAttributes)attrib;
+	    if (typed.getValueType(index) != SWFTypedAttributes.VALUE_STRING) {
+		return (float)typed.getDoubleValue(index);
+	    }
+	}
+	return Float.parseFloat(index < 0?null:attrib.getValue(index));
+    }
+
+    /**
+     * Check if the current element has an attribute.
+     * @param attrib the attributes of the current element
+     * @param name the (local) attribute name
+     */
+    protected static boolean hasAttribute(Attributes attrib, String name) {
+	return attrib.getIndex("", name) >= 0;
+    }
+
     /**
      * Get the handler for the parent (enclosing) XML element.
      */
@@ -0,0 +1,37 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash). 
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License. 
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved. 
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.publisher;
+
+/**
+ * Factory for XML handlers. Used in {@link XMLDispatchTable} to
+ * create new handler instances without going through reflection.
+ * @author Richard Kunze
+ * @see XMLHandlerBase#dispatch
+ */
+public interface XMLHandlerFactory {
+    /**
+     * Create a new XML handler.
+     * @exception RuntimeException if the handler cannot be created.
+     */
+    public XMLHandlerBase createHandler();
+}
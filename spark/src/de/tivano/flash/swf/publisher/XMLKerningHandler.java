@@ -53,9 +53,7 @@ public class XMLKerningHandler extends XMLHandlerBase {
 	if (!name.equals("Kerning")) {
 	    fatalError("Illegal element for this handler: " + name);
 	}
-	String tmp;
 	chars = attrib.getValue("", "chars");
-	tmp = attrib.getValue("", "advance");
-	if (tmp!=null) advance = Integer.parseInt(tmp);
+	advance = getIntValue(attrib, "advance", advance);
     }
 }
@@ -23,9 +23,18 @@
 package de.tivano.flash.swf.publisher;
 import java.io.OutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import org.xml.sax.Attributes;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import de.tivano.flash.swf.common.BitOutputStream;
+import de.tivano.flash.swf.common.BitOutputBuffer;
+import de.tivano.flash.swf.common.SWFTagHeader;
 
 /**
  * Handler for the <em>&lt;RawData&gt;</em> XML tag.
@@ -43,21 +52,211 @@ public class XMLRawDataHandler extends SWFTagHandlerBase {
     /** The base64 decoder */
     Base64Decoder decoder = null;
 
+    /**
+     * In-memory part of the decoded data. Gives access to the data
+     * without copying it.
+     */
+    private static class MemoryBuffer extends ByteArrayOutputStream {
+	ByteBuffer toByteBuffer() {
+	    return ByteBuffer.wrap(buf, 0, count).asReadOnlyBuffer();
+	}
+    }
+
+    /** Buffer size for writing and reading spilled data */
+    private static final int SPILL_BUFFER_SIZE = 65536;
+
+    /**
+     * Buffer for the decoded data. The data is kept in memory up to
+     * a threshold. Beyond that, all of it goes to a temporary file.
+     */
+    private static class DataBuffer extends OutputStream {
+	/** The spill threshold */
+	private final long threshold;
+	/** The data, as long as it is kept in memory */
+	private MemoryBuffer memory = new MemoryBuffer();
+	/** The temporary file, or <code>null</code> */
+	private File file = null;
+	/** The stream writing to <code>file</code>, until closed */
+	private OutputStream fileOut = null;
+	/** The number of bytes in the buffer */
+	private long size = 0;
+
+	DataBuffer(long threshold) { this.threshold = threshold; }
+
+	public void write(int b) throws IOException {
+	    if (file == null && size + 1 > threshold) spill();
+	    if (file == null) memory.write(b);
+	    else fileOut.write(b);
+	    size++;
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+	    if (file == null && size + len > threshold) spill();
+	    if (file == null) memory.write(b, off, len);
+	    else fileOut.write(b, off, len);
+	    size += len;
+	}
+
+	/** Move the data written so far to a temporary file */
+	private void spill() throws IOException {
+	    file = File.createTempFile("spark", ".dat");
+	    fileOut = new BufferedOutputStream(new FileOutputStream(file),
+					       SPILL_BUFFER_SIZE);
+	    memory.writeTo(fileOut);
+	    memory = null;
+	}
+
+	/** Finish writing the temporary file, if any */
+	public void close() throws IOException {
+	    if (fileOut != null) {
+		fileOut.close();
+		fileOut = null;
+	    }
+	}
+
+	long size() { return size; }
+
+	/** Check whether the data has been moved to a temporary file */
+	boolean isSpilled() { return file != null; }
+
+	/** Get the data. Only valid if the data is not spilled. */
+	ByteBuffer toByteBuffer() { return memory.toByteBuffer(); }
+
+	/** Write the data to <code>out</code>. */
+	void writeTo(OutputStream out) throws IOException {
+	    if (file == null) {
+		memory.writeTo(out);
+		return;
+	    }
+	    close();
+	    FileInputStream in = new FileInputStream(file);
+	    try {
+		byte[] chunk = new byte[(int)Math.min(size, SPILL_BUFFER_SIZE)];
+		int count;
+		while ((count = in.read(chunk)) > 0) out.write(chunk, 0, count);
+	    } finally {
+		in.close();
+	    }
+	}
+
+	/**
+	 * Write the spilled data to <code>out</code>. The data is
+	 * transferred by the operating system where possible, without
+	 * passing through the Java heap.
+	 */
+	void transferTo(WritableByteChannel out) throws IOException {
+	    close();
+	    FileChannel in = new FileInputStream(file).getChannel();
+	    try {
+		long position = 0;
+		while (position < size) {
+		    position += in.transferTo(position, size - position, out);
+		}
+	    } finally {
+		in.close();
+	    }
+	}
+
+	/** Delete the temporary file, if any */
+	void delete() {
+	    if (file == null) return;
+	    try {
+		close();
+	    } catch (IOException e) {
+		// Ignore, the file is deleted anyway
+	    }
+	    file.delete();
+	}
+    }
+
     /**
      * The SWF writer class for raw data.
      */
     private static class RawDataWriter extends SWFTagWriter {
-	private ByteArrayOutputStream data = new ByteArrayOutputStream();
-	public RawDataWriter(int typeID) {
+	private DataBuffer data;
+	/** Data received as bytes. Written before <code>data</code>. */
+	private ByteBuffer raw = null;
+	public RawDataWriter(int typeID, long spillThreshold) {
 	    super(typeID);
+	    data = new DataBuffer(spillThreshold);
 	}
 
-	protected long getDataLength() { return data.size(); }
+	protected long getDataLength() {
+	    return data.size() + (raw != null?raw.remaining():0);
+	}
+	public boolean isLengthKnown() { return true; }
 	public void writeData(BitOutputStream out) throws IOException {
+	    if (raw != null) {
+		ByteBuffer tmp = raw.duplicate();
+		if (tmp.hasArray()) {
+		    out.write(tmp.array(), tmp.arrayOffset() + tmp.position(),
+			      tmp.remaining());
+		} else {
+		    byte[] chunk = new byte[Math.min(tmp.remaining(), 8192)];
+		    while (tmp.hasRemaining()) {
+			int count = Math.min(tmp.remaining(), chunk.length);
+			tmp.get(chunk, 0, count);
+			out.write(chunk, 0, count);
+		    }
+		}
+	    }
 	    data.writeTo(out);
 	}
+	/**
+	 * Returns the header and the data as they are, or
+	 * <code>null</code> if the data has been spilled to a file.
+	 */
+	public ByteBuffer[] getBuffers() throws IOException {
+	    if (data.isSpilled()) return null;
+	    ByteBuffer header = getHeaderBuffer();
+	    if (raw == null) {
+		return new ByteBuffer[] { header, data.toByteBuffer() };
+	    }
+	    return new ByteBuffer[] {
+		header, raw.duplicate(), data.toByteBuffer() };
+	}
+	/** Transfers spilled data straight from the file. */
+	public void write(WritableByteChannel out) throws IOException {
+	    if (!data.isSpilled()) {
+		super.write(out);
+		return;
+	    }
+	    ByteBuffer header = getHeaderBuffer();
+	    if (raw == null) {
+		SWFWriter.writeFully(out, new ByteBuffer[] { header });
+	    } else {
+		SWFWriter.writeFully(out, new ByteBuffer[] {
+		    header, raw.duplicate() });
+	    }
+	    data.transferTo(out);
+	}
+	/** Get the tag header as a buffer */
+	private ByteBuffer getHeaderBuffer() throws IOException {
+	    doInitWriteData();
+	    HEADER.setRecordLength(getCachedDataLength());
+	    BitOutputBuffer header =
+		new BitOutputBuffer(SWFTagHeader.MAX_LENGTH);
+	    HEADER.write(header);
+	    return header.toByteBuffer();
+	}
+	/** Deletes the temporary file, if any. */
+	public void release() { data.delete(); }
 	/** Get an output stream for writing data */
 	public OutputStream getDataOutputStream() { return data; }
+	/**
+	 * Add data received as bytes. The first buffer is kept as is,
+	 * later ones are copied.
+	 */
+	public void addRawData(ByteBuffer buffer) throws IOException {
+	    if (raw == null && data.size() == 0) {
+		raw = buffer;
+		return;
+	    }
+	    ByteBuffer tmp = buffer.duplicate();
+	    byte[] chunk = new byte[tmp.remaining()];
+	    tmp.get(chunk);
+	    data.write(chunk);
+	}
     }
 
     /**
@@ -73,9 +272,14 @@ public class XMLRawDataHandler extends SWFTagHandlerBase {
     protected void startElement(String name, Attributes attrib)
 	      throws SWFWriterException {
 	RawDataWriter dataWriter = 
-	    new RawDataWriter(Integer.parseInt(attrib.getValue("","type")));
+	    new RawDataWriter(getIntValue(attrib, "type"),
+			      getSWFWriter().getRawDataSpillThreshold());
 	writer = dataWriter;
-	decoder = new Base64Decoder(dataWriter.getDataOutputStream());
+	if (decoder == null) {
+	    decoder = new Base64Decoder(dataWriter.getDataOutputStream());
+	} else {
+	    decoder.reset(dataWriter.getDataOutputStream());
+	}
     }
 	
     /**
@@ -90,6 +294,20 @@ public class XMLRawDataHandler extends SWFTagHandlerBase {
 	}
     }
 	
+    /**
+     * Handle raw SWF data passed on as bytes.
+     * @param data the data buffer
+     */
+    protected void handleRawData(ByteBuffer data)
+              throws SWFWriterException {
+	try {
+	    decoder.flush();
+	    ((RawDataWriter)writer).addRawData(data);
+	} catch (IOException e) {
+	    fatalError("Cannot store the data", e);
+	}
+    }
+
     /**
      * Handle text. The text is assumed to be base64 encoded, raw SWF
      * data.
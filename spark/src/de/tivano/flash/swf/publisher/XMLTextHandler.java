@@ -47,6 +47,18 @@ import org.xml.sax.Attributes;
  * @see de.tivano.flash.swf.parser.SWFDefineText2Reader
  */
 public class XMLTextHandler extends SWFTagHandlerBase {
+
+    /** Handlers for the child elements */
+    private static final XMLDispatchTable DISPATCH_TABLE;
+    static {
+	XMLDispatchTable table = new XMLDispatchTable();
+	table.register("P", new XMLHandlerFactory() {
+		public XMLHandlerBase createHandler() {
+		    return new XMLTextMarkupParHandler();
+		}
+	    });
+	DISPATCH_TABLE = table.freeze();
+    }
     
     private static final SWFColorRGB DEFAULT_COLOR =
 	new SWFColorRGB("000000");
@@ -322,7 +334,7 @@ public class XMLTextHandler extends SWFTagHandlerBase {
     }
 
     public XMLTextHandler() {
-	registerElementHandler("P", XMLTextMarkupParHandler.class);
+	setDispatchTable(DISPATCH_TABLE);
     }
     /** Set the font layout for the current text chunk */
     public int getFontLayout() {
@@ -407,43 +419,38 @@ public class XMLTextHandler extends SWFTagHandlerBase {
 	lineSpacing = 0;
 	alpha  = 0xFF;
 	try {
-	    tmp = attrib.getValue("", "id");
-	    if (tmp != null) id = Integer.parseInt(tmp);
+	    id = getIntValue(attrib, "id", id);
 	    tmp = attrib.getValue("", "name");
 	    if (tmp != null) varName = tmp;
 	    else varName = "";
 	    try {
 		bounds = new SWFRectangle(
-			Integer.parseInt(attrib.getValue("", "xmin")),
-			Integer.parseInt(attrib.getValue("", "xmax")),
-			Integer.parseInt(attrib.getValue("", "ymin")),
-                        Integer.parseInt(attrib.getValue("", "ymax")));
+			getIntValue(attrib, "xmin"),
+			getIntValue(attrib, "xmax"),
+			getIntValue(attrib, "ymin"),
+			getIntValue(attrib, "ymax"));
 	    } catch (Exception e) {
 		fatalError("Text bounds must be specified");
 	    }
 	    tmp = attrib.getValue("", "alpha");
 	    if (tmp!=null) alpha = Integer.parseInt(tmp.substring(1,3), 16);
 	    // Convert layout values to "TWIPS" by multiplying with twenty
-	    tmp = attrib.getValue("", "indent");
-	    if (tmp!=null) {
+	    if (hasAttribute(attrib, "indent")) {
 		hasLayout = true;
-		indent = Math.round(Float.parseFloat(tmp) * 20.0F);
+		indent = Math.round(getFloatValue(attrib, "indent") * 20.0F);
 	    }
-	    tmp = attrib.getValue("", "leftmargin");
-	    if (tmp!=null) {
+	    if (hasAttribute(attrib, "leftmargin")) {
 		hasLayout = true;
-		leftMargin = Math.round(Float.parseFloat(tmp) * 20.0F);
+		leftMargin = Math.round(getFloatValue(attrib, "leftmargin") * 20.0F);
 	    }
-	    tmp = attrib.getValue("", "rightmargin");
-	    if (tmp!=null) {
+	    if (hasAttribute(attrib, "rightmargin")) {
 		hasLayout = true;
-		rightMargin = Math.round(Float.parseFloat(tmp) * 20.0F);
+		rightMargin = Math.round(getFloatValue(attrib, "rightmargin") * 20.0F);
 	    }
 	    
-	    tmp = attrib.getValue("", "linespacing");
-	    if (tmp!=null) {
+	    if (hasAttribute(attrib, "linespacing")) {
 		hasLayout = true;
-	        lineSpacing = Math.round(Float.parseFloat(tmp) * 20.0F);
+	        lineSpacing = Math.round(getFloatValue(attrib, "linespacing") * 20.0F);
 	    }
 	    hasBorder = "yes".equals(attrib.getValue("", "border"));
 	    isSelectable = "yes".equals(attrib.getValue("", "selectable"));
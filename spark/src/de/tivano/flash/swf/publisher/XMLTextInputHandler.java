@@ -34,6 +34,18 @@ import de.tivano.flash.swf.common.SWFDefineTextField;
  */
 public class XMLTextInputHandler extends SWFTagHandlerBase {
 
+    /** Handlers for the child elements */
+    private static final XMLDispatchTable DISPATCH_TABLE;
+    static {
+	XMLDispatchTable table = new XMLDispatchTable();
+	table.register("Text", new XMLHandlerFactory() {
+		public XMLHandlerBase createHandler() {
+		    return new TextHandlerHelper();
+		}
+	    });
+	DISPATCH_TABLE = table.freeze();
+    }
+
     /** Text handler helper class that does not add its data object to
      * the list of toplevel SWF data structures. */
     private static class TextHandlerHelper extends XMLTextHandler {
@@ -57,7 +69,7 @@ public class XMLTextInputHandler extends SWFTagHandlerBase {
     private boolean useWordWrap;
 
     public XMLTextInputHandler() {
-	registerElementHandler("Text", TextHandlerHelper.class);
+	setDispatchTable(DISPATCH_TABLE);
     }
 
     /**
@@ -67,16 +79,14 @@ public class XMLTextInputHandler extends SWFTagHandlerBase {
 	      throws SWFWriterException {
 	String tmp = null;
 	try {
-	    tmp = attrib.getValue("", "id");
-	    if (tmp != null) id = Integer.parseInt(tmp);
+	    id = getIntValue(attrib, "id", id);
 	} catch (NumberFormatException e) {
-	    fatalError("Invalid ID: " + tmp);
+	    fatalError("Invalid ID: " + attrib.getValue("", "id"));
 	}
 	try {
-	    tmp = attrib.getValue("", "maxlength");
-	    if (tmp != null) maxLength = Integer.parseInt(tmp);
+	    maxLength = getIntValue(attrib, "maxlength", maxLength);
 	} catch (NumberFormatException e) {
-	    fatalError("Invalid length: " + tmp);
+	    fatalError("Invalid length: " + attrib.getValue("", "maxlength"));
 	}
 	tmp = attrib.getValue("", "name");
 	if (tmp != null) varName = tmp;
@@ -31,6 +31,33 @@ import org.xml.sax.Attributes;
  */
 public class XMLTextMarkupHandlerBase extends XMLHandlerBase {
 
+    /** Handlers for the child elements */
+    private static final XMLDispatchTable DISPATCH_TABLE;
+    static {
+	XMLDispatchTable table = new XMLDispatchTable();
+	table.register("B", new XMLHandlerFactory() {
+		public XMLHandlerBase createHandler() {
+		    return new XMLTextMarkupBoldHandler();
+		}
+	    });
+	table.register("I", new XMLHandlerFactory() {
+		public XMLHandlerBase createHandler() {
+		    return new XMLTextMarkupItalicHandler();
+		}
+	    });
+	table.register("SPAN", new XMLHandlerFactory() {
+		public XMLHandlerBase createHandler() {
+		    return new XMLTextMarkupHandlerBase();
+		}
+	    });
+	table.register("FONT", new XMLHandlerFactory() {
+		public XMLHandlerBase createHandler() {
+		    return new XMLTextMarkupFontHandler();
+		}
+	    });
+	DISPATCH_TABLE = table.freeze();
+    }
+
     /** The {@link XMLTextHandler} handling the enclosing
      * <em>&lt;Text&gt;</em> element.
      */
@@ -41,10 +68,7 @@ public class XMLTextMarkupHandlerBase extends XMLHandlerBase {
      */
      
     public XMLTextMarkupHandlerBase() {
-	registerElementHandler("B", XMLTextMarkupBoldHandler.class);
-	registerElementHandler("I", XMLTextMarkupItalicHandler.class);
-	registerElementHandler("SPAN", XMLTextMarkupHandlerBase.class);
-	registerElementHandler("FONT", XMLTextMarkupFontHandler.class);
+	setDispatchTable(DISPATCH_TABLE);
     }
     
     /**
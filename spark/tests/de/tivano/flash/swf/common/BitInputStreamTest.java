@@ -27,6 +27,7 @@ import junit.framework.Test;
 import junit.framework.TestSuite;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.io.EOFException;
 
 /**
@@ -615,6 +616,20 @@ public class BitInputStreamTest extends TestCase {
 	assertEquals(expectedRemaining, stream.availableBits());
     }
     
+    /**
+     * Test <code>readUBits()</code> on an underlying stream that
+     * returns at most one byte per <code>read()</code> call.
+     */
+    public void testShortReads(int bits) throws Exception {
+	InputStream in = new ByteArrayInputStream(pattern) {
+		public int read(byte[] b, int off, int len) {
+		    return super.read(b, off, Math.min(len, 1));
+		}
+	    };
+	stream = new BitInputStream(in);
+	testReadUBits(bits);
+    }
+
     /**
      * Build the test suite
      */
@@ -874,6 +889,23 @@ public class BitInputStreamTest extends TestCase {
 	    }
 	}
 
+	// Test reading from a stream that returns less data than
+	// requested.
+	byte[] shortReadData = new byte[ARRAY_LENGTH];
+	for (int i=0; i<shortReadData.length; i++) {
+	    shortReadData[i] = (byte)(i * 37);
+	}
+	for (int bits=1; bits<57; bits+=5) {
+	    final int BITS = bits;
+	    name = "readUBits(" + bits + ") with short reads";
+	    test = new BitInputStreamTest(name, shortReadData) {
+		    public void runTest() throws Exception {
+			this.testShortReads(BITS);
+		    }
+		};
+	    suite.addTest(test);
+	}
+
 	// test mark()/reset() at different positions. Make sure some
 	// of the positions are beyond the end of the stream.
 	for (int pos = 1; pos < 16*ARRAY_LENGTH; pos+=(ARRAY_LENGTH*8)/11) {
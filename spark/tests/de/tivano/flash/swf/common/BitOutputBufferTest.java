@@ -0,0 +1,196 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+
+package de.tivano.flash.swf.common;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * JUnit test case for {@link BitOutputBuffer}. Checks that random
+ * sequences of write operations produce the same data as a plain
+ * {@link BitOutputStream}, and that tags written with back-patched
+ * headers come out the same as tags written the conventional way,
+ * with the length calculated in advance.
+ * @author Richard Kunze
+ */
+public class BitOutputBufferTest extends TestCase {
+
+    /** The buffer to test */
+    private BitOutputBuffer buffer;
+
+    /** @see TestCase#TestCase */
+    public BitOutputBufferTest(String name) {
+	super(name);
+    }
+
+    /** Build the fixture */
+    public void setUp() {
+	buffer = new BitOutputBuffer(16);
+    }
+
+    /** Get the buffer content as a byte array */
+    private byte[] content() throws Exception {
+	ByteArrayOutputStream tmp = new ByteArrayOutputStream();
+	buffer.writeTo(tmp);
+	return tmp.toByteArray();
+    }
+
+    /**
+     * Write a tag with <code>length</code> bytes of data the
+     * conventional way.
+     */
+    private byte[] expectedTag(int id, int length) throws Exception {
+	ByteArrayOutputStream tmp = new ByteArrayOutputStream();
+	BitOutputStream out = new BitOutputStream(tmp);
+	new SWFTagHeader(id, length).write(out);
+	for (int i=0; i<length; i++) out.write(i);
+	out.close();
+	return tmp.toByteArray();
+    }
+
+    /** Write a tag with <code>length</code> bytes of data to the buffer */
+    private void writeTag(int id, int length) throws Exception {
+	int pos = buffer.startTag();
+	for (int i=0; i<length; i++) buffer.write(i);
+	buffer.endTag(new SWFTagHeader(id), pos);
+    }
+
+    /** Check that the buffer content equals <code>expected</code> */
+    private void assertContent(byte[] expected) throws Exception {
+	byte[] actual = content();
+	assertEquals("length", expected.length, actual.length);
+	for (int i=0; i<expected.length; i++) {
+	    assertEquals("byte " + i, expected[i], actual[i]);
+	}
+    }
+
+    /**
+     * Perform a single operation on <code>out</code>. The operation
+     * and its arguments are taken from <code>random</code>.
+     */
+    private void doOperation(BitOutputStream out, Random random)
+	         throws Exception {
+	int op = random.nextInt(8);
+	int n  = random.nextInt(57);
+	long value = random.nextLong();
+	switch (op) {
+	case 0: out.writeBits(value, n == 0?1:n); break;
+	case 1: out.write((int)value); break;
+	case 2: {
+	    byte[] tmp = new byte[n * 3];
+	    random.nextBytes(tmp);
+	    out.write(tmp, n, n * 2);
+	    break;
+	}
+	case 3: out.writeW16LSB((int)value); break;
+	case 4: out.writeW32LSB((int)value); break;
+	case 5: out.writeW16MSB((int)value); break;
+	case 6: out.writeBit(value < 0); break;
+	case 7: out.padToByteBoundary(); break;
+	default: throw new IllegalArgumentException("op " + op);
+	}
+    }
+
+    /**
+     * Run random sequences of operations on both the buffer and a
+     * plain <code>BitOutputStream</code>.
+     */
+    public void testRandomOperations() throws Exception {
+	for (int seed=0; seed<20; seed++) {
+	    ByteArrayOutputStream tmp = new ByteArrayOutputStream();
+	    BitOutputStream expected = new BitOutputStream(tmp);
+	    buffer.reset();
+	    Random random1 = new Random(seed);
+	    Random random2 = new Random(seed);
+	    for (int i=0; i<2000; i++) {
+		doOperation(expected, random1);
+		doOperation(buffer, random2);
+		assertEquals("seed " + seed + ", operation " + i,
+			     expected.countRemainingBits(),
+			     buffer.countRemainingBits());
+	    }
+	    expected.close();
+	    buffer.close();
+	    assertContent(tmp.toByteArray());
+	}
+    }
+
+    /** Test tags with short and long headers, one after the other */
+    public void testTags() throws Exception {
+	int[] lengths = { 0, 1, 62, 63, 64, 1000 };
+	ByteArrayOutputStream expected = new ByteArrayOutputStream();
+	buffer.writeBits(5, 3);
+	buffer.padToByteBoundary();
+	expected.write(5 << 5);
+	for (int i=0; i<lengths.length; i++) {
+	    writeTag(SWFTypes.SHOW_FRAME, lengths[i]);
+	    expected.write(expectedTag(SWFTypes.SHOW_FRAME, lengths[i]));
+	}
+	assertContent(expected.toByteArray());
+    }
+
+    /** Test that <code>endTag()</code> pads the tag data */
+    public void testPadding() throws Exception {
+	int pos = buffer.startTag();
+	buffer.writeBits(1, 1);
+	buffer.endTag(new SWFTagHeader(SWFTypes.SHOW_FRAME), pos);
+	assertTrue(buffer.isAtByteBoundary());
+	byte[] data = content();
+	assertEquals(3, data.length);
+	assertEquals((byte)0x80, data[2]);
+    }
+
+    /** Test <code>reserve()</code> and the <code>patch</code> methods */
+    public void testPatch() throws Exception {
+	buffer.write(1);
+	int pos = buffer.reserve(6);
+	buffer.write(2);
+	buffer.patchW16LSB(pos, 0x1234);
+	buffer.patchW32LSB(pos + 2, 0x56789abc);
+	assertContent(new byte[] { 1, 0x34, 0x12, (byte)0xbc, (byte)0x9a,
+				   0x78, 0x56, 2 });
+	try {
+	    buffer.patchW32LSB(pos + 4, 0);
+	    fail("Expected an IndexOutOfBoundsException");
+	} catch (IndexOutOfBoundsException e) {}
+	buffer.writeBits(1, 1);
+	try {
+	    buffer.reserve(1);
+	    fail("Expected an IllegalStateException");
+	} catch (IllegalStateException e) {}
+    }
+
+    /** Test <code>reset()</code> */
+    public void testReset() throws Exception {
+	buffer.write(new byte[100]);
+	buffer.writeBits(1, 3);
+	buffer.reset();
+	assertEquals(0, buffer.size());
+	assertTrue(buffer.isAtByteBoundary());
+	writeTag(SWFTypes.SHOW_FRAME, 3);
+	assertContent(expectedTag(SWFTypes.SHOW_FRAME, 3));
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.common;
+
+import junit.framework.TestCase;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * JUnit test case for {@link ByteBufferBitInputStream}. Runs random
+ * sequences of read operations on both a
+ * <code>ByteBufferBitInputStream</code> and a plain
+ * {@link BitInputStream} (which is tested separately in
+ * {@link BitInputStreamTest}) and checks that they produce the same
+ * results.
+ * @author Richard Kunze
+ */
+public class ByteBufferBitInputStreamTest extends TestCase {
+
+    /** Array length for the test byte array */
+    private static final int ARRAY_LENGTH = 1024;
+
+    /** The number of operations per test run */
+    private static final int OPERATIONS = 2000;
+
+    /** The random seed for this test */
+    private long seed;
+
+    /** The test data */
+    private byte[] data;
+
+    /** The reference stream */
+    private BitInputStream expected;
+
+    /** The stream to test */
+    private ByteBufferBitInputStream actual;
+
+    /** @see TestCase#TestCase */
+    public ByteBufferBitInputStreamTest(String name, long seed) {
+	super(name);
+	this.seed = seed;
+    }
+
+    /** Build the fixture */
+    public void setUp() {
+	data = new byte[ARRAY_LENGTH];
+	new Random(seed).nextBytes(data);
+	expected = new BitInputStream(new ByteArrayInputStream(data));
+	actual   = new ByteBufferBitInputStream(data);
+    }
+
+    /**
+     * Run a random sequence of operations on both streams, up to the
+     * first <code>EOFException</code>.
+     */
+    public void testRandomOperations() throws Exception {
+	Random random = new Random(seed);
+	for (int i=0; i<OPERATIONS; i++) {
+	    int op = random.nextInt(10);
+	    int n  = random.nextInt(57);
+	    String msg = "operation " + i + " (" + op + ")";
+	    long exp, act;
+	    try {
+		exp = doOperation(expected, op, n);
+	    } catch (EOFException e) {
+		try {
+		    fail(msg + ": Expected EOF, got " +
+			 doOperation(actual, op, n));
+		} catch (EOFException e2) {}
+		return;
+	    }
+	    act = doOperation(actual, op, n);
+	    assertEquals(msg, exp, act);
+	    assertEquals(msg, expected.availableBits(),
+			 actual.availableBits());
+	    assertEquals(msg, expected.countRemainingBits(),
+			 actual.countRemainingBits());
+	}
+    }
+
+    /**
+     * Perform a single operation on <code>stream</code>. Operations
+     * that don't return a number return a checksum of the bytes read.
+     */
+    private long doOperation(BitInputStream stream, int op, int n)
+	         throws Exception {
+	switch (op) {
+	case 0: return stream.readUBits(n);
+	case 1: return stream.readSBits(n == 0?1:n);
+	case 2: return stream.read();
+	case 3: {
+	    byte[] tmp = new byte[n * 3];
+	    int count = stream.read(tmp, n, n * 2);
+	    long sum = count;
+	    for (int i=0; i<tmp.length; i++) sum = sum * 31 + tmp[i];
+	    return sum;
+	}
+	case 4: return stream.skipBits(n * 5);
+	case 5: return stream.readUW16LSB();
+	case 6: return stream.readUW32LSB();
+	case 7: return stream.skipToByteBoundary();
+	case 8: stream.mark(ARRAY_LENGTH); return 0;
+	case 9: stream.reset(); return 0;
+	default: throw new IllegalArgumentException("op " + op);
+	}
+    }
+
+    /** Test the <code>slice()</code> method. */
+    public void testSlice() throws Exception {
+	actual.skipBits(8 * 10);
+	ByteBufferBitInputStream slice = actual.slice(100);
+	assertEquals(800, slice.availableBits());
+	assertEquals((ARRAY_LENGTH - 110) * 8, actual.availableBits());
+	for (int i=0; i<100; i++) {
+	    assertEquals("byte " + i, data[10+i] & 0xFF, slice.read());
+	}
+	assertEquals(-1, slice.read());
+	assertEquals(data[110] & 0xFF, actual.read());
+
+	actual.readUBits(3);
+	try {
+	    actual.slice(1);
+	    fail("Expected an IllegalStateException");
+	} catch (IllegalStateException e) {}
+	actual.skipToByteBoundary();
+	try {
+	    actual.slice(ARRAY_LENGTH);
+	    fail("Expected an EOFException");
+	} catch (EOFException e) {}
+    }
+
+    /** Test the <code>readBuffer()</code> method. */
+    public void testReadBuffer() throws Exception {
+	actual.skipBits(8 * 10);
+	ByteBuffer buffer = actual.readBuffer(100);
+	assertEquals(100, buffer.remaining());
+	assertTrue(buffer.isReadOnly());
+	for (int i=0; i<100; i++) {
+	    assertEquals("byte " + i, data[10+i], buffer.get());
+	}
+	assertEquals(data[110] & 0xFF, actual.read());
+	try {
+	    actual.readBuffer(ARRAY_LENGTH);
+	    fail("Expected an EOFException");
+	} catch (EOFException e) {}
+    }
+
+    /** Build the test suite */
+    public static Test suite() {
+	TestSuite suite = new TestSuite();
+	for (int i=0; i<50; i++) {
+	    final long SEED = i;
+	    suite.addTest(new ByteBufferBitInputStreamTest(
+				  "random operations, seed " + i, SEED) {
+		    public void runTest() throws Exception {
+			this.testRandomOperations();
+		    }
+		});
+	}
+	suite.addTest(new ByteBufferBitInputStreamTest("slice()", 0) {
+		public void runTest() throws Exception {
+		    this.testSlice();
+		}
+	    });
+	suite.addTest(new ByteBufferBitInputStreamTest("readBuffer()", 0) {
+		public void runTest() throws Exception {
+		    this.testReadBuffer();
+		}
+	    });
+	return suite;
+    }
+}
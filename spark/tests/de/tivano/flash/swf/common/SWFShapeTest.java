@@ -33,7 +33,18 @@ import java.util.StringTokenizer;
 import java.util.List;
 
 /**
- * Test case for the {@link SWFShape} class.
+ * Test case for the {@link SWFShape} class. Besides the
+ * parametrizable fields provided by {@link SWFDataTypeTestCase}, this
+ * test class has the following parametrizable properties:
+ * <ul>
+ * <li>useRGBA: Flag, tells wether to use RGBA or RGB for parsing
+ * color components.
+ * <li>expectedShapeRecordClasses: Comma seperated list of the
+ * expected shape record classes.
+ * </ul>
+ * The records are compared between {@link SWFShape#parse}, {@link
+ * SWFShape#accept}, the record cursor and the record iterator, so
+ * all four must agree for every test shape.
  * @author Richard Kunze
  */
 public class SWFShapeTest extends SWFDataTypeTestCase {
@@ -41,6 +52,39 @@ public class SWFShapeTest extends SWFDataTypeTestCase {
     private SWFShape testShape;
     private boolean useRGBA;
     private String[] expectedShapeRecordClasses = new String[0];
+
+    /** Visitor recording the shape records as text, one per line */
+    private static class RecordLog implements SWFShapeRecordVisitor {
+        private final StringBuffer log = new StringBuffer();
+
+        public void startShape(int fillBits, int lineBits) {
+            log.append("start " + fillBits + " " + lineBits + "\n");
+        }
+
+        public void styleChange(int flags, int fillStyle0, int fillStyle1,
+                                int lineStyle, SWFStateChange newStyles) {
+            appendStyleChange(log, flags, fillStyle0, fillStyle1,
+                              lineStyle, newStyles);
+        }
+
+        public void moveTo(int x, int y) {
+            log.append("move " + x + " " + y + "\n");
+        }
+
+        public void lineTo(int dx, int dy) {
+            log.append("line " + dx + " " + dy + "\n");
+        }
+
+        public void curveTo(int controlX, int controlY,
+                            int anchorX, int anchorY) {
+            log.append("curve " + controlX + " " + controlY + " " +
+                       anchorX + " " + anchorY + "\n");
+        }
+
+        public void endShape() { log.append("end\n"); }
+
+        public String toString() { return log.toString(); }
+    }
     
     public SWFShapeTest(java.lang.String testName) {
         super(testName);
@@ -102,4 +146,137 @@ public class SWFShapeTest extends SWFDataTypeTestCase {
                    (expectedShapeRecordClasses.length + 1),
                    !records.hasNext());
     }        
+
+    /** Append a state change record to a record log. */
+    private static void appendStyleChange(StringBuffer log, int flags,
+                                          int fillStyle0, int fillStyle1,
+                                          int lineStyle,
+                                          SWFStateChange newStyles) {
+        log.append("style " + flags + " " + fillStyle0 + " " +
+                   fillStyle1 + " " + lineStyle);
+        if (newStyles != null) {
+            log.append(" styles " + newStyles.getFillStyleCount() + " " +
+                       newStyles.getLineStyleCount() + " " +
+                       newStyles.getNewStyleFillBits() + " " +
+                       newStyles.getNewStyleLineBits());
+        }
+        log.append("\n");
+    }
+
+    /** Get the state change flags of a state change record */
+    private static int getFlags(SWFStateChange record) {
+        int flags = 0;
+        if (record.hasMoveTo()) flags |= SWFShapeRecordVisitor.MOVE_TO;
+        if (record.hasFillStyle0()) flags |= SWFShapeRecordVisitor.FILL_STYLE_0;
+        if (record.hasFillStyle1()) flags |= SWFShapeRecordVisitor.FILL_STYLE_1;
+        if (record.hasLineStyle()) flags |= SWFShapeRecordVisitor.LINE_STYLE;
+        if (record.hasNewStyles()) flags |= SWFShapeRecordVisitor.NEW_STYLES;
+        return flags;
+    }
+
+    /** Get the record log of the test shape, without the start line */
+    private String getRecordLog() throws IOException {
+        RecordLog log = new RecordLog();
+        testShape.accept(log);
+        String result = log.toString();
+        return result.substring(result.indexOf('\n') + 1);
+    }
+
+    /** Test that {@link SWFShape#accept} reports the same records as
+     * {@link SWFShape#parse}. */
+    public void testAccept() throws IOException {
+        RecordLog expected = new RecordLog();
+        SWFShape.parse(getInputData(), useRGBA, expected);
+        assertTrue("Missing end of shape",
+                   expected.toString().endsWith("\nend\n"));
+        RecordLog log = new RecordLog();
+        testShape.accept(log);
+        assertEquals(expected.toString(), log.toString());
+    }
+
+    /** Test that the record cursor reports the same records as the
+     * visitor. */
+    public void testRecordCursor() throws IOException {
+        SWFShape.RecordCursor cursor = testShape.getRecordCursor();
+        StringBuffer log = new StringBuffer();
+        int count = 0;
+        while (cursor.next()) {
+            count++;
+            switch (cursor.getType()) {
+            case SWFShape.STRAIGHT_EDGE:
+                log.append("line " + cursor.getX() + " " +
+                           cursor.getY() + "\n");
+                break;
+            case SWFShape.CURVED_EDGE:
+                log.append("curve " + cursor.getControlX() + " " +
+                           cursor.getControlY() + " " + cursor.getX() +
+                           " " + cursor.getY() + "\n");
+                break;
+            default:
+                assertEquals(SWFShape.STATE_CHANGE, cursor.getType());
+                if (cursor.isEndOfShape()) {
+                    log.append("end\n");
+                    break;
+                }
+                SWFStateChange record = (SWFStateChange)cursor.getRecord();
+                int flags = getFlags(record);
+                assertEquals(record.hasMoveTo(), cursor.hasMoveTo());
+                assertEquals(record.hasFillStyle0(), cursor.hasFillStyle0());
+                assertEquals(record.hasFillStyle1(), cursor.hasFillStyle1());
+                assertEquals(record.hasLineStyle(), cursor.hasLineStyle());
+                assertEquals(record.hasNewStyles(), cursor.hasNewStyles());
+                appendStyleChange(log, flags, cursor.getFillStyle0(),
+                                  cursor.getFillStyle1(),
+                                  cursor.getLineStyle(),
+                                  (cursor.hasNewStyles()?record:null));
+                if (cursor.hasMoveTo()) {
+                    log.append("move " + cursor.getX() + " " +
+                               cursor.getY() + "\n");
+                }
+            }
+        }
+        assertEquals(testShape.getRecordCount(), count);
+        assertEquals(getRecordLog(), log.toString());
+        assertTrue(!cursor.next());
+        try {
+            cursor.getType();
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {}
+    }
+
+    /** Test that the record objects returned by {@link
+     * SWFShape#getShapeRecords} match the visitor. */
+    public void testShapeRecordsMatchVisitor() throws IOException {
+        Iterator records = testShape.getShapeRecords();
+        StringBuffer log = new StringBuffer();
+        while (records.hasNext()) {
+            Object record = records.next();
+            if (record instanceof SWFStraightEdge) {
+                SWFStraightEdge edge = (SWFStraightEdge)record;
+                log.append("line " + edge.getX() + " " +
+                           edge.getY() + "\n");
+            } else if (record instanceof SWFCurvedEdge) {
+                SWFCurvedEdge edge = (SWFCurvedEdge)record;
+                log.append("curve " + edge.getControlX() + " " +
+                           edge.getControlY() + " " + edge.getAnchorX() +
+                           " " + edge.getAnchorY() + "\n");
+            } else {
+                SWFStateChange change = (SWFStateChange)record;
+                if (change.isEndOfShape()) {
+                    log.append("end\n");
+                    continue;
+                }
+                appendStyleChange(log, getFlags(change),
+                                  change.getFillStyle0(),
+                                  change.getFillStyle1(),
+                                  change.getLineStyle(),
+                                  (change.hasNewStyles()?change:null));
+                if (change.hasMoveTo()) {
+                    log.append("move " + change.getMoveTo().getX() + " " +
+                               change.getMoveTo().getY() + "\n");
+                }
+            }
+        }
+        assertEquals(getRecordLog(), log.toString());
+    }
 }
@@ -0,0 +1,124 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.parser;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * SAX handler recording all content and error events as text, one
+ * event per line. Adjacent <code>characters</code> events are
+ * recorded as one, so two runs producing the same document produce
+ * the same log regardless of how the text was split. Optionally,
+ * the handler fails with a <code>SAXException</code> at a given
+ * event.
+ * @author Richard Kunze
+ */
+public class SAXEventLog extends DefaultHandler {
+
+    /** The log */
+    private final StringBuffer log = new StringBuffer();
+
+    /** The number of events received */
+    private int count = 0;
+
+    /** The event to fail at, or -1 */
+    private final int failAt;
+
+    /** Flag, set while the last event recorded was text */
+    private boolean inText = false;
+
+    /** Create a log recording all events */
+    public SAXEventLog() { this(-1); }
+
+    /**
+     * Create a log that throws a <code>SAXException</code> when it
+     * receives event number <code>failAt</code> (counting from 0).
+     */
+    public SAXEventLog(int failAt) { this.failAt = failAt; }
+
+    /** Count an event and fail if requested */
+    private void event() throws SAXException {
+	if (count++ == failAt) {
+	    throw new SAXException("Failed at event " + failAt);
+	}
+    }
+
+    /** Start a new log line for an event other than text */
+    private StringBuffer line() {
+	if (inText) log.append('\n');
+	inText = false;
+	return log;
+    }
+
+    public void startDocument() throws SAXException {
+	event();
+	line().append("startDocument\n");
+    }
+
+    public void endDocument() throws SAXException {
+	event();
+	line().append("endDocument\n");
+    }
+
+    public void startElement(String uri, String localName, String qName,
+			     Attributes attributes) throws SAXException {
+	event();
+	line().append('<').append(qName);
+	for (int i=0; i<attributes.getLength(); i++) {
+	    log.append(' ').append(attributes.getQName(i)).append("=\"");
+	    log.append(attributes.getValue(i)).append('"');
+	}
+	log.append(">\n");
+    }
+
+    public void endElement(String uri, String localName, String qName)
+	throws SAXException {
+	event();
+	line().append("</").append(qName).append(">\n");
+    }
+
+    public void characters(char[] ch, int start, int length)
+	throws SAXException {
+	event();
+	if (!inText) log.append("characters ");
+	log.append(ch, start, length);
+	inText = true;
+    }
+
+    public void warning(SAXParseException e) {
+	line().append("warning ").append(e.getMessage()).append('\n');
+    }
+
+    public void error(SAXParseException e) {
+	line().append("error ").append(e.getMessage()).append('\n');
+    }
+
+    /** Get the number of content events received */
+    public int getEventCount() { return count; }
+
+    /** Get the log */
+    public String toString() { return log.toString(); }
+}
@@ -0,0 +1,156 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.parser;
+
+import junit.framework.TestCase;
+
+import de.tivano.flash.swf.common.SWFFont;
+import de.tivano.flash.swf.common.SWFRawDataHandler;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * JUnit test case for {@link SAXEventPipe}. Checks that pipelined
+ * parsing reports the same events as direct parsing, that an
+ * exception thrown by the target handler reaches the producing
+ * thread, and that large chunks of raw data are passed on at once.
+ * @author Richard Kunze
+ */
+public class SAXEventPipeTest extends TestCase {
+
+    /** Event log that also accepts raw data */
+    private static class RawDataLog extends SAXEventLog
+	                            implements SWFRawDataHandler {
+	/** Number of raw data bytes received */
+	private int rawBytes = 0;
+
+	public boolean isRawDataSupported() { return true; }
+
+	public synchronized void rawData(ByteBuffer data) {
+	    rawBytes += data.remaining();
+	}
+
+	/** Get the number of raw data bytes received */
+	public synchronized int getRawBytes() { return rawBytes; }
+    }
+
+    /** Empty attribute list for the test events */
+    private final AttributesImpl noAttributes = new AttributesImpl();
+
+    /** @see TestCase#TestCase */
+    public SAXEventPipeTest(String name) {
+	super(name);
+    }
+
+    /** Parse <code>file</code>, optionally through a pipe */
+    private String parse(SWFTestFile file, boolean pipelined)
+	throws Exception {
+	SWFReader reader = new SWFReader();
+	reader.setFeature(SWFReader.FEATURE_PIPELINED, pipelined);
+	SAXEventLog log = new SAXEventLog();
+	reader.setContentHandler(log);
+	reader.setErrorHandler(log);
+	reader.parse(file.getInputSource());
+	return log.toString();
+    }
+
+    /** Send <code>count</code> element events to <code>pipe</code> */
+    private void sendElements(SAXEventPipe pipe, int count)
+	throws SAXException {
+	for (int i=0; i<count; i++) {
+	    pipe.startElement("", "e", "e", noAttributes);
+	    pipe.endElement("", "e", "e");
+	}
+    }
+
+    /**
+     * Test that pipelined parsing produces the same events as
+     * direct parsing. The file is large enough for many batches.
+     */
+    public void testMatchesDirectParsing() throws Exception {
+	SWFTestFile file = new SWFTestFile();
+	for (int i=0; i<10; i++) {
+	    SWFFont font = file.addFont(i, "ABCDEFGH");
+	    file.addTextField(100 + i, font, "BEEF");
+	    for (int j=0; j<100; j++) file.showFrame();
+	    file.addTag(200, 3 * SAXEventPipe.BATCH_CHARS);
+	}
+	String expected = parse(file, false);
+	assertEquals(expected, parse(file, true));
+    }
+
+    /**
+     * Test that a handler exception stops the producer on its next
+     * attempt to pass on a batch.
+     */
+    public void testFailureReachesPublish() throws Exception {
+	SAXEventLog log = new SAXEventLog(0);
+	SAXEventPipe pipe = new SAXEventPipe(log, log);
+	try {
+	    // The ring can only hold a limited number of batches, so
+	    // the producer has to notice the failure eventually.
+	    sendElements(pipe, 1000000);
+	    fail("Expected a SAXException");
+	} catch (SAXException e) {
+	    assertEquals("Failed at event 0", e.getMessage());
+	}
+	assertEquals(1, log.getEventCount());
+    }
+
+    /**
+     * Test that a handler exception in the last batch is thrown
+     * from <code>finish()</code>.
+     */
+    public void testFailureReachesFinish() throws Exception {
+	SAXEventLog log = new SAXEventLog(19);
+	SAXEventPipe pipe = new SAXEventPipe(log, log);
+	sendElements(pipe, 10);
+	try {
+	    pipe.finish();
+	    fail("Expected a SAXException");
+	} catch (SAXException e) {
+	    assertEquals("Failed at event 19", e.getMessage());
+	}
+    }
+
+    /**
+     * Test that raw data larger than <code>BATCH_CHARS</code> is
+     * passed on without waiting for more events, while small chunks
+     * are kept until the batch is full.
+     */
+    public void testLargeRawDataIsPublished() throws Exception {
+	RawDataLog log = new RawDataLog();
+	SAXEventPipe pipe = new SAXEventPipe(log, log);
+	assertTrue(pipe.isRawDataSupported());
+	pipe.rawData(ByteBuffer.allocate(100));
+	Thread.sleep(200);
+	assertEquals(0, log.getRawBytes());
+	pipe.rawData(ByteBuffer.allocate(SAXEventPipe.BATCH_CHARS));
+	for (int i=0; i<50 && log.getRawBytes() == 0; i++) Thread.sleep(100);
+	assertEquals(100 + SAXEventPipe.BATCH_CHARS, log.getRawBytes());
+	pipe.finish();
+    }
+}
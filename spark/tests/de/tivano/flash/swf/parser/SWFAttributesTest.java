@@ -0,0 +1,267 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.parser;
+
+import junit.framework.TestCase;
+
+import de.tivano.flash.swf.common.SWFTypedAttributes;
+
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * JUnit test case for {@link SWFAttributes}. Checks that numeric
+ * values are formatted exactly like <code>Long.toString()</code>
+ * and <code>Double.toString()</code> would, and that the value types
+ * and numbers stay with their attributes when the list is modified
+ * or copied.
+ * @author Richard Kunze
+ */
+public class SWFAttributesTest extends TestCase {
+
+    /** Integer test values */
+    private static final long[] LONGS = {
+	0, 1, -1, 20, -4096, Integer.MAX_VALUE, Integer.MIN_VALUE,
+	Long.MAX_VALUE, Long.MIN_VALUE
+    };
+
+    /** Floating point test values */
+    private static final double[] DOUBLES = {
+	0.0, -0.0, 1.0, 0.1, -12.75, 1e-5, 1e7, 123456789.125,
+	Double.MAX_VALUE, Double.MIN_VALUE, Double.NaN,
+	Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+    };
+
+    /** @see TestCase#TestCase */
+    public SWFAttributesTest(String name) {
+	super(name);
+    }
+
+    /**
+     * Create an attribute list with the attributes
+     * <code>l0</code>, <code>d0</code>, <code>s0</code>,
+     * <code>l1</code>, ... up to <code>s{count-1}</code>. Attribute
+     * <code>l<i>i</i></code> has the value <code>1000 * i</code>,
+     * <code>d<i>i</i></code> the value <code>i + 0.5</code> and
+     * <code>s<i>i</i></code> the value <code>"s<i>i</i>"</code>.
+     */
+    private SWFAttributes createMixed(int count) {
+	SWFAttributes atts = new SWFAttributes();
+	for (int i=0; i<count; i++) {
+	    atts.addAttribute("l" + i, 1000L * i);
+	    atts.addAttribute("d" + i, i + 0.5);
+	    atts.addAttribute("s" + i, "s" + i);
+	}
+	return atts;
+    }
+
+    /**
+     * Check that the attribute at <code>index</code> in
+     * <code>atts</code> is the one called <code>name</code> in the
+     * list created by {@link #createMixed}, including value type and
+     * numeric value.
+     */
+    private void assertMixed(SWFTypedAttributes atts, int index,
+			     String name) {
+	assertEquals(name, atts.getQName(index));
+	int i = Integer.parseInt(name.substring(1));
+	switch (name.charAt(0)) {
+	case 'l':
+	    assertEquals(name, SWFTypedAttributes.VALUE_LONG,
+			 atts.getValueType(index));
+	    assertEquals(name, 1000L * i, atts.getLongValue(index));
+	    assertEquals(name, Long.toString(1000L * i),
+			 atts.getValue(index));
+	    break;
+	case 'd':
+	    assertEquals(name, SWFTypedAttributes.VALUE_DOUBLE,
+			 atts.getValueType(index));
+	    assertEquals(name, i + 0.5, atts.getDoubleValue(index), 0.0);
+	    assertEquals(name, Double.toString(i + 0.5),
+			 atts.getValue(index));
+	    break;
+	default:
+	    assertEquals(name, SWFTypedAttributes.VALUE_STRING,
+			 atts.getValueType(index));
+	    assertEquals(name, name, atts.getValue(index));
+	}
+    }
+
+    /** Test that integer values are formatted like <code>Long.toString()</code> */
+    public void testLongFormatting() {
+	SWFAttributes atts = new SWFAttributes();
+	for (int i=0; i<LONGS.length; i++) {
+	    atts.addAttribute("a" + i, LONGS[i]);
+	}
+	for (int i=0; i<LONGS.length; i++) {
+	    String expected = Long.toString(LONGS[i]);
+	    assertEquals(SWFTypedAttributes.VALUE_LONG, atts.getValueType(i));
+	    assertEquals(expected, atts.getValue("a" + i));
+	    assertEquals(expected, atts.getValue("", "a" + i));
+	    assertEquals(expected, atts.getValue(i));
+	    // Formatting doesn't change the type or the number
+	    assertEquals(SWFTypedAttributes.VALUE_LONG, atts.getValueType(i));
+	    assertEquals(LONGS[i], atts.getLongValue(i));
+	    assertEquals((double)LONGS[i], atts.getDoubleValue(i), 0.0);
+	}
+    }
+
+    /**
+     * Test that floating point values are formatted like
+     * <code>Double.toString()</code>
+     */
+    public void testDoubleFormatting() {
+	SWFAttributes atts = new SWFAttributes();
+	for (int i=0; i<DOUBLES.length; i++) {
+	    atts.addAttribute("a" + i, DOUBLES[i]);
+	}
+	for (int i=0; i<DOUBLES.length; i++) {
+	    String expected = Double.toString(DOUBLES[i]);
+	    assertEquals(SWFTypedAttributes.VALUE_DOUBLE,
+			 atts.getValueType(i));
+	    assertEquals(expected, atts.getValue(i));
+	    assertEquals(expected, atts.getValue("a" + i));
+	    assertEquals(SWFTypedAttributes.VALUE_DOUBLE,
+			 atts.getValueType(i));
+	    assertEquals(Double.doubleToLongBits(DOUBLES[i]),
+			 Double.doubleToLongBits(atts.getDoubleValue(i)));
+	    try {
+		atts.getLongValue(i);
+		fail("Expected a NumberFormatException");
+	    } catch (NumberFormatException e) {}
+	}
+    }
+
+    /** Test string values and unknown attributes */
+    public void testStrings() {
+	SWFAttributes atts = new SWFAttributes();
+	atts.addAttribute("a", "42");
+	atts.addAttribute("b", "2.5", SWFAttributes.TYPE_ID);
+	assertEquals(SWFTypedAttributes.VALUE_STRING, atts.getValueType(0));
+	assertEquals(42, atts.getLongValue(0));
+	assertEquals(2.5, atts.getDoubleValue(1), 0.0);
+	assertEquals(SWFAttributes.TYPE_ID, atts.getType(1));
+	assertNull(atts.getValue("c"));
+	assertNull(atts.getValue(2));
+	assertNull(atts.getValue(-1));
+	try {
+	    atts.getValueType(2);
+	    fail("Expected an IndexOutOfBoundsException");
+	} catch (IndexOutOfBoundsException e) {}
+    }
+
+    /**
+     * Test that removing attributes keeps the value types and
+     * numbers of the following attributes with them, including
+     * values already formatted.
+     */
+    public void testRemoveAttribute() {
+	SWFAttributes atts = createMixed(6);
+	// Format some of the values before removing
+	atts.getValue(0);
+	atts.getValue(7);
+	atts.removeAttribute(4);          // d1
+	atts.removeAttribute(0);          // l0
+	atts.removeAttribute(atts.getLength() - 1); // s5
+	String[] expected = {
+	    "d0", "s0", "l1", "s1", "l2", "d2", "s2", "l3", "d3", "s3",
+	    "l4", "d4", "s4", "l5", "d5"
+	};
+	assertEquals(expected.length, atts.getLength());
+	for (int i=0; i<expected.length; i++) {
+	    assertMixed(atts, i, expected[i]);
+	}
+	// Adding after a removal must not pick up stale entries
+	atts.addAttribute("x", "x");
+	assertEquals(SWFTypedAttributes.VALUE_STRING,
+		     atts.getValueType(expected.length));
+	atts.addAttribute("y", 7L);
+	assertEquals("7", atts.getValue("y"));
+    }
+
+    /** Test that setting a string value turns a number into a string */
+    public void testSetValue() {
+	SWFAttributes atts = createMixed(4);
+	atts.setValue(0, "17");
+	atts.setValue(4, "abc");
+	assertEquals(SWFTypedAttributes.VALUE_STRING, atts.getValueType(0));
+	assertEquals("17", atts.getValue(0));
+	assertEquals(17, atts.getLongValue(0));
+	assertEquals(SWFTypedAttributes.VALUE_STRING, atts.getValueType(4));
+	assertEquals("abc", atts.getValue(4));
+	try {
+	    atts.getDoubleValue(4);
+	    fail("Expected a NumberFormatException");
+	} catch (NumberFormatException e) {}
+	// The other attributes are unchanged
+	for (int i=0; i<atts.getLength(); i++) {
+	    if (i != 0 && i != 4) assertMixed(atts, i, atts.getQName(i));
+	}
+
+	atts.setAttribute(1, "", "z", "z", SWFAttributes.TYPE_CDATA, "2");
+	assertEquals(SWFTypedAttributes.VALUE_STRING, atts.getValueType(1));
+	assertEquals("2", atts.getValue("z"));
+    }
+
+    /**
+     * Test that copying keeps numeric values as numbers, and that
+     * the copy is independent of the original.
+     */
+    public void testCopy() {
+	SWFAttributes original = createMixed(5);
+	original.getValue(1);
+	original.removeAttribute(3);
+	SWFAttributes copy = new SWFAttributes(original);
+	assertEquals(original.getLength(), copy.getLength());
+	for (int i=0; i<copy.getLength(); i++) {
+	    assertEquals(original.getValueType(i), copy.getValueType(i));
+	    assertMixed(copy, i, original.getQName(i));
+	}
+
+	copy.setValue(0, "x");
+	assertEquals(SWFTypedAttributes.VALUE_LONG, original.getValueType(0));
+	assertEquals("0", original.getValue(0));
+
+	// Copying over an existing list replaces it completely
+	SWFAttributes other = createMixed(1);
+	other.setAttributes(original);
+	assertEquals(original.getLength(), other.getLength());
+	for (int i=0; i<other.getLength(); i++) {
+	    assertMixed(other, i, original.getQName(i));
+	}
+    }
+
+    /** Test copying attributes without value types */
+    public void testCopyUntyped() {
+	AttributesImpl plain = new AttributesImpl();
+	plain.addAttribute("", "a", "a", SWFAttributes.TYPE_CDATA, "1");
+	plain.addAttribute("", "b", "b", SWFAttributes.TYPE_CDATA, "x");
+	SWFAttributes copy = new SWFAttributes(plain);
+	assertEquals(2, copy.getLength());
+	for (int i=0; i<2; i++) {
+	    assertEquals(SWFTypedAttributes.VALUE_STRING,
+			 copy.getValueType(i));
+	    assertEquals(plain.getValue(i), copy.getValue(i));
+	}
+	assertEquals(1, copy.getLongValue(0));
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.parser;
+
+import junit.framework.TestCase;
+
+import de.tivano.flash.swf.common.BitInputStream;
+import de.tivano.flash.swf.common.ByteBufferBitInputStream;
+import de.tivano.flash.swf.common.SWFFont;
+import de.tivano.flash.swf.common.SWFTagHeader;
+import de.tivano.flash.swf.common.SWFTypes;
+
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * JUnit test case for {@link SWFDecoderPool} and the parallel tag
+ * parsing in {@link SWFReader}. Checks that decoding with several
+ * threads reports exactly the same events as decoding on the calling
+ * thread, that exceptions thrown by the tag readers are reported in
+ * file order, and that the worker threads terminate after a failure.
+ * @author Richard Kunze
+ */
+public class SWFDecoderPoolTest extends TestCase {
+
+    /** Tag ID for tags handled by a {@link FailingReader} */
+    private static final int FAIL_SAX = 200;
+
+    /** Tag ID for tags handled by a {@link FailingReader} */
+    private static final int FAIL_IO = 201;
+
+    /** Prefix of the names of the worker threads */
+    private static final String WORKER_NAME = "SWF decoder ";
+
+    /**
+     * Tag reader that can run in the pool and fails for the tags
+     * {@link #FAIL_SAX} and {@link #FAIL_IO}. The
+     * <code>FAIL_SAX</code> tag is delayed so that the following
+     * <code>FAIL_IO</code> tag fails first.
+     */
+    private static class FailingReader extends SWFTagReaderBase
+	                               implements SWFParallelTagReader {
+	public void parse(BitInputStream input, SWFTagHeader header)
+	    throws SAXException, IOException {
+	    input.skipBits(8 * header.getRecordLength());
+	    if (header.getID() == FAIL_SAX) {
+		try {
+		    Thread.sleep(200);
+		} catch (InterruptedException e) {}
+		throw new SAXException("tag " + FAIL_SAX);
+	    }
+	    throw new IOException("tag " + FAIL_IO);
+	}
+
+	public SWFTagReader copy() { return copyReader(); }
+    }
+
+    /** @see TestCase#TestCase */
+    public SWFDecoderPoolTest(String name) {
+	super(name);
+    }
+
+    /**
+     * Create a file with two fonts, each followed by a text field
+     * using it and a number of other tags.
+     */
+    private SWFTestFile createFile() throws Exception {
+	SWFTestFile file = new SWFTestFile();
+	for (int i=0; i<2; i++) {
+	    SWFFont font = file.addFont(10 + i, "ABCDEFGH");
+	    file.addTextField(20 + i, font, "HEADBEEF");
+	    for (int j=0; j<20; j++) file.addTag(100 + j, j * 17);
+	    file.showFrame();
+	}
+	return file;
+    }
+
+    /** Parse <code>file</code> with <code>threads</code> decoder threads */
+    private String parse(SWFTestFile file, int threads) throws Exception {
+	SWFReader reader = new SWFReader();
+	reader.setProperty(SWFReader.PROPERTY_DECODER_THREADS,
+			   new Integer(threads));
+	SAXEventLog log = new SAXEventLog();
+	reader.setContentHandler(log);
+	reader.setErrorHandler(log);
+	reader.parse(file.getInputSource());
+	return log.toString();
+    }
+
+    /** Count the running worker threads */
+    private int countWorkers() {
+	Thread[] threads = new Thread[Thread.activeCount() + 10];
+	int count = Thread.enumerate(threads);
+	int workers = 0;
+	for (int i=0; i<count; i++) {
+	    if (threads[i].getName().startsWith(WORKER_NAME)) workers++;
+	}
+	return workers;
+    }
+
+    /** Wait up to five seconds for all worker threads to terminate */
+    private void assertWorkersTerminate() throws Exception {
+	for (int i=0; i<50 && countWorkers() > 0; i++) Thread.sleep(100);
+	assertEquals("running workers", 0, countWorkers());
+    }
+
+    /**
+     * Test that parallel decoding produces the same events as
+     * serial decoding, including the text fields that depend on
+     * the fonts decoded by the workers.
+     */
+    public void testParallelMatchesSerial() throws Exception {
+	SWFTestFile file = createFile();
+	String expected = parse(file, 1);
+	assertTrue(expected.indexOf("characters HEADBEEF") >= 0);
+	assertTrue(expected.indexOf("error ") < 0);
+	for (int threads=2; threads<=8; threads*=2) {
+	    assertEquals(threads + " threads", expected,
+			 parse(file, threads));
+	}
+	assertWorkersTerminate();
+    }
+
+    /**
+     * Test that the exception of the first failing tag is reported,
+     * after the events of all earlier tags.
+     */
+    public void testFailureInFileOrder() throws Exception {
+	SWFTestFile file = new SWFTestFile();
+	file.showFrame();
+	file.addTag(FAIL_SAX, 4);
+	file.addTag(FAIL_IO, 4);
+	file.showFrame();
+	SWFReader reader = new SWFReader();
+	reader.setProperty(SWFReader.PROPERTY_DECODER_THREADS,
+			   new Integer(4));
+	reader.registerTagReader(FAIL_SAX, new FailingReader());
+	reader.registerTagReader(FAIL_IO, new FailingReader());
+	SAXEventLog log = new SAXEventLog();
+	reader.setContentHandler(log);
+	reader.setErrorHandler(log);
+	try {
+	    reader.parse(file.getInputSource());
+	    fail("Expected a SAXException");
+	} catch (SAXException e) {
+	    assertEquals("tag " + FAIL_SAX, e.getMessage());
+	}
+	String events = log.toString();
+	int first = events.indexOf("<ShowFrame>");
+	assertTrue(first >= 0);
+	assertEquals(-1, events.indexOf("<ShowFrame>", first + 1));
+	assertWorkersTerminate();
+    }
+
+    /** Test that the worker threads terminate after a failure */
+    public void testShutdownAfterFailure() throws Exception {
+	SWFTestFile file = createFile();
+	file.addTag(FAIL_IO, 4);
+	file.showFrame();
+	SWFReader reader = new SWFReader();
+	reader.setProperty(SWFReader.PROPERTY_DECODER_THREADS,
+			   new Integer(4));
+	reader.registerTagReader(FAIL_IO, new FailingReader());
+	SAXEventLog log = new SAXEventLog();
+	reader.setContentHandler(log);
+	reader.setErrorHandler(log);
+	try {
+	    reader.parse(file.getInputSource());
+	    fail("Expected an IOException");
+	} catch (IOException e) {
+	    assertEquals("tag " + FAIL_IO, e.getMessage());
+	}
+	assertWorkersTerminate();
+    }
+
+    /**
+     * Test that tags submitted after a worker has been interrupted
+     * fail instead of waiting forever.
+     */
+    public void testInterruptedWorker() throws Exception {
+	assertWorkersTerminate();
+	SWFReader reader = new SWFReader();
+	reader.setContentHandler(new SAXEventLog());
+	SWFDecoderPool pool = new SWFDecoderPool(reader, 1);
+	try {
+	    Thread[] threads = new Thread[Thread.activeCount() + 10];
+	    int count = Thread.enumerate(threads);
+	    Thread worker = null;
+	    for (int i=0; i<count; i++) {
+		if (threads[i].getName().startsWith(WORKER_NAME)) {
+		    worker = threads[i];
+		}
+	    }
+	    assertNotNull(worker);
+	    worker.interrupt();
+	    worker.join(5000);
+	    assertTrue(!worker.isAlive());
+	    SWFDecoderPool.Task task =
+		pool.submit(new SWFShowFrameReader(),
+			    new SWFTagHeader(SWFTypes.SHOW_FRAME, 0),
+			    new ByteBufferBitInputStream(new byte[0]));
+	    task.waitFor();
+	    try {
+		task.rethrow();
+		fail("Expected an InterruptedIOException");
+	    } catch (InterruptedIOException e) {}
+	} finally {
+	    pool.shutdown();
+	}
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.parser;
+
+import junit.framework.TestCase;
+
+import de.tivano.flash.swf.common.BitInputStream;
+import de.tivano.flash.swf.common.SWFDataType;
+import de.tivano.flash.swf.common.SWFDefineFont2;
+import de.tivano.flash.swf.common.SWFDefineTextField;
+import de.tivano.flash.swf.common.SWFFont;
+import de.tivano.flash.swf.common.SWFTagHeader;
+import de.tivano.flash.swf.common.SWFTypes;
+
+/**
+ * JUnit test case for {@link SWFTagCursor}. Walks through a test
+ * file with a cursor opened by {@link SWFReader#openCursor} and
+ * checks the tags against the file, reading the tag data in
+ * different ways or not at all.
+ * @author Richard Kunze
+ */
+public class SWFTagCursorTest extends TestCase {
+
+    /** Tag ID of the RawData tags in the test file */
+    private static final int RAW = 200;
+
+    /** The test file */
+    private SWFTestFile file;
+
+    /** The complete test file data */
+    private byte[] data;
+
+    /** @see TestCase#TestCase */
+    public SWFTagCursorTest(String name) {
+	super(name);
+    }
+
+    /** Build the fixture, with tags on both sides of the long header limit */
+    public void setUp() throws Exception {
+	file = new SWFTestFile();
+	for (int i=0; i<2; i++) {
+	    SWFFont font = file.addFont(10 + i, "ABCDEFGH");
+	    file.addTextField(20 + i, font, "HEADBEEF");
+	    file.addTag(RAW, 62 + i);
+	    file.addTag(RAW, 0);
+	    file.addTag(RAW, 300);
+	    file.showFrame();
+	}
+	data = file.toByteArray();
+    }
+
+    /** Get the expected data of tag number <code>n</code> */
+    private byte[] getExpectedData(int n) {
+	SWFTagHeader header = file.getTagHeader(n);
+	byte[] expected = new byte[(int)header.getRecordLength()];
+	System.arraycopy(data, (int)(file.getTagOffset(n) +
+				     header.length() / 8),
+			 expected, 0, expected.length);
+	return expected;
+    }
+
+    /** Check that two byte arrays are equal */
+    private void assertBytes(String message, byte[] expected, byte[] actual) {
+	assertEquals(message + ": length", expected.length, actual.length);
+	for (int i=0; i<expected.length; i++) {
+	    assertEquals(message + ": byte " + i, expected[i], actual[i]);
+	}
+    }
+
+    /** Check that the cursor is past the last tag */
+    private void assertAtEnd(SWFTagCursor cursor) throws Exception {
+	assertTrue(!cursor.next());
+	assertTrue(!cursor.next());
+	try {
+	    cursor.getHeader();
+	    fail("Expected an IllegalStateException");
+	} catch (IllegalStateException e) {}
+    }
+
+    /** Test the tag headers and the raw data of every tag */
+    public void testHeadersAndData() throws Exception {
+	SWFTagCursor cursor = new SWFReader().openCursor(file.getInputSource());
+	try {
+	    assertEquals(data.length, cursor.getFileHeader().getFileSize());
+	    try {
+		cursor.getType();
+		fail("Expected an IllegalStateException");
+	    } catch (IllegalStateException e) {}
+	    for (int i=0; i<file.getTagCount(); i++) {
+		assertTrue("tag " + i, cursor.next());
+		SWFTagHeader expected = file.getTagHeader(i);
+		assertEquals("type " + i, expected.getID(), cursor.getType());
+		assertEquals("length " + i, expected.getRecordLength(),
+			     cursor.getHeader().getRecordLength());
+		byte[] raw = getExpectedData(i);
+		assertBytes("tag " + i, raw, cursor.getRawData());
+		// The data can be read more than once
+		assertBytes("tag " + i, raw, cursor.getRawData());
+		BitInputStream in = cursor.getData();
+		for (int j=0; j<raw.length; j++) {
+		    assertEquals("tag " + i + ", byte " + j,
+				 raw[j] & 0xff, in.readUByte());
+		}
+	    }
+	    assertAtEnd(cursor);
+	} finally {
+	    cursor.close();
+	}
+    }
+
+    /**
+     * Test skipping tags without reading their data, and reading
+     * only part of the data before moving on.
+     */
+    public void testSkip() throws Exception {
+	SWFTagCursor cursor = new SWFReader().openCursor(file.getInputSource());
+	try {
+	    for (int i=0; i<file.getTagCount(); i++) {
+		assertTrue("tag " + i, cursor.next());
+		assertEquals("type " + i, file.getTagHeader(i).getID(),
+			     cursor.getType());
+		if (i % 4 == 1 && cursor.getHeader().getRecordLength() > 0) {
+		    assertEquals(getExpectedData(i)[0] & 0xff,
+				 cursor.getData().readUByte());
+		} else if (i % 4 == 3) {
+		    assertBytes("tag " + i, getExpectedData(i),
+				cursor.getRawData());
+		}
+	    }
+	    assertAtEnd(cursor);
+	} finally {
+	    cursor.close();
+	}
+    }
+
+    /** Test decoding the supported tag types */
+    public void testGetTag() throws Exception {
+	SWFTagCursor cursor = new SWFReader().openCursor(file.getInputSource());
+	int fonts = 0;
+	int fields = 0;
+	try {
+	    while (cursor.next()) {
+		SWFDataType tag = cursor.getTag();
+		switch (cursor.getType()) {
+		case SWFTypes.DEFINE_FONT2:
+		    SWFDefineFont2 font = (SWFDefineFont2)tag;
+		    assertEquals(10 + fonts, font.getID());
+		    assertEquals("Test", font.getName());
+		    assertEquals(8, font.getGlyphCount());
+		    fonts++;
+		    break;
+		case SWFTypes.DEFINE_TEXTFIELD:
+		    SWFDefineTextField field = (SWFDefineTextField)tag;
+		    assertEquals(20 + fields, field.getID());
+		    assertEquals(10 + fields, field.getFontID());
+		    assertEquals("field" + (20 + fields), field.getVarName());
+		    fields++;
+		    break;
+		default:
+		    assertNull(tag);
+		    // The tag data is still available
+		    cursor.getRawData();
+		}
+	    }
+	} finally {
+	    cursor.close();
+	}
+	assertEquals(2, fonts);
+	assertEquals(2, fields);
+    }
+
+    /** Test that a closed cursor has no more tags */
+    public void testClose() throws Exception {
+	SWFTagCursor cursor = new SWFReader().openCursor(file.getInputSource());
+	assertTrue(cursor.next());
+	cursor.close();
+	assertAtEnd(cursor);
+    }
+}
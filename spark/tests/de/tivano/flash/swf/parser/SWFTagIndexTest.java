@@ -0,0 +1,153 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.parser;
+
+import junit.framework.TestCase;
+
+import de.tivano.flash.swf.common.SWFFont;
+import de.tivano.flash.swf.common.SWFTagHeader;
+import de.tivano.flash.swf.common.SWFTypes;
+
+/**
+ * JUnit test case for {@link SWFTagIndex}. Builds the index of a
+ * test file with {@link SWFReader#scan} and checks it against the
+ * tag positions recorded while writing the file, for tags with short
+ * and long headers.
+ * @author Richard Kunze
+ */
+public class SWFTagIndexTest extends TestCase {
+
+    /** Tag ID of the RawData tags in the test file */
+    private static final int RAW = 200;
+
+    /** The test file */
+    private SWFTestFile file;
+
+    /** The complete test file data */
+    private byte[] data;
+
+    /** The index of the test file */
+    private SWFTagIndex index;
+
+    /** @see TestCase#TestCase */
+    public SWFTagIndexTest(String name) {
+	super(name);
+    }
+
+    /**
+     * Build the fixture. The RawData tags have lengths around 62
+     * bytes, the largest length with a short tag header.
+     */
+    public void setUp() throws Exception {
+	file = new SWFTestFile();
+	SWFFont font = file.addFont(1, "ABCD");
+	file.addTextField(2, font, "DCBA");
+	file.showFrame();
+	for (int i=0; i<4; i++) {
+	    file.addTag(RAW, 61 + i);
+	    file.showFrame();
+	}
+	file.addTag(RAW, 0);
+	file.addTag(RAW, 1000);
+	file.showFrame();
+	data = file.toByteArray();
+	index = new SWFReader().scan(file.getInputSource());
+    }
+
+    /** Test the tag types, offsets and lengths */
+    public void testTags() throws Exception {
+	assertEquals(file.getTagCount(), index.size());
+	for (int i=0; i<index.size(); i++) {
+	    SWFTagHeader header = file.getTagHeader(i);
+	    assertEquals("type " + i, header.getID(), index.getType(i));
+	    assertEquals("length " + i, header.getRecordLength(),
+			 index.getLength(i));
+	    assertEquals("offset " + i,
+			 file.getTagOffset(i) + header.length() / 8,
+			 index.getOffset(i));
+	}
+	assertEquals(SWFTypes.END, index.getType(index.size() - 1));
+	assertEquals(data.length, index.getOffset(index.size() - 1));
+    }
+
+    /** Test that the offsets point at the tag data in the file */
+    public void testOffsetsMatchData() {
+	int checked = 0;
+	for (int i=0; i<index.size(); i++) {
+	    if (index.getType(i) != RAW) continue;
+	    int offset = (int)index.getOffset(i);
+	    for (int j=0; j<index.getLength(i); j++) {
+		assertEquals("tag " + i + ", byte " + j,
+			     (byte)(RAW + j), data[offset + j]);
+	    }
+	    checked++;
+	}
+	assertEquals(6, checked);
+	// The header length is the distance from the end of the
+	// previous tag: 2 bytes up to 62 bytes of data, 6 from 63.
+	assertEquals(62, index.getLength(5));
+	assertEquals(2, index.getOffset(5) - index.getOffset(4));
+	assertEquals(63, index.getLength(7));
+	assertEquals(6, index.getOffset(7) - index.getOffset(6));
+    }
+
+    /** Test the frame numbers and the frame count */
+    public void testFrames() {
+	assertEquals(file.getFrameCount(), index.getFrameCount());
+	assertEquals(6, index.getFrameCount());
+	int frame = 0;
+	for (int i=0; i<index.size(); i++) {
+	    assertEquals("frame " + i, frame, index.getFrame(i));
+	    if (index.getType(i) == SWFTypes.SHOW_FRAME) frame++;
+	}
+	assertEquals(frame, index.getFrame(index.size() - 1));
+    }
+
+    /** Test finding and counting tags */
+    public void testFindAndCount() {
+	assertEquals(6, index.count(RAW));
+	assertEquals(6, index.count(SWFTypes.SHOW_FRAME));
+	assertEquals(1, index.count(SWFTypes.DEFINE_FONT2));
+	assertEquals(0, index.count(SWFTypes.DEFINE_FONT));
+	assertEquals(0, index.find(SWFTypes.DEFINE_FONT2, 0));
+	assertEquals(-1, index.find(SWFTypes.DEFINE_FONT2, 1));
+	int first = index.find(RAW, -1);
+	assertEquals(3, first);
+	assertEquals(5, index.find(RAW, first + 1));
+	assertEquals(-1, index.find(SWFTypes.DEFINE_FONT, 0));
+    }
+
+    /** Test the file header and index range checks */
+    public void testHeaderAndRange() {
+	assertEquals(5, index.getFileHeader().getVersion());
+	assertEquals(data.length, index.getFileHeader().getFileSize());
+	try {
+	    index.getType(index.size());
+	    fail("Expected an IndexOutOfBoundsException");
+	} catch (IndexOutOfBoundsException e) {}
+	try {
+	    index.getOffset(-1);
+	    fail("Expected an IndexOutOfBoundsException");
+	} catch (IndexOutOfBoundsException e) {}
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.parser;
+
+import junit.framework.TestCase;
+
+import de.tivano.flash.swf.common.SWFFont;
+import de.tivano.flash.swf.common.SWFTagHeader;
+import de.tivano.flash.swf.common.SWFTypes;
+
+import java.util.BitSet;
+
+/**
+ * JUnit test case for {@link SWFTagTypeFilter}. Parsing a file with
+ * a filter must report exactly the same events as parsing the same
+ * file without the filtered tags.
+ * @author Richard Kunze
+ */
+public class SWFTagTypeFilterTest extends TestCase {
+
+    /** Tag ID of the short RawData tags in the test file */
+    private static final int RAW_SHORT = 200;
+
+    /** Tag ID of the long RawData tags in the test file */
+    private static final int RAW_LONG = 201;
+
+    /** @see TestCase#TestCase */
+    public SWFTagTypeFilterTest(String name) {
+	super(name);
+    }
+
+    /**
+     * Create the test file, leaving out all tags with a type in
+     * <code>excluded</code>.
+     */
+    private SWFTestFile createFile(BitSet excluded) throws Exception {
+	SWFTestFile file = new SWFTestFile();
+	for (int i=0; i<3; i++) {
+	    // Text fields need the font even if it's not in the file
+	    SWFTestFile fontFile =
+		(excluded.get(SWFTypes.DEFINE_FONT2)?new SWFTestFile():file);
+	    SWFFont font = fontFile.addFont(10 + i, "ABCDEFGH");
+	    if (!excluded.get(SWFTypes.DEFINE_TEXTFIELD)) {
+		file.addTextField(20 + i, font, "HEADBEEF");
+	    }
+	    if (!excluded.get(RAW_SHORT)) file.addTag(RAW_SHORT, 10 + i);
+	    if (!excluded.get(RAW_LONG)) file.addTag(RAW_LONG, 100 + i);
+	    if (!excluded.get(SWFTypes.SHOW_FRAME)) file.showFrame();
+	}
+	return file;
+    }
+
+    /** Parse <code>file</code> with an optional tag filter */
+    private String parse(SWFTestFile file, SWFTagFilter filter)
+	throws Exception {
+	SWFReader reader = new SWFReader();
+	reader.setProperty(SWFReader.PROPERTY_TAG_FILTER, filter);
+	SAXEventLog log = new SAXEventLog();
+	reader.setContentHandler(log);
+	reader.setErrorHandler(log);
+	reader.parse(file.getInputSource());
+	return log.toString();
+    }
+
+    /** Test the filter decisions */
+    public void testAccept() {
+	SWFTagHeader font = new SWFTagHeader(SWFTypes.DEFINE_FONT2, 10);
+	SWFTagHeader text = new SWFTagHeader(SWFTypes.DEFINE_TEXTFIELD, 10);
+	SWFTagHeader frame = new SWFTagHeader(SWFTypes.SHOW_FRAME, 0);
+	SWFTagTypeFilter filter = new SWFTagTypeFilter();
+	assertTrue(filter.accept(font));
+	assertTrue(filter.accept(text));
+	filter.skip(SWFTypes.DEFINE_TEXTFIELD);
+	assertTrue(filter.accept(font));
+	assertTrue(!filter.accept(text));
+	assertTrue(filter.accept(frame));
+	filter.emit(SWFTypes.DEFINE_FONT2);
+	filter.emit(SWFTypes.DEFINE_TEXTFIELD);
+	assertTrue(filter.accept(font));
+	// Skipping takes precedence over emitting
+	assertTrue(!filter.accept(text));
+	assertTrue(!filter.accept(frame));
+    }
+
+    /** Test that skipping a tag type skips exactly those tags */
+    public void testSkip() throws Exception {
+	int[] types = {
+	    SWFTypes.DEFINE_FONT2, SWFTypes.DEFINE_TEXTFIELD, RAW_SHORT,
+	    RAW_LONG, SWFTypes.SHOW_FRAME
+	};
+	String all = parse(createFile(new BitSet()), null);
+	for (int i=0; i<types.length; i++) {
+	    BitSet excluded = new BitSet();
+	    excluded.set(types[i]);
+	    SWFTagTypeFilter filter = new SWFTagTypeFilter();
+	    filter.skip(types[i]);
+	    String expected = parse(createFile(excluded), null);
+	    assertTrue("type " + types[i], !expected.equals(all));
+	    assertEquals("type " + types[i], expected,
+			 parse(createFile(new BitSet()), filter));
+	}
+    }
+
+    /** Test that only the emitted tag types are reported */
+    public void testEmit() throws Exception {
+	BitSet excluded = new BitSet();
+	excluded.set(SWFTypes.DEFINE_TEXTFIELD);
+	excluded.set(RAW_SHORT);
+	SWFTagTypeFilter filter = new SWFTagTypeFilter();
+	filter.emit(SWFTypes.DEFINE_FONT2);
+	filter.emit(RAW_LONG);
+	filter.emit(SWFTypes.SHOW_FRAME);
+	filter.emit(SWFTypes.END);
+	assertEquals(parse(createFile(excluded), null),
+		     parse(createFile(new BitSet()), filter));
+    }
+}
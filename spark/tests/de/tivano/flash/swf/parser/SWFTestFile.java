@@ -0,0 +1,251 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.parser;
+
+import de.tivano.flash.swf.common.BitOutputStream;
+import de.tivano.flash.swf.common.SWFColorRGBA;
+import de.tivano.flash.swf.common.SWFDefineFont2;
+import de.tivano.flash.swf.common.SWFDefineTextField;
+import de.tivano.flash.swf.common.SWFFileHeader;
+import de.tivano.flash.swf.common.SWFFont;
+import de.tivano.flash.swf.common.SWFRectangle;
+import de.tivano.flash.swf.common.SWFShape;
+import de.tivano.flash.swf.common.SWFTagHeader;
+import de.tivano.flash.swf.common.SWFTopLevelDataType;
+import de.tivano.flash.swf.common.SWFTypes;
+
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds small SWF files for the unit tests. Tags are appended one
+ * after the other, {@link #toByteArray} adds the file header and the
+ * <code>End</code> tag. The offset and length of every tag is
+ * recorded so that tests can check tag indices and cursors against
+ * the file.
+ * @author Richard Kunze
+ */
+public class SWFTestFile {
+
+    /** The tag data, without file header */
+    private final ByteArrayOutputStream tags = new ByteArrayOutputStream();
+
+    /** Output stream writing to <code>tags</code> */
+    private final BitOutputStream out = new BitOutputStream(tags);
+
+    /** The tag headers, in file order */
+    private final List headers = new ArrayList();
+
+    /** The offsets of the tag headers relative to the first tag */
+    private final List offsets = new ArrayList();
+
+    /** The number of <code>ShowFrame</code> tags */
+    private int frameCount = 0;
+
+    /** Flag, set once the <code>End</code> tag has been written */
+    private boolean finished = false;
+
+    /** The file header */
+    private final SWFFileHeader header =
+	new SWFFileHeader(5, 12.0, 0, new SWFRectangle(0, 8000, 0, 6000));
+
+    /**
+     * Append a tag.
+     * @param id the tag ID
+     * @param data the tag data
+     */
+    public void addTag(int id, byte[] data) throws IOException {
+	SWFTagHeader tag = new SWFTagHeader(id, data.length);
+	offsets.add(new Long(tags.size()));
+	headers.add(tag);
+	tag.write(out);
+	out.write(data);
+	out.flush();
+	if (id == SWFTypes.SHOW_FRAME) frameCount++;
+    }
+
+    /** Append a tag with the SWF representation of <code>tag</code> */
+    public void addTag(SWFTopLevelDataType tag) throws IOException {
+	ByteArrayOutputStream tmp = new ByteArrayOutputStream();
+	BitOutputStream data = new BitOutputStream(tmp);
+	tag.write(data);
+	data.close();
+	addTag(tag.getTagType(), tmp.toByteArray());
+    }
+
+    /**
+     * Append a tag with <code>length</code> bytes of data. The data
+     * bytes count up from <code>id</code>.
+     */
+    public void addTag(int id, int length) throws IOException {
+	byte[] data = new byte[length];
+	for (int i=0; i<length; i++) data[i] = (byte)(id + i);
+	addTag(id, data);
+    }
+
+    /** Append a <code>ShowFrame</code> tag */
+    public void showFrame() throws IOException {
+	addTag(SWFTypes.SHOW_FRAME, new byte[0]);
+    }
+
+    /**
+     * Append a <code>DefineFont2</code> tag with one square glyph
+     * per character in <code>chars</code>.
+     * @return the font
+     */
+    public SWFFont addFont(int id, String chars) throws IOException {
+	SWFFont font = new SWFFont();
+	font.setFontID(id);
+	font.setFontName("Test");
+	font.setEncoding(SWFFont.ANSI);
+	font.setAscent(800);
+	font.setDescent(200);
+	for (int i=0; i<chars.length(); i++) {
+	    int size = 100 + 20 * i;
+	    font.addGlyph(new Character(chars.charAt(i)), size + 20,
+			  new SWFRectangle(0, size, 0, size),
+			  createGlyph(size), true);
+	}
+	font.addKerningInfo(chars.substring(0, 2), -10);
+	addTag(new SWFDefineFont2(font));
+	return font;
+    }
+
+    /**
+     * Append a <code>DefineTextField</code> tag showing
+     * <code>text</code> in the font <code>font</code>.
+     */
+    public void addTextField(int id, SWFFont font, String text)
+	throws IOException {
+	SWFDefineTextField field = new SWFDefineTextField();
+	field.setID(id);
+	field.setBounds(new SWFRectangle(0, 2000, 0, 400));
+	field.setVarName("field" + id);
+	field.setFontID(font.getFontID());
+	field.setFontHeight(240);
+	field.setTextColor(new SWFColorRGBA("336699"));
+	field.setText(font.encode(text));
+	addTag(field);
+    }
+
+    /**
+     * Create a glyph shape: a square with a curved diagonal.
+     * @param size the side length of the square
+     */
+    public static SWFShape createGlyph(int size) throws IOException {
+	ByteArrayOutputStream tmp = new ByteArrayOutputStream();
+	BitOutputStream shape = new BitOutputStream(tmp);
+	shape.writeBits(1, 4); // fill bits
+	shape.writeBits(0, 4); // line bits
+	// State change: move to (0, 0), fill style 0 = 1
+	shape.writeBits(0x03, 6);
+	shape.writeBits(12, 5);
+	shape.writeBits(0, 12);
+	shape.writeBits(0, 12);
+	shape.writeBits(1, 1);
+	writeLine(shape, size, 0);
+	writeLine(shape, 0, size);
+	// Curve back to the start
+	shape.writeBits(0x02, 2);
+	shape.writeBits(10, 4);
+	shape.writeBits(-size / 2, 12);
+	shape.writeBits(-size / 4, 12);
+	shape.writeBits(-size / 2, 12);
+	shape.writeBits(-size * 3 / 4, 12);
+	// End of shape
+	shape.writeBits(0, 6);
+	shape.close();
+	return new SWFShape(tmp.toByteArray(), false);
+    }
+
+    /** Write a general straight edge with 12 bits per coordinate */
+    private static void writeLine(BitOutputStream shape, int dx, int dy)
+	throws IOException {
+	shape.writeBits(0x03, 2);
+	shape.writeBits(10, 4);
+	shape.writeBits(1, 1);
+	shape.writeBits(dx, 12);
+	shape.writeBits(dy, 12);
+    }
+
+    /**
+     * Append the <code>End</code> tag. No more tags can be added
+     * afterwards.
+     */
+    private void finish() throws IOException {
+	if (finished) return;
+	addTag(SWFTypes.END, new byte[0]);
+	out.close();
+	finished = true;
+    }
+
+    /**
+     * Get the complete SWF file. Appends the <code>End</code> tag
+     * first if necessary.
+     */
+    public byte[] toByteArray() throws IOException {
+	finish();
+	header.setFrameCount(frameCount);
+	header.setFileSize(getHeaderLength() + tags.size());
+	ByteArrayOutputStream result = new ByteArrayOutputStream();
+	BitOutputStream file = new BitOutputStream(result);
+	header.write(file);
+	file.write(tags.toByteArray());
+	file.close();
+	return result.toByteArray();
+    }
+
+    /** Get an input source reading the complete SWF file */
+    public InputSource getInputSource() throws IOException {
+	return new InputSource(new ByteArrayInputStream(toByteArray()));
+    }
+
+    /** Get the length of the file header in bytes */
+    public int getHeaderLength() {
+	return (int)((header.length() + 7) / 8);
+    }
+
+    /** Get the number of tags, including the <code>End</code> tag */
+    public int getTagCount() throws IOException {
+	finish();
+	return headers.size();
+    }
+
+    /** Get the header of tag number <code>n</code> */
+    public SWFTagHeader getTagHeader(int n) {
+	return (SWFTagHeader)headers.get(n);
+    }
+
+    /** Get the file offset of the header of tag number <code>n</code> */
+    public long getTagOffset(int n) {
+	return getHeaderLength() + ((Long)offsets.get(n)).longValue();
+    }
+
+    /** Get the number of <code>ShowFrame</code> tags */
+    public int getFrameCount() { return frameCount; }
+}
@@ -0,0 +1,167 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.publisher;
+
+import junit.framework.TestCase;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * JUnit test case for {@link Base64Decoder}. Decodes random data
+ * split into random chunks and checks the result against the
+ * original data.
+ * @author Richard Kunze
+ */
+public class Base64DecoderTest extends TestCase {
+
+    /** Encoding table for Base64 */
+    private static final String BASE64_TABLE =
+	"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    /** The random seed for this test */
+    private long seed;
+
+    /** @see TestCase#TestCase */
+    public Base64DecoderTest(String name, long seed) {
+	super(name);
+	this.seed = seed;
+    }
+
+    /** @see TestCase#TestCase */
+    public Base64DecoderTest(String name) {
+	this(name, 0);
+    }
+
+    /**
+     * Encode <code>data</code>, inserting random whitespace. The
+     * length of <code>data</code> must be a multiple of 3.
+     */
+    private String encode(byte[] data, Random random) {
+	StringBuffer buf = new StringBuffer();
+	for (int i=0; i<data.length; i+=3) {
+	    int triplet = (data[i] & 0xFF) << 16 |
+		          (data[i+1] & 0xFF) << 8 |
+		          (data[i+2] & 0xFF);
+	    for (int shift=18; shift>=0; shift-=6) {
+		buf.append(BASE64_TABLE.charAt((triplet >>> shift) & 0x3F));
+		if (random.nextInt(20) == 0) buf.append(" \t\r\n".charAt(
+						      random.nextInt(4)));
+	    }
+	}
+	return buf.toString();
+    }
+
+    /**
+     * Decode random data, handing it to the decoder in random
+     * chunks. The bulk and the single character methods are mixed.
+     */
+    public void testRandomChunks() throws Exception {
+	Random random = new Random(seed);
+	byte[] data = new byte[3 * random.nextInt(5000)];
+	random.nextBytes(data);
+	char[] text = encode(data, random).toCharArray();
+
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	Base64Decoder decoder = new Base64Decoder(out);
+	int pos = 0;
+	while (pos < text.length) {
+	    if (random.nextInt(5) == 0) {
+		decoder.write(text[pos++]);
+	    } else {
+		int len = Math.min(random.nextInt(5000), text.length - pos);
+		decoder.write(text, pos, len);
+		pos += len;
+	    }
+	}
+	decoder.close();
+
+	byte[] result = out.toByteArray();
+	assertEquals("length", data.length, result.length);
+	for (int i=0; i<data.length; i++) {
+	    assertEquals("byte " + i, data[i], result[i]);
+	}
+    }
+
+    /**
+     * Check the handling of incomplete triplets at the end of the
+     * data, split across several calls. Note that the bits of an
+     * incomplete triplet are right-aligned, as written by the
+     * parser.
+     */
+    public void testTail() throws Exception {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	Base64Decoder decoder = new Base64Decoder(out);
+	char[] text = "Y0fXd\nQ==".toCharArray();
+	decoder.write(text, 0, 5);
+	decoder.write(text, 5, 4);
+	decoder.flush();
+	byte[] result = out.toByteArray();
+	assertEquals(4, result.length);
+	assertEquals(0x63, result[0] & 0xFF);
+	assertEquals(0x47, result[1] & 0xFF);
+	assertEquals(0xD7, result[2] & 0xFF);
+	assertEquals(0x50, result[3] & 0xFF);
+
+	// State must not leak into the next block
+	out.reset();
+	decoder.reset(out);
+	decoder.write("dGV".toCharArray(), 0, 3);
+	decoder.write("zB0".toCharArray(), 0, 3);
+	decoder.close();
+	assertEquals("test", new String(out.toByteArray(), "US-ASCII"));
+    }
+
+    /** Check that illegal characters are rejected. */
+    public void testIllegalCharacters() throws Exception {
+	String[] illegal = { "AAA.", "AAAA\u00e4", "AA-A" };
+	for (int i=0; i<illegal.length; i++) {
+	    ByteArrayOutputStream out = new ByteArrayOutputStream();
+	    Base64Decoder decoder = new Base64Decoder(out);
+	    try {
+		decoder.write(illegal[i].toCharArray(), 0,
+			      illegal[i].length());
+		fail("Expected an IllegalArgumentException for " + illegal[i]);
+	    } catch (IllegalArgumentException e) {}
+	}
+    }
+
+    /** Build the test suite */
+    public static Test suite() {
+	TestSuite suite = new TestSuite();
+	for (int i=0; i<20; i++) {
+	    final long SEED = i;
+	    suite.addTest(new Base64DecoderTest(
+				  "random chunks, seed " + i, SEED) {
+		    public void runTest() throws Exception {
+			this.testRandomChunks();
+		    }
+		});
+	}
+	suite.addTest(new Base64DecoderTest("testTail"));
+	suite.addTest(new Base64DecoderTest("testIllegalCharacters"));
+	return suite;
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.publisher;
+
+import junit.framework.TestCase;
+
+import de.tivano.flash.swf.common.SWFTypes;
+
+import java.io.InterruptedIOException;
+
+/**
+ * JUnit test case for {@link SWFEncoderPool}. Checks that tags are
+ * serialized by the workers, and that tasks fail instead of waiting
+ * forever once a worker has been interrupted.
+ * @author Richard Kunze
+ */
+public class SWFEncoderPoolTest extends TestCase {
+
+    /** Prefix of the names of the worker threads */
+    private static final String WORKER_NAME = "SWF encoder ";
+
+    /** @see TestCase#TestCase */
+    public SWFEncoderPoolTest(String name) {
+	super(name);
+    }
+
+    /** Get the running worker threads */
+    private Thread[] getWorkers() {
+	Thread[] threads = new Thread[Thread.activeCount() + 10];
+	int count = Thread.enumerate(threads);
+	int workers = 0;
+	for (int i=0; i<count; i++) {
+	    if (threads[i].getName().startsWith(WORKER_NAME)) {
+		threads[workers++] = threads[i];
+	    }
+	}
+	Thread[] result = new Thread[workers];
+	System.arraycopy(threads, 0, result, 0, workers);
+	return result;
+    }
+
+    /** Wait up to five seconds for all worker threads to terminate */
+    private void assertWorkersTerminate() throws Exception {
+	for (int i=0; i<50 && getWorkers().length > 0; i++) Thread.sleep(100);
+	assertEquals("running workers", 0, getWorkers().length);
+    }
+
+    /** Test serializing tags */
+    public void testSerialize() throws Exception {
+	assertWorkersTerminate();
+	SWFEncoderPool pool = new SWFEncoderPool(2);
+	try {
+	    SWFEncoderPool.Task[] tasks = new SWFEncoderPool.Task[10];
+	    for (int i=0; i<tasks.length; i++) {
+		tasks[i] = pool.submit(
+		    new SWFEmptyTagWriter(SWFTypes.SHOW_FRAME));
+	    }
+	    for (int i=0; i<tasks.length; i++) {
+		tasks[i].waitFor();
+		tasks[i].rethrow();
+		// A short tag header only
+		assertEquals(2, tasks[i].getBuffer().size());
+	    }
+	} finally {
+	    pool.shutdown();
+	}
+	assertWorkersTerminate();
+    }
+
+    /**
+     * Test that tags submitted after all workers have been
+     * interrupted fail instead of waiting forever.
+     */
+    public void testInterruptedWorkers() throws Exception {
+	assertWorkersTerminate();
+	SWFEncoderPool pool = new SWFEncoderPool(2);
+	try {
+	    Thread[] workers = getWorkers();
+	    assertEquals(2, workers.length);
+	    for (int i=0; i<workers.length; i++) {
+		workers[i].interrupt();
+		workers[i].join(5000);
+		assertTrue(!workers[i].isAlive());
+	    }
+	    SWFEncoderPool.Task task =
+		pool.submit(new SWFEmptyTagWriter(SWFTypes.SHOW_FRAME));
+	    task.waitFor();
+	    try {
+		task.rethrow();
+		fail("Expected an InterruptedIOException");
+	    } catch (InterruptedIOException e) {}
+	} finally {
+	    pool.shutdown();
+	}
+    }
+}
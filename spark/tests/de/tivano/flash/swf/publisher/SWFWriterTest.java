@@ -0,0 +1,245 @@
+/**
+ * The contents of this file are subject to the Spark Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the
+ * License on the Spark web site
+ * (http://www.tivano.de/opensource/flash).
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific terms governing rights and limitations
+ * under the License.
+ *
+ * The Initial Developer of Spark is Tivano Software GmbH. The
+ * original Spark and portions created by Tivano Software GmbH are
+ * Copyright Tivano Software GmbH. All Rights Reserved.
+ *
+ * Contributor(s):
+ *      Richard Kunze, Tivano Software GmbH.
+ *
+ * $Id$
+ */
+
+package de.tivano.flash.swf.publisher;
+
+import junit.framework.TestCase;
+
+import de.tivano.flash.swf.common.SWFFont;
+import de.tivano.flash.swf.parser.SWFReader;
+import de.tivano.flash.swf.parser.SWFTestFile;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+
+/**
+ * JUnit test case for the streaming mode and the raw data spilling
+ * of {@link SWFWriter}. An SWF file is parsed and published again
+ * with different settings. All settings must produce exactly the
+ * same bytes as the default, fully buffered publisher, and no
+ * temporary files may be left over afterwards, whether publishing
+ * succeeds or fails.
+ * @author Richard Kunze
+ */
+public class SWFWriterTest extends TestCase {
+
+    /** The test input */
+    private SWFTestFile input;
+
+    /** Scratch file for output to a <code>FileOutputStream</code> */
+    private File outputFile;
+
+    /** Number of temporary files before the test */
+    private int tempFiles;
+
+    /**
+     * Output stream failing on the first write. Records the number of
+     * temporary files at that point.
+     */
+    private class FailingOutputStream extends OutputStream {
+	/** Number of temporary files at the first write, or -1 */
+	int tempFilesAtWrite = -1;
+
+	public void write(int b) throws IOException {
+	    write(new byte[] { (byte)b }, 0, 1);
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+	    if (tempFilesAtWrite < 0) tempFilesAtWrite = countTempFiles();
+	    throw new IOException("Write failed");
+	}
+    }
+
+    /** @see TestCase#TestCase */
+    public SWFWriterTest(String name) {
+	super(name);
+    }
+
+    /**
+     * Build the fixture: a file with fonts, which are only written
+     * at the end of the document, text fields and RawData tags
+     * above and below the spill threshold used by the tests.
+     */
+    public void setUp() throws Exception {
+	input = new SWFTestFile();
+	for (int i=0; i<3; i++) {
+	    SWFFont font = input.addFont(i + 1, "ABCDEFGH");
+	    input.addTextField(10 + i, font, "CAFE");
+	    input.addTag(200, 10);
+	    input.addTag(201, 5000);
+	    input.showFrame();
+	}
+	outputFile = File.createTempFile("swfwritertest", ".swf");
+	tempFiles = countTempFiles();
+    }
+
+    /** Remove the scratch file */
+    public void tearDown() {
+	outputFile.delete();
+    }
+
+    /** Count the temporary files created by <code>SWFWriter</code> */
+    private static int countTempFiles() {
+	File dir = new File(System.getProperty("java.io.tmpdir"));
+	String[] names = dir.list();
+	int count = 0;
+	for (int i=0; i<names.length; i++) {
+	    if (names[i].startsWith("spark") &&
+		(names[i].endsWith(".swf") || names[i].endsWith(".dat"))) {
+		count++;
+	    }
+	}
+	return count;
+    }
+
+    /**
+     * Publish the test input with <code>writer</code>.
+     * @param base64 if <code>true</code>, the writer receives the
+     * content of RawData tags as base64-encoded text, as when
+     * publishing from XML. Otherwise, it gets the data as bytes.
+     */
+    private void publish(SWFWriter writer, boolean base64)
+	throws Exception {
+	SWFReader reader = new SWFReader();
+	if (base64) {
+	    // The filter doesn't implement SWFRawDataHandler
+	    XMLFilterImpl filter = new XMLFilterImpl();
+	    filter.setContentHandler(writer);
+	    reader.setContentHandler(filter);
+	} else {
+	    reader.setContentHandler(writer);
+	}
+	reader.parse(input.getInputSource());
+    }
+
+    /** Get the content of the scratch file */
+    private byte[] readOutputFile() throws IOException {
+	byte[] data = new byte[(int)outputFile.length()];
+	DataInputStream in =
+	    new DataInputStream(new FileInputStream(outputFile));
+	in.readFully(data);
+	in.close();
+	return data;
+    }
+
+    /** Set up a writer for one of the tested configurations */
+    private SWFWriter configure(SWFWriter writer, boolean compressed,
+				boolean streaming, long threshold) {
+	writer.setCompressed(compressed);
+	writer.setStreaming(streaming);
+	writer.setRawDataSpillThreshold(threshold);
+	return writer;
+    }
+
+    /** Check that two byte arrays are equal */
+    private void assertBytes(String message, byte[] expected, byte[] actual) {
+	assertEquals(message + ": length", expected.length, actual.length);
+	for (int i=0; i<expected.length; i++) {
+	    assertEquals(message + ": byte " + i, expected[i], actual[i]);
+	}
+    }
+
+    /**
+     * Publish the test input to a byte array, a file and a channel
+     * in all tested configurations and compare the results with the
+     * buffered output.
+     */
+    private void checkOutput(long threshold) throws Exception {
+	for (int z=0; z<2; z++) {
+	    boolean compressed = (z == 1);
+	    ByteArrayOutputStream tmp = new ByteArrayOutputStream();
+	    publish(new SWFWriter(tmp, true, compressed), false);
+	    byte[] expected = tmp.toByteArray();
+	    for (int i=0; i<4; i++) {
+		boolean streaming = (i & 1) != 0;
+		boolean base64 = (i & 2) != 0;
+		String config = "compressed=" + compressed +
+		    ", streaming=" + streaming + ", base64=" + base64 +
+		    ", threshold=" + threshold;
+
+		tmp = new ByteArrayOutputStream();
+		publish(configure(new SWFWriter(tmp), compressed,
+				  streaming, threshold), base64);
+		assertBytes(config + ", stream", expected, tmp.toByteArray());
+
+		SWFWriter writer =
+		    new SWFWriter(new FileOutputStream(outputFile));
+		publish(configure(writer, compressed, streaming, threshold),
+			base64);
+		assertBytes(config + ", file", expected, readOutputFile());
+
+		tmp = new ByteArrayOutputStream();
+		writer = new SWFWriter(Channels.newChannel(tmp), true);
+		publish(configure(writer, compressed, streaming, threshold),
+			base64);
+		assertBytes(config + ", channel", expected, tmp.toByteArray());
+		assertEquals(config + ": temporary files",
+			     tempFiles, countTempFiles());
+	    }
+	}
+    }
+
+    /**
+     * Test that streaming produces the same output as buffering,
+     * with the default spill threshold.
+     */
+    public void testStreamingMatchesBuffered() throws Exception {
+	checkOutput(SWFWriter.DEFAULT_RAW_DATA_SPILL_THRESHOLD);
+    }
+
+    /** Test spilling all RawData tags */
+    public void testSpillThresholdZero() throws Exception {
+	checkOutput(0);
+    }
+
+    /** Test spilling only the larger RawData tags */
+    public void testSpillThresholdSmall() throws Exception {
+	checkOutput(100);
+    }
+
+    /**
+     * Test that the temporary files are deleted if writing the
+     * output fails.
+     */
+    public void testTempFilesDeletedOnFailure() throws Exception {
+	for (int s=0; s<2; s++) {
+	    FailingOutputStream out = new FailingOutputStream();
+	    try {
+		publish(configure(new SWFWriter(out), false, s == 1, 0), true);
+		fail("Expected a SAXException");
+	    } catch (SAXException e) {}
+	    assertTrue("no temporary files created",
+		       out.tempFilesAtWrite > tempFiles);
+	    assertEquals("streaming=" + (s == 1) + ": temporary files",
+			 tempFiles, countTempFiles());
+	}
+    }
+}